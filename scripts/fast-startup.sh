@@ -0,0 +1,101 @@
+#!/usr/bin/env bash
+# Fast-startup build of the application, and a benchmark of what each part of it buys.
+#
+#   scripts/fast-startup.sh build              package with Spring AOT (-Pfast-startup), extract
+#                                              the jar and record an AppCDS archive in a training run
+#   scripts/fast-startup.sh run [app args]     start the fast-startup build
+#   scripts/fast-startup.sh benchmark [runs]   median time-to-first-request of the plain jar, then
+#                                              with lazy initialization, AOT and AppCDS added in turn
+#
+# PROFILES (default fast-startup) are baked into the AOT build; to run with the persistent
+# store as well, build and run with PROFILES=fast-startup,persistent.
+set -euo pipefail
+
+ROOT="$(cd "$(dirname "$0")/.." && pwd)"
+OUT="$ROOT/target/fast-startup"
+ARCHIVE="$OUT/application.jsa"
+PROFILES="${PROFILES:-fast-startup}"
+PORT="${PORT:-18080}"
+PROBE="http://localhost:$PORT/api/status"
+
+app_jar() {
+    ls "$OUT"/app/*.jar 2>/dev/null | head -1
+}
+
+build() {
+    (cd "$ROOT" && sh ./mvnw -B -q -Pfast-startup -Dfast-startup.profiles="$PROFILES" -DskipTests package)
+    local jar
+    jar="$(ls "$ROOT"/target/*.jar | head -1)"
+
+    rm -rf "$OUT"
+    mkdir -p "$OUT/work"
+    # Unpacked jar + lib/ directory: CDS needs classes on a plain class path, not in nested jars
+    java -Djarmode=tools -jar "$jar" extract --destination "$OUT/app"
+
+    # Training run: refresh the context once, then archive every class loaded on the way
+    (cd "$OUT/work" && java -XX:ArchiveClassesAtExit="$ARCHIVE" -Dspring.aot.enabled=true \
+        -Dspring.context.exit=onRefresh -jar "$(app_jar)" \
+        --spring.profiles.active="$PROFILES" --server.port=0 > "$OUT/training.log" 2>&1)
+    echo "Fast-startup build in $OUT ($(du -h "$ARCHIVE" | cut -f1) CDS archive)"
+}
+
+run() {
+    [ -f "$ARCHIVE" ] || build
+    exec java -XX:SharedArchiveFile="$ARCHIVE" -Dspring.aot.enabled=true -jar "$(app_jar)" \
+        --spring.profiles.active="$PROFILES" "$@"
+}
+
+# Milliseconds from launching the JVM until the first HTTP response
+time_to_first_request() {
+    local jvm_options="$1" app_options="$2" start pid
+    rm -rf "$OUT/work" && mkdir -p "$OUT/work"
+    start=$(date +%s%N)
+    # shellcheck disable=SC2086
+    (cd "$OUT/work" && exec java $jvm_options -jar "$(app_jar)" --server.port="$PORT" $app_options) \
+        > "$OUT/benchmark.log" 2>&1 &
+    pid=$!
+    until curl -s -o /dev/null "$PROBE"; do
+        if ! kill -0 "$pid" 2>/dev/null; then
+            echo "Startup failed, see $OUT/benchmark.log" >&2
+            exit 1
+        fi
+        sleep 0.01
+    done
+    echo $(( ($(date +%s%N) - start) / 1000000 ))
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+}
+
+median() {
+    sort -n | awk '{ values[NR] = $1 } END { print (NR % 2) ? values[(NR + 1) / 2] : int((values[NR / 2] + values[NR / 2 + 1]) / 2) }'
+}
+
+benchmark() {
+    local runs="${1:-5}"
+    [ -f "$ARCHIVE" ] || build
+
+    # Each configuration adds one change to the one before it
+    local names=("plain jar" "+ lazy initialization" "+ Spring AOT" "+ AppCDS archive")
+    local jvm=("" "" "-Dspring.aot.enabled=true" "-Dspring.aot.enabled=true -XX:SharedArchiveFile=$ARCHIVE")
+    local app=("" "--spring.profiles.active=$PROFILES" "--spring.profiles.active=$PROFILES" "--spring.profiles.active=$PROFILES")
+
+    printf "%-24s %14s %12s %14s\n" "configuration" "first request" "this change" "total saved"
+    local baseline=0 previous=0 i run result
+    for i in "${!names[@]}"; do
+        result=$(for run in $(seq "$runs"); do time_to_first_request "${jvm[$i]}" "${app[$i]}"; done | median)
+        if [ "$i" -eq 0 ]; then
+            baseline=$result
+            previous=$result
+        fi
+        printf "%-24s %11s ms %9s ms %11s ms\n" "${names[$i]}" "$result" "$((previous - result))" "$((baseline - result))"
+        previous=$result
+    done
+    echo "(median of $runs runs each, profiles: $PROFILES)"
+}
+
+case "${1:-}" in
+    build) build ;;
+    run) shift; run "$@" ;;
+    benchmark) shift; benchmark "$@" ;;
+    *) sed -n '2,11p' "$0" | sed 's/^# \{0,1\}//'; exit 1 ;;
+esac
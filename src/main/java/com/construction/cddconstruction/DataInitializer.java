@@ -14,15 +14,16 @@ public class DataInitializer implements CommandLineRunner {
     @Override
     public void run(String... args) throws Exception {
         // Create a default root directory if none exists
-        if (directoryService.getRootDirectories().isEmpty()) {
+        int rootCount = directoryService.getRootDirectories().size();
+        if (rootCount == 0) {
             System.out.println("🔄 Creating default root directory...");
 
-            directoryService.createRootDirectory("Construction_Files");
+            directoryService.createDefaultRootDirectory("Construction_Files");
 
             System.out.println("✅ Default root directory created successfully!");
             System.out.println("📁 Root directories available: " + directoryService.getRootDirectories().size());
         } else {
-            System.out.println("📁 Root directories already exist: " + directoryService.getRootDirectories().size());
+            System.out.println("📁 Root directories already exist: " + rootCount);
         }
     }
 }
\ No newline at end of file
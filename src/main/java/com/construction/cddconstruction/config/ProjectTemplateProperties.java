@@ -0,0 +1,61 @@
+package com.construction.cddconstruction.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Folder templates for new projects (file.provisioning.*). A template is a list of
+ * folder paths relative to the project root; nested folders use '/' and their parents
+ * are created implicitly.
+ */
+@Component
+@ConfigurationProperties(prefix = "file.provisioning")
+public class ProjectTemplateProperties {
+
+    private String defaultTemplate = "default";
+
+    // Threads creating folders on disk
+    private int parallelism = 8;
+
+    // Rows per JDBC batch
+    private int batchSize = 500;
+
+    private Map<String, List<String>> templates = new LinkedHashMap<>(Map.of(
+            "default", List.of("Documents", "Images", "Plans", "Contracts", "Progress_Photos")));
+
+    public String getDefaultTemplate() {
+        return defaultTemplate;
+    }
+
+    public void setDefaultTemplate(String defaultTemplate) {
+        this.defaultTemplate = defaultTemplate;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public Map<String, List<String>> getTemplates() {
+        return templates;
+    }
+
+    public void setTemplates(Map<String, List<String>> templates) {
+        this.templates = templates;
+    }
+}
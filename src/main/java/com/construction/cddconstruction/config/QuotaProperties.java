@@ -0,0 +1,76 @@
+package com.construction.cddconstruction.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Storage limits (file.quota.*) in bytes of original content. A project is a root
+ * directory, addressed by name; 0 means unlimited.
+ */
+@Component
+@ConfigurationProperties(prefix = "file.quota")
+public class QuotaProperties {
+
+    private boolean enabled = false;
+
+    private long defaultProjectBytes = 0;
+
+    private long defaultUserBytes = 0;
+
+    // Per-project limits overriding the default, by root directory name
+    private Map<String, Long> projects = new LinkedHashMap<>();
+
+    // Per-user limits overriding the default, by user name
+    private Map<String, Long> users = new LinkedHashMap<>();
+
+    public long projectLimit(String projectName) {
+        return projects.getOrDefault(projectName, defaultProjectBytes);
+    }
+
+    public long userLimit(String userName) {
+        return users.getOrDefault(userName, defaultUserBytes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getDefaultProjectBytes() {
+        return defaultProjectBytes;
+    }
+
+    public void setDefaultProjectBytes(long defaultProjectBytes) {
+        this.defaultProjectBytes = defaultProjectBytes;
+    }
+
+    public long getDefaultUserBytes() {
+        return defaultUserBytes;
+    }
+
+    public void setDefaultUserBytes(long defaultUserBytes) {
+        this.defaultUserBytes = defaultUserBytes;
+    }
+
+    public Map<String, Long> getProjects() {
+        return projects;
+    }
+
+    public void setProjects(Map<String, Long> projects) {
+        this.projects = projects;
+    }
+
+    public Map<String, Long> getUsers() {
+        return users;
+    }
+
+    public void setUsers(Map<String, Long> users) {
+        this.users = users;
+    }
+}
@@ -0,0 +1,41 @@
+package com.construction.cddconstruction.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks in-flight requests so background jobs can run during quiet periods
+ */
+@Component
+public class RequestActivityFilter extends OncePerRequestFilter {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong lastActivity = new AtomicLong(System.currentTimeMillis());
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        inFlight.incrementAndGet();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            inFlight.decrementAndGet();
+            lastActivity.set(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * True when no request is running and none finished within the given period
+     */
+    public boolean isQuiet(long quietPeriodMs) {
+        return inFlight.get() == 0 && System.currentTimeMillis() - lastActivity.get() >= quietPeriodMs;
+    }
+}
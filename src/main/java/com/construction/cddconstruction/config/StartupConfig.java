@@ -0,0 +1,38 @@
+package com.construction.cddconstruction.config;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.reflect.Method;
+
+/**
+ * Startup behaviour under spring.main.lazy-initialization (the fast-startup profile).
+ * A lazy bean is only created when something asks for it, so beans that work on their
+ * own (scheduled jobs, work started in @PostConstruct) would silently never start. Those
+ * stay eager; everything else waits for its first use. Work started from an
+ * {@code @EventListener}, such as the file watcher on ApplicationReadyEvent, needs no
+ * exception: the event creates its bean when it is published.
+ */
+@Configuration
+public class StartupConfig {
+
+    @Bean
+    static LazyInitializationExcludeFilter backgroundWorkersStayEager() {
+        return (beanName, beanDefinition, beanType) -> hasBackgroundWork(beanType);
+    }
+
+    static boolean hasBackgroundWork(Class<?> beanType) {
+        for (Method method : ReflectionUtils.getUniqueDeclaredMethods(beanType)) {
+            if (AnnotatedElementUtils.hasAnnotation(method, Scheduled.class)
+                    || AnnotatedElementUtils.hasAnnotation(method, PostConstruct.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,53 @@
+package com.construction.cddconstruction.config;
+
+import com.construction.cddconstruction.storage.BlobStore;
+import com.construction.cddconstruction.storage.InMemoryBlobStore;
+import com.construction.cddconstruction.storage.LocalBlobStore;
+import com.construction.cddconstruction.storage.S3BlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Storage backends. The local store always exists because the directory tree, segments
+ * and the upload journal live on the local volume; file.storage.backend picks where the
+ * content of new uploads goes. The cold store holds content migrated off the hot tier.
+ */
+@Configuration
+public class StorageConfig {
+
+    @Bean
+    public LocalBlobStore localBlobStore(@Value("${file.upload-dir:./uploads}") String uploadDir) {
+        return new LocalBlobStore(Paths.get(uploadDir));
+    }
+
+    @Bean
+    @Primary
+    public BlobStore blobStore(LocalBlobStore localBlobStore,
+                               @Value("${file.storage.backend:local}") String backend,
+                               @Value("${file.storage.s3.endpoint:http://localhost:9000}") String endpoint,
+                               @Value("${file.storage.s3.region:us-east-1}") String region,
+                               @Value("${file.storage.s3.bucket:cdd-construction}") String bucket,
+                               @Value("${file.storage.s3.access-key:}") String accessKey,
+                               @Value("${file.storage.s3.secret-key:}") String secretKey,
+                               @Value("${file.storage.s3.timeout-ms:30000}") long timeoutMs) {
+        BlobStore store = switch (backend.trim().toLowerCase(Locale.ROOT)) {
+            case "local" -> localBlobStore;
+            case "memory" -> new InMemoryBlobStore();
+            case "s3" -> new S3BlobStore(endpoint, region, bucket, accessKey, secretKey, Duration.ofMillis(timeoutMs));
+            default -> throw new IllegalArgumentException("Unknown storage backend: " + backend);
+        };
+        System.out.println("💾 Storage backend: " + store.getName());
+        return store;
+    }
+
+    @Bean
+    public BlobStore coldBlobStore(@Value("${file.tiering.cold-dir:./cold-storage}") String coldDir) {
+        return new LocalBlobStore(Paths.get(coldDir));
+    }
+}
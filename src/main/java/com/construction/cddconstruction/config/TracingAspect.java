@@ -0,0 +1,95 @@
+package com.construction.cddconstruction.config;
+
+import com.construction.cddconstruction.service.TraceService;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * Turns controller, service and repository calls of traced requests into spans. Storage
+ * beans are left alone (proxying them would break the identity check between the local
+ * and the configured blob store); disk stages open their spans explicitly instead.
+ */
+@Aspect
+@Component
+public class TracingAspect {
+
+    private static final String BASE_PACKAGE = "com.construction.cddconstruction";
+
+    @Autowired
+    private TraceService traceService;
+
+    @Around("within(com.construction.cddconstruction.controller..*)")
+    public Object traceControllerCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!traceService.isTracing()) {
+            return joinPoint.proceed();
+        }
+        traceService.handlerStarted();
+        return trace(joinPoint, TraceService.CONTROLLER);
+    }
+
+    @Around("within(com.construction.cddconstruction.service..*) && !within(com.construction.cddconstruction.service.TraceService)")
+    public Object traceServiceCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!traceService.isTracing()) {
+            return joinPoint.proceed();
+        }
+        return trace(joinPoint, TraceService.SERVICE);
+    }
+
+    @Around("bean(*Repository)")
+    public Object traceRepositoryCall(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!traceService.isTracing()) {
+            return joinPoint.proceed();
+        }
+        return trace(joinPoint, TraceService.REPOSITORY);
+    }
+
+    private Object trace(ProceedingJoinPoint joinPoint, String layer) throws Throwable {
+        try (TraceService.Span span = traceService.span(layer, typeName(joinPoint) + "." + joinPoint.getSignature().getName())) {
+            span.addBytes(uploadBytes(joinPoint.getArgs()));
+            try {
+                return joinPoint.proceed();
+            } catch (Throwable e) {
+                span.fail(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * The application type behind the call; for a repository, its interface rather than
+     * the Spring Data base class declaring findById and friends
+     */
+    private static String typeName(ProceedingJoinPoint joinPoint) {
+        Object target = joinPoint.getTarget();
+        if (target == null) {
+            return ((MethodSignature) joinPoint.getSignature()).getDeclaringType().getSimpleName();
+        }
+        Class<?> type = ClassUtils.getUserClass(target);
+        if (Proxy.isProxyClass(type)) {
+            for (Class<?> candidate : type.getInterfaces()) {
+                if (candidate.getName().startsWith(BASE_PACKAGE)) {
+                    return candidate.getSimpleName();
+                }
+            }
+        }
+        return type.getSimpleName();
+    }
+
+    private static long uploadBytes(Object[] args) {
+        long bytes = 0;
+        for (Object arg : args) {
+            if (arg instanceof MultipartFile upload) {
+                bytes += upload.getSize();
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,48 @@
+package com.construction.cddconstruction.config;
+
+import com.construction.cddconstruction.service.TraceService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Opens a trace for sampled requests ahead of every other filter, so security and
+ * multipart parsing count towards it, and closes it once the response has been written.
+ * A request can ask to be traced with an X-Trace: 1 header; traced responses carry the
+ * id to look the trace up with.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TracingFilter extends OncePerRequestFilter {
+
+    public static final String TRACE_HEADER = "X-Trace";
+    public static final String TRACE_ID_HEADER = "X-Trace-Id";
+
+    @Autowired
+    private TraceService traceService;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String traceId = traceService.begin(request.getMethod(), request.getRequestURI(),
+                Math.max(0, request.getContentLengthLong()), "1".equals(request.getHeader(TRACE_HEADER)));
+        if (traceId == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        response.setHeader(TRACE_ID_HEADER, traceId);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            traceService.end(response.getStatus());
+        }
+    }
+}
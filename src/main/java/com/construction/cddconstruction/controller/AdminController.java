@@ -0,0 +1,193 @@
+package com.construction.cddconstruction.controller;
+
+import com.construction.cddconstruction.service.CoordinationService;
+import com.construction.cddconstruction.service.DirectoryCacheService;
+import com.construction.cddconstruction.service.FileSystemWatcherService;
+import com.construction.cddconstruction.service.IntegrityService;
+import com.construction.cddconstruction.service.MappedFileService;
+import com.construction.cddconstruction.service.ProvisioningService;
+import com.construction.cddconstruction.service.ReadCoalescingService;
+import com.construction.cddconstruction.service.ReconciliationService;
+import com.construction.cddconstruction.service.TieringService;
+import com.construction.cddconstruction.service.TraceService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin")
+@CrossOrigin(origins = "http://localhost:5173")
+public class AdminController {
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private FileSystemWatcherService fileSystemWatcherService;
+
+    @Autowired
+    private IntegrityService integrityService;
+
+    @Autowired
+    private TieringService tieringService;
+
+    @Autowired
+    private DirectoryCacheService directoryCacheService;
+
+    @Autowired
+    private ProvisioningService provisioningService;
+
+    @Autowired
+    private ReadCoalescingService readCoalescingService;
+
+    @Autowired
+    private MappedFileService mappedFileService;
+
+    @Autowired
+    private TraceService traceService;
+
+    @Autowired
+    private CoordinationService coordinationService;
+
+    /**
+     * Start a reconciliation of the upload volume against the catalog
+     * POST /api/admin/reconciliation
+     */
+    @PostMapping("/reconciliation")
+    public ResponseEntity<Map<String, Object>> startReconciliation() {
+        if (!reconciliationService.startReconciliation()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(reconciliationService.getStatus());
+        }
+        return ResponseEntity.accepted().body(reconciliationService.getStatus());
+    }
+
+    /**
+     * Progress of the current or last reconciliation
+     * GET /api/admin/reconciliation
+     */
+    @GetMapping("/reconciliation")
+    public ResponseEntity<Map<String, Object>> getReconciliationStatus() {
+        return ResponseEntity.ok(reconciliationService.getStatus());
+    }
+
+    /**
+     * State of the live file system watcher
+     * GET /api/admin/watcher
+     */
+    @GetMapping("/watcher")
+    public ResponseEntity<Map<String, Object>> getWatcherStatus() {
+        return ResponseEntity.ok(fileSystemWatcherService.getStatus());
+    }
+
+    /**
+     * Scrubber progress and files that failed verification
+     * GET /api/admin/integrity
+     */
+    @GetMapping("/integrity")
+    public ResponseEntity<Map<String, Object>> getIntegrityStatus() {
+        return ResponseEntity.ok(integrityService.getStatus());
+    }
+
+    /**
+     * Verify one file against its recorded checksum right away
+     * POST /api/admin/integrity/files/{fileId}/verify
+     */
+    @PostMapping("/integrity/files/{fileId}/verify")
+    public ResponseEntity<Map<String, Object>> verifyFile(@PathVariable Long fileId) {
+        try {
+            boolean valid = integrityService.verifyFile(fileId);
+            return ResponseEntity.ok(Map.of("fileId", fileId, "valid", valid));
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Hot/cold tiering counters
+     * GET /api/admin/tiering
+     */
+    @GetMapping("/tiering")
+    public ResponseEntity<Map<String, Object>> getTieringStatus() {
+        return ResponseEntity.ok(tieringService.getStatus());
+    }
+
+    /**
+     * Directory lookup cache size and hit ratio
+     * GET /api/admin/directory-cache
+     */
+    @GetMapping("/directory-cache")
+    public ResponseEntity<Map<String, Object>> getDirectoryCacheStatus() {
+        return ResponseEntity.ok(directoryCacheService.getStatus());
+    }
+
+    /**
+     * How subtree copies shared their content: hard-linked, copied, or shared by reference
+     * GET /api/admin/copies
+     */
+    @GetMapping("/copies")
+    public ResponseEntity<Map<String, Object>> getCopyStatus() {
+        return ResponseEntity.ok(provisioningService.getCopyStatus());
+    }
+
+    /**
+     * Duplicate lookups and disk reads saved by sharing concurrent reads of the same file
+     * GET /api/admin/read-coalescing
+     */
+    @GetMapping("/read-coalescing")
+    public ResponseEntity<Map<String, Object>> getReadCoalescingStatus() {
+        return ResponseEntity.ok(readCoalescingService.getStatus());
+    }
+
+    /**
+     * Memory-mapped serving pool: mapped bytes, hits, evictions and retired mappings
+     * GET /api/admin/mmap
+     */
+    @GetMapping("/mmap")
+    public ResponseEntity<Map<String, Object>> getMappedFileStatus() {
+        return ResponseEntity.ok(mappedFileService.getStatus());
+    }
+
+    /**
+     * Locks shared with other instances: waits, timeouts, fencing and cache invalidations
+     * GET /api/admin/coordination
+     */
+    @GetMapping("/coordination")
+    public ResponseEntity<Map<String, Object>> getCoordinationStatus() {
+        return ResponseEntity.ok(coordinationService.getStatus());
+    }
+
+    /**
+     * Recently traced requests, newest first; minDurationMs keeps only the slow ones
+     * GET /api/admin/traces
+     */
+    @GetMapping("/traces")
+    public ResponseEntity<List<Map<String, Object>>> getTraces(
+            @RequestParam(defaultValue = "0") long minDurationMs,
+            @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(traceService.getTraces(minDurationMs, limit));
+    }
+
+    /**
+     * Sampling counters and time spent per span over the buffered traces
+     * GET /api/admin/traces/summary
+     */
+    @GetMapping("/traces/summary")
+    public ResponseEntity<Map<String, Object>> getTraceSummary() {
+        return ResponseEntity.ok(traceService.getStatus());
+    }
+
+    /**
+     * All spans of one traced request
+     * GET /api/admin/traces/{traceId}
+     */
+    @GetMapping("/traces/{traceId}")
+    public ResponseEntity<TraceService.Trace> getTrace(@PathVariable String traceId) {
+        return traceService.getTrace(traceId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
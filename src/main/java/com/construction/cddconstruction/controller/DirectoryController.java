@@ -2,10 +2,13 @@ package com.construction.cddconstruction.controller;
 
 import com.construction.cddconstruction.entity.Directory;
 import com.construction.cddconstruction.service.DirectoryService;
+import com.construction.cddconstruction.service.DirectoryUsageService;
+import com.construction.cddconstruction.service.ProvisioningService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -17,6 +20,12 @@ public class DirectoryController {
     @Autowired
     private DirectoryService directoryService;
 
+    @Autowired
+    private DirectoryUsageService directoryUsageService;
+
+    @Autowired
+    private ProvisioningService provisioningService;
+
     /**
      * Create root directory with default subdirectories
      * POST /api/directories/root
@@ -43,6 +52,45 @@ public class DirectoryController {
         }
     }
 
+    /**
+     * List the configured project folder templates
+     * GET /api/directories/templates
+     */
+    @GetMapping("/templates")
+    public ResponseEntity<Map<String, Object>> getTemplates() {
+        return ResponseEntity.ok(Map.of(
+                "defaultTemplate", provisioningService.getDefaultTemplate(),
+                "templates", provisioningService.getTemplates()
+        ));
+    }
+
+    /**
+     * Create one or many project root directories from a folder template, all or nothing
+     * POST /api/directories/provision
+     */
+    @PostMapping("/provision")
+    public ResponseEntity<Map<String, Object>> provisionProjects(@RequestBody ProvisionRequest request) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        try {
+            List<Directory> roots = provisioningService.provisionProjects(
+                    request.getProjectNames(),
+                    request.getTemplate()
+            );
+
+            response.put("success", true);
+            response.put("message", "Provisioned " + roots.size() + " projects");
+            response.put("directories", roots.stream()
+                    .map(root -> new DirectoryResponse(root.getId(), root.getName(), root.getFullPath(), null, true))
+                    .toList());
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "Failed to provision projects: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     /**
      * Create a custom subdirectory
      * POST /api/directories/subdirectory
@@ -70,6 +118,78 @@ public class DirectoryController {
         }
     }
 
+    /**
+     * Rename a directory
+     * PUT /api/directories/{directoryId}/rename
+     */
+    @PutMapping("/{directoryId}/rename")
+    public ResponseEntity<?> renameDirectory(@PathVariable Long directoryId, @RequestBody RenameDirRequest request) {
+        try {
+            Directory dir = directoryService.renameDirectory(directoryId, request.getDirectoryName());
+
+            return ResponseEntity.ok(new DirectoryResponse(
+                    dir.getId(),
+                    dir.getName(),
+                    dir.getFullPath(),
+                    "Directory renamed successfully",
+                    true
+            ));
+
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(new DirectoryResponse(
+                    directoryId, null, null, "Failed to rename directory: " + e.getMessage(), false
+            ));
+        }
+    }
+
+    /**
+     * Move a directory under a new parent
+     * PUT /api/directories/{directoryId}/move
+     */
+    @PutMapping("/{directoryId}/move")
+    public ResponseEntity<?> moveDirectory(@PathVariable Long directoryId, @RequestBody MoveDirRequest request) {
+        try {
+            Directory dir = directoryService.moveDirectory(directoryId, request.getParentId());
+
+            return ResponseEntity.ok(new DirectoryResponse(
+                    dir.getId(),
+                    dir.getName(),
+                    dir.getFullPath(),
+                    "Directory moved successfully",
+                    true
+            ));
+
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(new DirectoryResponse(
+                    directoryId, null, null, "Failed to move directory: " + e.getMessage(), false
+            ));
+        }
+    }
+
+    /**
+     * Copy a directory and everything below it; the copies share the stored content
+     * POST /api/directories/{directoryId}/copy
+     */
+    @PostMapping("/{directoryId}/copy")
+    public ResponseEntity<?> copyDirectory(@PathVariable Long directoryId, @RequestBody CopyDirRequest request) {
+        try {
+            Directory dir = provisioningService.copySubtree(directoryId, request.getParentId(), request.getDirectoryName());
+
+            return ResponseEntity.ok(new DirectoryResponse(
+                    dir.getId(),
+                    dir.getName(),
+                    dir.getFullPath(),
+                    "Directory copied successfully",
+                    true
+            ));
+
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(new DirectoryResponse(
+                    directoryId, null, null, "Failed to copy directory: " + e.getMessage(), false
+            ));
+        }
+    }
+
     /**
      * Get directory tree structure
      * GET /api/directories/tree
@@ -126,6 +246,32 @@ public class DirectoryController {
         }
     }
 
+    /**
+     * Get file count and size of a directory, direct and recursive
+     * GET /api/directories/{directoryId}/usage
+     */
+    @GetMapping("/{directoryId}/usage")
+    public ResponseEntity<Map<String, Object>> getDirectoryUsage(@PathVariable Long directoryId) {
+        try {
+            return ResponseEntity.ok(directoryService.getDirectoryUsage(directoryId));
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Recompute usage counters from the file records
+     * POST /api/directories/usage/reconcile
+     */
+    @PostMapping("/usage/reconcile")
+    public ResponseEntity<Map<String, Object>> reconcileUsage() {
+        int corrected = directoryUsageService.reconcile();
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "correctedDirectories", corrected
+        ));
+    }
+
     /**
      * Delete a directory and all its subdirectories
      * DELETE /api/directories/{directoryId}
@@ -185,6 +331,25 @@ public class DirectoryController {
         public void setDirectoryName(String directoryName) { this.directoryName = directoryName; }
     }
 
+    public static class ProvisionRequest {
+        private List<String> projectNames;
+        private String template;
+
+        // Constructors
+        public ProvisionRequest() {}
+        public ProvisionRequest(List<String> projectNames, String template) {
+            this.projectNames = projectNames;
+            this.template = template;
+        }
+
+        // Getters and Setters
+        public List<String> getProjectNames() { return projectNames; }
+        public void setProjectNames(List<String> projectNames) { this.projectNames = projectNames; }
+
+        public String getTemplate() { return template; }
+        public void setTemplate(String template) { this.template = template; }
+    }
+
     public static class CreateSubdirRequest {
         private Long parentId;
         private String directoryName;
@@ -204,6 +369,53 @@ public class DirectoryController {
         public void setDirectoryName(String directoryName) { this.directoryName = directoryName; }
     }
 
+    public static class RenameDirRequest {
+        private String directoryName;
+
+        // Constructors
+        public RenameDirRequest() {}
+        public RenameDirRequest(String directoryName) {
+            this.directoryName = directoryName;
+        }
+
+        // Getters and Setters
+        public String getDirectoryName() { return directoryName; }
+        public void setDirectoryName(String directoryName) { this.directoryName = directoryName; }
+    }
+
+    public static class MoveDirRequest {
+        private Long parentId;
+
+        // Constructors
+        public MoveDirRequest() {}
+        public MoveDirRequest(Long parentId) {
+            this.parentId = parentId;
+        }
+
+        // Getters and Setters
+        public Long getParentId() { return parentId; }
+        public void setParentId(Long parentId) { this.parentId = parentId; }
+    }
+
+    public static class CopyDirRequest {
+        private Long parentId;
+        private String directoryName;
+
+        // Constructors
+        public CopyDirRequest() {}
+        public CopyDirRequest(Long parentId, String directoryName) {
+            this.parentId = parentId;
+            this.directoryName = directoryName;
+        }
+
+        // Getters and Setters
+        public Long getParentId() { return parentId; }
+        public void setParentId(Long parentId) { this.parentId = parentId; }
+
+        public String getDirectoryName() { return directoryName; }
+        public void setDirectoryName(String directoryName) { this.directoryName = directoryName; }
+    }
+
     public static class DirectoryResponse {
         private Long id;
         private String name;
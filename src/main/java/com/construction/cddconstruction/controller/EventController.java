@@ -0,0 +1,36 @@
+package com.construction.cddconstruction.controller;
+
+import com.construction.cddconstruction.service.ChangeEventService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/events")
+@CrossOrigin(origins = "http://localhost:5173")
+public class EventController {
+
+    @Autowired
+    private ChangeEventService changeEventService;
+
+    /**
+     * Stream directory and file changes as Server-Sent Events
+     * GET /api/events?directoryId={id}&since={sequence}
+     * Reconnecting EventSource clients resume automatically through the Last-Event-ID header.
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamEvents(
+            @RequestParam(required = false) Long directoryId,
+            @RequestParam(required = false) Long since,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        try {
+            Long cursor = lastEventId != null ? lastEventId : since;
+            return ResponseEntity.ok(changeEventService.subscribe(directoryId, cursor));
+
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+}
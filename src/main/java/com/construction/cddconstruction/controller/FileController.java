@@ -1,10 +1,18 @@
 package com.construction.cddconstruction.controller;
 
 import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.entity.FileRevision;
 import com.construction.cddconstruction.service.FileStorageService;
+import com.construction.cddconstruction.service.IntegrityService;
+import com.construction.cddconstruction.service.MappedFileService;
+import com.construction.cddconstruction.service.QuotaService;
+import com.construction.cddconstruction.service.ReadCoalescingService;
+import com.construction.cddconstruction.service.TieringService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -22,6 +30,18 @@ public class FileController {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private IntegrityService integrityService;
+
+    @Autowired
+    private TieringService tieringService;
+
+    @Autowired
+    private ReadCoalescingService readCoalescingService;
+
+    @Autowired
+    private MappedFileService mappedFileService;
+
     /**
      * Upload a file to a specific directory
      */
@@ -50,6 +70,9 @@ public class FileController {
 
             return ResponseEntity.ok(response);
 
+        } catch (QuotaService.QuotaExceededException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE)
+                    .body(Map.of("error", "Upload rejected: " + e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
                     .body(Map.of("error", "Upload failed: " + e.getMessage()));
@@ -83,6 +106,9 @@ public class FileController {
 
             return ResponseEntity.ok(response);
 
+        } catch (QuotaService.QuotaExceededException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE)
+                    .body(Map.of("error", "Upload rejected: " + e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.internalServerError()
                     .body(Map.of("error", "Upload failed: " + e.getMessage()));
@@ -112,7 +138,7 @@ public class FileController {
      */
     @GetMapping("/{fileId}")
     public ResponseEntity<File> getFile(@PathVariable Long fileId) {
-        File file = fileStorageService.getFile(fileId);
+        File file = readCoalescingService.findFile(fileId).orElse(null);
         if (file != null) {
             return ResponseEntity.ok(file);
         } else {
@@ -121,27 +147,115 @@ public class FileController {
     }
 
     /**
-     * Download a file
+     * Download a file. Large drawings served from memory mappings also answer single byte
+     * ranges, so viewers can fetch pages without the whole file.
      */
     @GetMapping("/download/{fileId}")
-    public ResponseEntity<ByteArrayResource> downloadFile(@PathVariable Long fileId) {
+    public ResponseEntity<InputStreamResource> downloadFile(
+            @PathVariable Long fileId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range) {
         try {
-            File file = fileStorageService.getFile(fileId);
+            File file = readCoalescingService.findFile(fileId).orElse(null);
             if (file == null) {
                 return ResponseEntity.notFound().build();
             }
+            tieringService.recordAccess(file);
 
-            byte[] fileContent = fileStorageService.getFileContent(fileId);
-            ByteArrayResource resource = new ByteArrayResource(fileContent);
+            MappedFileService.Lease lease = mappedFileService.acquire(file);
+            if (lease != null) {
+                return downloadMapped(file, lease, range);
+            }
 
-            return ResponseEntity.ok()
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getOriginalName() + "\"")
-                    .body(resource);
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+            // Compressed at rest and the client accepts gzip: send the stored bytes as-is
+            // (unless downloads are verified, which needs the decoded content)
+            if (file.getStorageEncoding() != null && !integrityService.isVerifyOnDownload()
+                    && acceptsEncoding(acceptEncoding, file.getStorageEncoding())) {
+                return response
+                        .header(HttpHeaders.CONTENT_ENCODING, file.getStorageEncoding())
+                        .contentLength(file.getStoredSize())
+                        .body(new InputStreamResource(readCoalescingService.openStoredContent(file)));
+            }
+
+            return response
+                    .contentLength(file.getFileSize())
+                    .body(new InputStreamResource(
+                            integrityService.verifyingStream(file, readCoalescingService.openFileContent(file))));
+
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Upload a new revision of an existing file
+     */
+    @PostMapping("/{fileId}/revisions")
+    public ResponseEntity<Map<String, Object>> uploadRevision(
+            @PathVariable Long fileId,
+            @RequestParam("file") MultipartFile file) {
+
+        try {
+            if (file.isEmpty()) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Please select a file to upload"));
+            }
+
+            File savedFile = fileStorageService.uploadRevision(fileId, file);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Revision uploaded successfully");
+            response.put("file", Map.of(
+                    "id", savedFile.getId(),
+                    "name", savedFile.getOriginalName(),
+                    "size", savedFile.getFileSize(),
+                    "type", savedFile.getContentType()
+            ));
 
+            return ResponseEntity.ok(response);
+
+        } catch (QuotaService.QuotaExceededException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE)
+                    .body(Map.of("error", "Upload rejected: " + e.getMessage()));
         } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Upload failed: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * List the revisions of a file, newest first
+     */
+    @GetMapping("/{fileId}/revisions")
+    public ResponseEntity<List<FileRevision>> getRevisions(@PathVariable Long fileId) {
+        if (fileStorageService.getFile(fileId) == null) {
             return ResponseEntity.notFound().build();
         }
+        return ResponseEntity.ok(fileStorageService.getRevisions(fileId));
+    }
+
+    /**
+     * Download an old revision of a file (streamed, never loaded fully in memory)
+     */
+    @GetMapping("/{fileId}/revisions/{revisionNumber}/download")
+    public ResponseEntity<InputStreamResource> downloadRevision(@PathVariable Long fileId,
+                                                                @PathVariable Integer revisionNumber) {
+        FileRevision revision = fileStorageService.getRevision(fileId, revisionNumber);
+        if (revision == null || fileStorageService.getFile(fileId) == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(revision.getFileSize())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + revision.getOriginalName() + "\"")
+                .body(new InputStreamResource(fileStorageService.openRevision(revision)));
     }
 
     /**
@@ -192,4 +306,76 @@ public class FileController {
                 "allowedTypes", "All file types"
         ));
     }
-}
\ No newline at end of file
+
+    // =================== HELPER METHODS ===================
+
+    /**
+     * Whether an Accept-Encoding header allows a coding: its own entry decides if it has
+     * one, otherwise "*" does; a q-value of 0 is a refusal
+     */
+    private boolean acceptsEncoding(String acceptEncoding, String coding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double codingQuality = null;
+        Double wildcardQuality = null;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String name = parts[0].trim().toLowerCase();
+            double quality = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim().toLowerCase();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equals(coding) || name.equals("x-" + coding)) {
+                codingQuality = codingQuality == null ? quality : Math.max(codingQuality, quality);
+            } else if (name.equals("*")) {
+                wildcardQuality = quality;
+            }
+        }
+        if (codingQuality != null) {
+            return codingQuality > 0;
+        }
+        return wildcardQuality != null && wildcardQuality > 0;
+    }
+
+    private ResponseEntity<InputStreamResource> downloadMapped(File file, MappedFileService.Lease lease, String range) {
+        long length = lease.size();
+        try {
+            List<HttpRange> ranges = range == null ? List.of() : HttpRange.parseRanges(range);
+            // Multiple ranges aren't worth a multipart body; those clients get the whole file
+            if (ranges.size() == 1) {
+                long start = ranges.get(0).getRangeStart(length);
+                long end = ranges.get(0).getRangeEnd(length);
+                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getOriginalName() + "\"")
+                        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length)
+                        .contentLength(end - start + 1)
+                        .body(new InputStreamResource(lease.openStream(start, end - start + 1)));
+            }
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + file.getOriginalName() + "\"")
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .contentLength(length)
+                    .body(new InputStreamResource(integrityService.verifyingStream(file, lease.openStream(0, length))));
+        } catch (IllegalArgumentException e) {
+            // Malformed, or starting past the end
+            lease.close();
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                    .build();
+        } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+}
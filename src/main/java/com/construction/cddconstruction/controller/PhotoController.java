@@ -0,0 +1,75 @@
+package com.construction.cddconstruction.controller;
+
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.service.PhotoTimelineService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/photos")
+@CrossOrigin(origins = "http://localhost:5173")
+public class PhotoController {
+
+    @Autowired
+    private PhotoTimelineService photoTimelineService;
+
+    /**
+     * Photo count per capture day below a directory (all directories if omitted), dates inclusive
+     * GET /api/photos/timeline?directoryId=1&from=2025-03-01&to=2025-03-31
+     */
+    @GetMapping("/timeline")
+    public ResponseEntity<Map<String, Object>> getTimeline(
+            @RequestParam(required = false) Long directoryId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return ResponseEntity.ok(photoTimelineService.getTimeline(directoryId, from, to));
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * A page of photos in capture order below a directory, dates inclusive
+     * GET /api/photos?directoryId=1&from=2025-03-01&to=2025-03-31&page=0&size=50
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getPhotos(
+            @RequestParam(required = false) Long directoryId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        try {
+            List<File> photos = photoTimelineService.getPhotos(directoryId, from, to, page, size);
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("page", page);
+            response.put("size", size);
+            response.put("photos", photos);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Read capture date and dimensions of images uploaded before they were recorded
+     * POST /api/photos/backfill?limit=1000
+     */
+    @PostMapping("/backfill")
+    public ResponseEntity<Map<String, Object>> backfill(@RequestParam(defaultValue = "1000") int limit) {
+        int[] result = photoTimelineService.backfill(limit);
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "scanned", result[0],
+                "updated", result[1]
+        ));
+    }
+}
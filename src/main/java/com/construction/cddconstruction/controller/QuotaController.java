@@ -0,0 +1,52 @@
+package com.construction.cddconstruction.controller;
+
+import com.construction.cddconstruction.service.QuotaService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/quotas")
+@CrossOrigin(origins = "http://localhost:5173")
+public class QuotaController {
+
+    @Autowired
+    private QuotaService quotaService;
+
+    /**
+     * Storage used against the limits of every project and user
+     * GET /api/quotas
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getUsage() {
+        return ResponseEntity.ok(quotaService.getUsage());
+    }
+
+    /**
+     * Storage used against the limit of the current user
+     * GET /api/quotas/me
+     */
+    @GetMapping("/me")
+    public ResponseEntity<Map<String, Object>> getMyUsage() {
+        String user = QuotaService.currentUser();
+        if (user == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(quotaService.getUserUsage(user));
+    }
+
+    /**
+     * Recompute the usage counters from the database right away
+     * POST /api/quotas/reconcile
+     */
+    @PostMapping("/reconcile")
+    public ResponseEntity<Map<String, Object>> reconcile() {
+        int corrected = quotaService.reconcile();
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "correctedCounters", corrected
+        ));
+    }
+}
@@ -0,0 +1,34 @@
+package com.construction.cddconstruction.controller;
+
+import com.construction.cddconstruction.service.DeltaSyncService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/sync")
+@CrossOrigin(origins = "http://localhost:5173")
+public class SyncController {
+
+    @Autowired
+    private DeltaSyncService deltaSyncService;
+
+    /**
+     * Changes below a directory since a cursor (omit the cursor for a full listing)
+     * GET /api/sync/{directoryId}?cursor={cursor}
+     */
+    @GetMapping("/{directoryId}")
+    public ResponseEntity<Map<String, Object>> getManifest(@PathVariable Long directoryId,
+                                                           @RequestParam(required = false) Long cursor) {
+        try {
+            return ResponseEntity.ok(deltaSyncService.getManifest(directoryId, cursor));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "Failed to build sync manifest: " + e.getMessage()
+            ));
+        }
+    }
+}
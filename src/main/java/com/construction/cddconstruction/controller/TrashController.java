@@ -0,0 +1,78 @@
+package com.construction.cddconstruction.controller;
+
+import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.service.DirectoryService;
+import com.construction.cddconstruction.service.FileStorageService;
+import com.construction.cddconstruction.service.TrashService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/trash")
+@CrossOrigin(origins = "http://localhost:5173")
+public class TrashController {
+
+    @Autowired
+    private TrashService trashService;
+
+    @Autowired
+    private DirectoryService directoryService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    /**
+     * List trashed directories and files
+     * GET /api/trash
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getTrash() {
+        return ResponseEntity.ok(trashService.getTrash());
+    }
+
+    /**
+     * Restore a trashed directory with its contents
+     * POST /api/trash/directories/{directoryId}/restore
+     */
+    @PostMapping("/directories/{directoryId}/restore")
+    public ResponseEntity<Map<String, Object>> restoreDirectory(@PathVariable Long directoryId) {
+        try {
+            Directory directory = directoryService.restoreDirectory(directoryId);
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Directory restored successfully",
+                    "fullPath", directory.getFullPath()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "Failed to restore directory: " + e.getMessage()
+            ));
+        }
+    }
+
+    /**
+     * Restore a trashed file
+     * POST /api/trash/files/{fileId}/restore
+     */
+    @PostMapping("/files/{fileId}/restore")
+    public ResponseEntity<Map<String, Object>> restoreFile(@PathVariable Long fileId) {
+        try {
+            File file = fileStorageService.restoreFile(fileId);
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "File restored successfully",
+                    "id", file.getId()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "Failed to restore file: " + e.getMessage()
+            ));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.construction.cddconstruction.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "blob_chunks")
+public class BlobChunk {
+
+    // SHA-256 of the chunk content, hex encoded
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    @Column(name = "chunk_size", nullable = false)
+    private Integer chunkSize;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    public BlobChunk() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public BlobChunk(String hash, Integer chunkSize, Integer refCount) {
+        this();
+        this.hash = hash;
+        this.chunkSize = chunkSize;
+        this.refCount = refCount;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public void setHash(String hash) {
+        this.hash = hash;
+    }
+
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(Integer chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public Integer getRefCount() {
+        return refCount;
+    }
+
+    public void setRefCount(Integer refCount) {
+        this.refCount = refCount;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
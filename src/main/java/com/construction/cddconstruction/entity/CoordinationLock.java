@@ -0,0 +1,62 @@
+package com.construction.cddconstruction.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A named lock shared by every instance on the catalog. Holding it means holding the
+ * row lock on this row until the transaction ends; every acquisition sets a new fencing
+ * token from coordination_fence_seq, so disk changes can be checked against the latest holder.
+ */
+@Entity
+@Table(name = "coordination_locks")
+public class CoordinationLock {
+
+    @Id
+    @Column(name = "name", length = 128)
+    private String name;
+
+    @Column(name = "fencing_token", nullable = false)
+    private long fencingToken;
+
+    // Instance that acquired it last
+    @Column(name = "holder")
+    private String holder;
+
+    @Column(name = "acquired_at")
+    private LocalDateTime acquiredAt;
+
+    public CoordinationLock() {}
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getFencingToken() {
+        return fencingToken;
+    }
+
+    public void setFencingToken(long fencingToken) {
+        this.fencingToken = fencingToken;
+    }
+
+    public String getHolder() {
+        return holder;
+    }
+
+    public void setHolder(String holder) {
+        this.holder = holder;
+    }
+
+    public LocalDateTime getAcquiredAt() {
+        return acquiredAt;
+    }
+
+    public void setAcquiredAt(LocalDateTime acquiredAt) {
+        this.acquiredAt = acquiredAt;
+    }
+}
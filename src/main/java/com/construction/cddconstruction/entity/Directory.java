@@ -4,7 +4,9 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "directories")
+@Table(name = "directories", indexes = {
+        @Index(name = "idx_directories_parent_name", columnList = "parent_id, name")
+})
 public class Directory {
 
     @Id
@@ -14,7 +16,7 @@ public class Directory {
     @Column(nullable = false)
     private String name;
 
-    @Column(name = "full_path", nullable = false, unique = true)
+    @Column(name = "full_path", nullable = false, unique = true, length = 1024)
     private String fullPath;
 
     @Column(name = "parent_id")
@@ -29,6 +31,28 @@ public class Directory {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Usage of the files directly in this directory. The counters are only changed by
+    // DirectoryRepository's usage updates; saving a directory loaded earlier must not
+    // write back values that uploads have moved on from meanwhile.
+    @Column(name = "file_count", nullable = false, updatable = false)
+    private long fileCount = 0;
+
+    @Column(name = "size_bytes", nullable = false, updatable = false)
+    private long sizeBytes = 0;
+
+    // Usage of this directory and everything below it
+    @Column(name = "total_file_count", nullable = false, updatable = false)
+    private long totalFileCount = 0;
+
+    @Column(name = "total_size_bytes", nullable = false, updatable = false)
+    private long totalSizeBytes = 0;
+
+    @Column(name = "deleted", nullable = false)
+    private boolean deleted = false;
+
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
     public Directory() {
         this.createdAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
@@ -102,4 +126,52 @@ public class Directory {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public void setFileCount(long fileCount) {
+        this.fileCount = fileCount;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public long getTotalFileCount() {
+        return totalFileCount;
+    }
+
+    public void setTotalFileCount(long totalFileCount) {
+        this.totalFileCount = totalFileCount;
+    }
+
+    public long getTotalSizeBytes() {
+        return totalSizeBytes;
+    }
+
+    public void setTotalSizeBytes(long totalSizeBytes) {
+        this.totalSizeBytes = totalSizeBytes;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(LocalDateTime deletedAt) {
+        this.deletedAt = deletedAt;
+    }
 }
\ No newline at end of file
@@ -4,7 +4,13 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "files")
+@Table(name = "files", indexes = {
+        @Index(name = "idx_files_directory_id", columnList = "directory_id"),
+        @Index(name = "idx_files_segment_id", columnList = "segment_id"),
+        @Index(name = "idx_files_last_accessed_at", columnList = "last_accessed_at"),
+        @Index(name = "idx_files_storage_key", columnList = "storage_key"),
+        @Index(name = "idx_files_captured_at", columnList = "captured_at")
+})
 public class File {
 
     @Id
@@ -14,7 +20,7 @@ public class File {
     @Column(name = "original_name", nullable = false)
     private String originalName;
 
-    @Column(name = "file_path", nullable = false, unique = true)
+    @Column(name = "file_path", nullable = false, unique = true, length = 1024)
     private String filePath;
 
     @Column(name = "file_size")
@@ -26,12 +32,78 @@ public class File {
     @Column(name = "directory_id")
     private Long directoryId;
 
+    // User the file's bytes count against; null for files found on disk or uploaded before tracking
+    @Column(name = "uploaded_by")
+    private String uploadedBy;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
+    // Photos only: EXIF capture time (camera local time) and pixel dimensions, read on upload
+    @Column(name = "captured_at")
+    private LocalDateTime capturedAt;
+
+    @Column(name = "image_width")
+    private Integer imageWidth;
+
+    @Column(name = "image_height")
+    private Integer imageHeight;
+
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // null for files stored as-is, "gzip" for files compressed at rest
+    @Column(name = "storage_encoding")
+    private String storageEncoding;
+
+    // Bytes on disk; differs from fileSize when the file is compressed at rest
+    @Column(name = "stored_size")
+    private Long storedSize;
+
+    // Set for small blobs packed into a segment file: the blob is storedSize bytes at
+    // segmentOffset, and filePath is only a logical location with nothing on disk
+    @Column(name = "segment_id")
+    private Long segmentId;
+
+    @Column(name = "segment_offset")
+    private Long segmentOffset;
+
+    // Set when the content lives in a non-local blob store under this key; filePath is
+    // then only a logical location, as for packed blobs
+    @Column(name = "storage_key", length = 1024)
+    private String storageKey;
+
+    // "cold" when the content was migrated to the cold tier under storageKey (always
+    // gzip of the original content); null for the hot tier
+    @Column(name = "storage_tier", length = 8)
+    private String storageTier;
+
+    // Last download, flushed in batches; null if never downloaded since tracking started
+    @Column(name = "last_accessed_at")
+    private LocalDateTime lastAccessedAt;
+
+    // SHA-256 of the original (decoded) content, hex encoded
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Last time the scrubber re-read the blob and found it matching contentHash
+    @Column(name = "checksum_verified_at")
+    private LocalDateTime checksumVerifiedAt;
+
+    // Set when the blob no longer matches contentHash
+    @Column(name = "checksum_mismatch", nullable = false)
+    private boolean checksumMismatch = false;
+
+    // Set by reconciliation when the row exists but its blob is gone
+    @Column(name = "blob_missing", nullable = false)
+    private boolean blobMissing = false;
+
+    @Column(name = "deleted", nullable = false)
+    private boolean deleted = false;
+
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
     public File() {
         this.createdAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
@@ -99,6 +171,14 @@ public class File {
         this.directoryId = directoryId;
     }
 
+    public String getUploadedBy() {
+        return uploadedBy;
+    }
+
+    public void setUploadedBy(String uploadedBy) {
+        this.uploadedBy = uploadedBy;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -107,6 +187,30 @@ public class File {
         this.createdAt = createdAt;
     }
 
+    public LocalDateTime getCapturedAt() {
+        return capturedAt;
+    }
+
+    public void setCapturedAt(LocalDateTime capturedAt) {
+        this.capturedAt = capturedAt;
+    }
+
+    public Integer getImageWidth() {
+        return imageWidth;
+    }
+
+    public void setImageWidth(Integer imageWidth) {
+        this.imageWidth = imageWidth;
+    }
+
+    public Integer getImageHeight() {
+        return imageHeight;
+    }
+
+    public void setImageHeight(Integer imageHeight) {
+        this.imageHeight = imageHeight;
+    }
+
     public LocalDateTime getUpdatedAt() {
         return updatedAt;
     }
@@ -114,4 +218,108 @@ public class File {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public String getStorageEncoding() {
+        return storageEncoding;
+    }
+
+    public void setStorageEncoding(String storageEncoding) {
+        this.storageEncoding = storageEncoding;
+    }
+
+    public Long getStoredSize() {
+        return storedSize;
+    }
+
+    public void setStoredSize(Long storedSize) {
+        this.storedSize = storedSize;
+    }
+
+    public Long getSegmentId() {
+        return segmentId;
+    }
+
+    public void setSegmentId(Long segmentId) {
+        this.segmentId = segmentId;
+    }
+
+    public Long getSegmentOffset() {
+        return segmentOffset;
+    }
+
+    public void setSegmentOffset(Long segmentOffset) {
+        this.segmentOffset = segmentOffset;
+    }
+
+    public String getStorageKey() {
+        return storageKey;
+    }
+
+    public void setStorageKey(String storageKey) {
+        this.storageKey = storageKey;
+    }
+
+    public String getStorageTier() {
+        return storageTier;
+    }
+
+    public void setStorageTier(String storageTier) {
+        this.storageTier = storageTier;
+    }
+
+    public LocalDateTime getLastAccessedAt() {
+        return lastAccessedAt;
+    }
+
+    public void setLastAccessedAt(LocalDateTime lastAccessedAt) {
+        this.lastAccessedAt = lastAccessedAt;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public LocalDateTime getChecksumVerifiedAt() {
+        return checksumVerifiedAt;
+    }
+
+    public void setChecksumVerifiedAt(LocalDateTime checksumVerifiedAt) {
+        this.checksumVerifiedAt = checksumVerifiedAt;
+    }
+
+    public boolean isChecksumMismatch() {
+        return checksumMismatch;
+    }
+
+    public void setChecksumMismatch(boolean checksumMismatch) {
+        this.checksumMismatch = checksumMismatch;
+    }
+
+    public boolean isBlobMissing() {
+        return blobMissing;
+    }
+
+    public void setBlobMissing(boolean blobMissing) {
+        this.blobMissing = blobMissing;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(LocalDateTime deletedAt) {
+        this.deletedAt = deletedAt;
+    }
 }
\ No newline at end of file
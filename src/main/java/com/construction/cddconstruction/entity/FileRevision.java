@@ -0,0 +1,123 @@
+package com.construction.cddconstruction.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Entity
+@Table(name = "file_revisions",
+        uniqueConstraints = @UniqueConstraint(name = "uk_file_revisions_file_revision",
+                columnNames = {"file_id", "revision_number"}))
+public class FileRevision {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "file_id", nullable = false)
+    private Long fileId;
+
+    @Column(name = "revision_number", nullable = false)
+    private Integer revisionNumber;
+
+    @Column(name = "original_name", nullable = false)
+    private String originalName;
+
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    // Content of the revision, in order, as hashes into the chunk store
+    @JsonIgnore
+    @ElementCollection
+    @CollectionTable(name = "file_revision_chunks", joinColumns = @JoinColumn(name = "revision_id"))
+    @OrderColumn(name = "chunk_index")
+    @Column(name = "chunk_hash", length = 64, nullable = false)
+    private List<String> chunkHashes = new ArrayList<>();
+
+    public FileRevision() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public FileRevision(Long fileId, Integer revisionNumber, String originalName, Long fileSize,
+                        String contentType, List<String> chunkHashes) {
+        this();
+        this.fileId = fileId;
+        this.revisionNumber = revisionNumber;
+        this.originalName = originalName;
+        this.fileSize = fileSize;
+        this.contentType = contentType;
+        this.chunkHashes = chunkHashes;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getFileId() {
+        return fileId;
+    }
+
+    public void setFileId(Long fileId) {
+        this.fileId = fileId;
+    }
+
+    public Integer getRevisionNumber() {
+        return revisionNumber;
+    }
+
+    public void setRevisionNumber(Integer revisionNumber) {
+        this.revisionNumber = revisionNumber;
+    }
+
+    public String getOriginalName() {
+        return originalName;
+    }
+
+    public void setOriginalName(String originalName) {
+        this.originalName = originalName;
+    }
+
+    public Long getFileSize() {
+        return fileSize;
+    }
+
+    public void setFileSize(Long fileSize) {
+        this.fileSize = fileSize;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public List<String> getChunkHashes() {
+        return chunkHashes;
+    }
+
+    public void setChunkHashes(List<String> chunkHashes) {
+        this.chunkHashes = chunkHashes;
+    }
+}
@@ -0,0 +1,74 @@
+package com.construction.cddconstruction.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Last persisted value of a quota usage counter. The live counters are kept in memory;
+ * these rows only let a restart begin from recent values.
+ */
+@Entity
+@Table(name = "quota_usage", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_quota_usage_scope_subject", columnNames = {"scope", "subject"})
+})
+public class QuotaUsage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // "project" (subject = root directory id) or "user" (subject = user name)
+    @Column(name = "scope", nullable = false, length = 16)
+    private String scope;
+
+    @Column(name = "subject", nullable = false)
+    private String subject;
+
+    @Column(name = "used_bytes", nullable = false)
+    private long usedBytes;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public QuotaUsage() {}
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public void setScope(String scope) {
+        this.scope = scope;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public void setSubject(String subject) {
+        this.subject = subject;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public void setUsedBytes(long usedBytes) {
+        this.usedBytes = usedBytes;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
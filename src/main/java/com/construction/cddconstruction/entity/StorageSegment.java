@@ -0,0 +1,88 @@
+package com.construction.cddconstruction.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * An append-only segment file holding many small blobs back to back. Which bytes are
+ * still live is derived from the file rows pointing into the segment.
+ */
+@Entity
+@Table(name = "storage_segments")
+public class StorageSegment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Final size, recorded when the segment is sealed; the open segment is sized from disk
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    // Sealed segments take no more appends and are candidates for compaction
+    @Column(name = "sealed", nullable = false)
+    private boolean sealed = false;
+
+    // Live entries were copied out; the file is deleted on the next compaction pass
+    @Column(name = "retired", nullable = false)
+    private boolean retired = false;
+
+    // Node id of the instance appending to it while open, or compacting it once sealed
+    @Column(name = "holder")
+    private String holder;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    public StorageSegment() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    public void setSealed(boolean sealed) {
+        this.sealed = sealed;
+    }
+
+    public boolean isRetired() {
+        return retired;
+    }
+
+    public void setRetired(boolean retired) {
+        this.retired = retired;
+    }
+
+    public String getHolder() {
+        return holder;
+    }
+
+    public void setHolder(String holder) {
+        this.holder = holder;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,21 @@
+package com.construction.cddconstruction.repository;
+
+import com.construction.cddconstruction.entity.BlobChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BlobChunkRepository extends JpaRepository<BlobChunk, String> {
+
+    @Modifying
+    @Query("UPDATE BlobChunk c SET c.refCount = c.refCount + :delta WHERE c.hash = :hash")
+    int adjustRefCount(@Param("hash") String hash, @Param("delta") int delta);
+
+    List<BlobChunk> findByHashInAndRefCountLessThanEqual(Collection<String> hashes, Integer refCount);
+}
@@ -0,0 +1,51 @@
+package com.construction.cddconstruction.repository;
+
+import com.construction.cddconstruction.entity.ChangeLogEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ChangeLogRepository extends JpaRepository<ChangeLogEntry, Long> {
+
+    @Query("SELECT c FROM ChangeLogEntry c WHERE c.id > :afterId ORDER BY c.id ASC")
+    List<ChangeLogEntry> findAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("SELECT COALESCE(MAX(c.id), 0) FROM ChangeLogEntry c")
+    Long findMaxId();
+
+    @Query("SELECT MIN(c.id) FROM ChangeLogEntry c WHERE c.createdAt >= :since")
+    Long findMinIdCreatedSince(@Param("since") LocalDateTime since);
+
+    /**
+     * Highest id dropped by age-based compaction; cursors at or below it need a full resync
+     */
+    @Query("SELECT COALESCE(MAX(c.entityId), 0) FROM ChangeLogEntry c WHERE c.entityType = 'log'")
+    Long findTruncatedThrough();
+
+    // =================== COMPACTION ===================
+
+    /**
+     * Drop entries superseded by a newer entry for the same entity at the same path; a
+     * client behind the older entry still learns about the entity from the newer one
+     */
+    @Modifying
+    @Query(value = "DELETE FROM change_log c WHERE c.created_at < :cutoff AND c.previous_path IS NULL " +
+            "AND EXISTS (SELECT 1 FROM change_log n WHERE n.entity_type = c.entity_type " +
+            "AND n.entity_id = c.entity_id AND n.path = c.path AND n.previous_path IS NULL AND n.id > c.id)",
+            nativeQuery = true)
+    int deleteSuperseded(@Param("cutoff") LocalDateTime cutoff);
+
+    @Query("SELECT MAX(c.id) FROM ChangeLogEntry c WHERE c.createdAt < :cutoff")
+    Long findMaxIdCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Query("DELETE FROM ChangeLogEntry c WHERE c.id <= :throughId")
+    int deleteThrough(@Param("throughId") Long throughId);
+}
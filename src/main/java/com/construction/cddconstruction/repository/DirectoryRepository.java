@@ -1,11 +1,17 @@
 package com.construction.cddconstruction.repository;
 
 import com.construction.cddconstruction.entity.Directory;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,9 +24,101 @@ public interface DirectoryRepository extends JpaRepository<Directory, Long> {
 
     Optional<Directory> findByNameAndParentId(String name, Long parentId);
 
-    @Query("SELECT d FROM Directory d ORDER BY d.parentId ASC, d.name ASC")
+    Optional<Directory> findByIdAndDeletedFalse(Long id);
+
+    Optional<Directory> findByFullPath(String fullPath);
+
+    List<Directory> findByDeletedFalse();
+
+    List<Directory> findByParentIdAndDeletedFalse(Long parentId);
+
+    List<Directory> findByParentIdIsNullAndDeletedFalse();
+
+    Optional<Directory> findByNameAndParentIdAndDeletedFalse(String name, Long parentId);
+
+    /**
+     * A live directory, row-locked until the transaction ends; moving or trashing anything
+     * above it rewrites this row, so the two wait for each other on every instance
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT d FROM Directory d WHERE d.id = :id AND d.deleted = false")
+    Optional<Directory> findLiveByIdForUpdate(@Param("id") Long id);
+
+    /**
+     * Current path of a live directory, read from the database even when the entity is
+     * already loaded
+     */
+    @Query("SELECT d.fullPath FROM Directory d WHERE d.id = :id AND d.deleted = false")
+    Optional<String> findLivePathById(@Param("id") Long id);
+
+    @Query("SELECT d FROM Directory d WHERE d.deleted = false ORDER BY d.parentId ASC, d.name ASC")
     List<Directory> findAllDirectoriesOrdered();
 
     @Query("SELECT d FROM Directory d WHERE d.parentId = :parentId OR d.id = :parentId ORDER BY d.id")
     List<Directory> findDirectoryAndChildren(@Param("parentId") Long parentId);
+
+    /**
+     * Rewrite the path prefix of every directory below a moved/renamed directory in one statement.
+     * The pattern must be a LIKE pattern using '!' as escape character.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Directory d SET d.fullPath = CONCAT(:newPrefix, SUBSTRING(d.fullPath, :oldPrefixLength + 1)) " +
+            "WHERE d.fullPath LIKE :pattern ESCAPE '!'")
+    int rewritePathPrefix(@Param("pattern") String pattern,
+                          @Param("oldPrefixLength") int oldPrefixLength,
+                          @Param("newPrefix") String newPrefix);
+
+    // =================== USAGE ===================
+
+    @Modifying
+    @Query("UPDATE Directory d SET d.fileCount = d.fileCount + :files, d.sizeBytes = d.sizeBytes + :bytes " +
+            "WHERE d.id = :id")
+    int adjustDirectUsage(@Param("id") Long id, @Param("files") long files, @Param("bytes") long bytes);
+
+    @Modifying
+    @Query("UPDATE Directory d SET d.totalFileCount = d.totalFileCount + :files, " +
+            "d.totalSizeBytes = d.totalSizeBytes + :bytes WHERE d.id IN :ids")
+    int adjustTotalUsage(@Param("ids") Collection<Long> ids, @Param("files") long files, @Param("bytes") long bytes);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Directory d SET d.fileCount = 0, d.sizeBytes = 0, d.totalFileCount = 0, d.totalSizeBytes = 0")
+    int resetUsage();
+
+    @Modifying
+    @Query("UPDATE Directory d SET d.fileCount = :fileCount, d.sizeBytes = :sizeBytes, " +
+            "d.totalFileCount = :totalFileCount, d.totalSizeBytes = :totalSizeBytes WHERE d.id = :id")
+    int setUsage(@Param("id") Long id, @Param("fileCount") long fileCount, @Param("sizeBytes") long sizeBytes,
+                 @Param("totalFileCount") long totalFileCount, @Param("totalSizeBytes") long totalSizeBytes);
+
+    // =================== SYNC ===================
+
+    @Query("SELECT d FROM Directory d WHERE d.deleted = false AND d.fullPath LIKE :pattern ESCAPE '!'")
+    List<Directory> findLiveByPathPattern(@Param("pattern") String pattern);
+
+    // =================== TRASH ===================
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Directory d SET d.deleted = true, d.deletedAt = :deletedAt " +
+            "WHERE d.deleted = false AND d.fullPath LIKE :pattern ESCAPE '!'")
+    int markDeletedByPathPattern(@Param("pattern") String pattern, @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Directory d SET d.deleted = false, d.deletedAt = null " +
+            "WHERE d.deletedAt = :deletedAt AND d.fullPath LIKE :pattern ESCAPE '!'")
+    int restoreByPathPattern(@Param("pattern") String pattern, @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM Directory d WHERE d.fullPath LIKE :pattern ESCAPE '!'")
+    int deleteByPathPattern(@Param("pattern") String pattern);
+
+    /**
+     * Deleted directories whose parent is still live (or gone): the entries that actually sit in the trash
+     */
+    @Query("SELECT d FROM Directory d WHERE d.deleted = true AND (d.parentId IS NULL OR d.parentId NOT IN " +
+            "(SELECT p.id FROM Directory p WHERE p.deleted = true)) ORDER BY d.deletedAt ASC")
+    List<Directory> findTrashedDirectories();
+
+    @Query("SELECT d FROM Directory d WHERE d.deleted = true AND d.deletedAt < :cutoff AND (d.parentId IS NULL OR d.parentId NOT IN " +
+            "(SELECT p.id FROM Directory p WHERE p.deleted = true)) ORDER BY d.deletedAt ASC")
+    List<Directory> findExpiredTrashedDirectories(@Param("cutoff") LocalDateTime cutoff, Pageable pageable);
 }
\ No newline at end of file
@@ -1,10 +1,20 @@
 package com.construction.cddconstruction.repository;
 
 import com.construction.cddconstruction.entity.File;
+import org.springframework.data.domain.Pageable;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface FileRepository extends JpaRepository<File, Long> {
@@ -14,4 +24,206 @@ public interface FileRepository extends JpaRepository<File, Long> {
     List<File> findByOriginalNameContainingIgnoreCase(String name);
 
     List<File> findByContentType(String contentType);
+
+    Optional<File> findByIdAndDeletedFalse(Long id);
+
+    // Held until commit, so revisions of one file are uploaded one at a time
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT f FROM File f WHERE f.id = :id AND f.deleted = false")
+    Optional<File> findLiveByIdForUpdate(@Param("id") Long id);
+
+    List<File> findByDeletedFalse();
+
+    List<File> findByDirectoryIdAndDeletedFalse(Long directoryId);
+
+    /**
+     * Rewrite the path prefix of every file below a moved/renamed directory in one statement.
+     * The pattern must be a LIKE pattern using '!' as escape character.
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE File f SET f.filePath = CONCAT(:newPrefix, SUBSTRING(f.filePath, :oldPrefixLength + 1)) " +
+            "WHERE f.filePath LIKE :pattern ESCAPE '!'")
+    int rewritePathPrefix(@Param("pattern") String pattern,
+                          @Param("oldPrefixLength") int oldPrefixLength,
+                          @Param("newPrefix") String newPrefix);
+
+    // =================== RECONCILIATION ===================
+
+    @Query("SELECT f.filePath FROM File f WHERE f.filePath IN :paths")
+    List<String> findExistingPaths(@Param("paths") Collection<String> paths);
+
+    Optional<File> findByFilePath(String filePath);
+
+    List<File> findByFilePathIn(Collection<String> filePaths);
+
+    @Query("SELECT f FROM File f WHERE f.id > :afterId ORDER BY f.id ASC")
+    List<File> findPageAfterId(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.blobMissing = :missing WHERE f.id IN :ids")
+    int updateBlobMissing(@Param("ids") Collection<Long> ids, @Param("missing") boolean missing);
+
+    /**
+     * Live file count and byte total per directory: [directoryId, count, bytes]
+     */
+    @Query("SELECT f.directoryId, COUNT(f), COALESCE(SUM(f.fileSize), 0) FROM File f " +
+            "WHERE f.deleted = false GROUP BY f.directoryId")
+    List<Object[]> sumLiveUsageByDirectory();
+
+    /**
+     * Live byte total per uploader: [uploadedBy, bytes]
+     */
+    @Query("SELECT f.uploadedBy, COALESCE(SUM(f.fileSize), 0) FROM File f " +
+            "WHERE f.deleted = false AND f.uploadedBy IS NOT NULL GROUP BY f.uploadedBy")
+    List<Object[]> sumLiveSizeByUploader();
+
+    // =================== INTEGRITY ===================
+
+    /**
+     * Live files due for re-verification, never-verified ones first
+     */
+    @Query("SELECT f FROM File f WHERE f.deleted = false AND f.blobMissing = false AND f.checksumMismatch = false " +
+            "AND (f.checksumVerifiedAt IS NULL OR f.checksumVerifiedAt < :verifiedBefore) " +
+            "ORDER BY f.checksumVerifiedAt ASC NULLS FIRST, f.id ASC")
+    List<File> findScrubCandidates(@Param("verifiedBefore") LocalDateTime verifiedBefore, Pageable pageable);
+
+    List<File> findByChecksumMismatchTrueAndDeletedFalse();
+
+    // The path condition drops results for a blob that was replaced (new revision) while it was being read
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.checksumVerifiedAt = :verifiedAt, f.contentHash = COALESCE(f.contentHash, :contentHash) " +
+            "WHERE f.id = :id AND f.filePath = :filePath")
+    int markVerified(@Param("id") Long id, @Param("filePath") String filePath,
+                     @Param("contentHash") String contentHash, @Param("verifiedAt") LocalDateTime verifiedAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.checksumMismatch = true, f.blobMissing = :blobMissing " +
+            "WHERE f.id = :id AND f.filePath = :filePath")
+    int markChecksumMismatch(@Param("id") Long id, @Param("filePath") String filePath,
+                             @Param("blobMissing") boolean blobMissing);
+
+    // =================== PACKED STORAGE ===================
+
+    List<File> findBySegmentId(Long segmentId);
+
+    /**
+     * Bytes still referenced per segment: [segmentId, bytes]. An entry shared by copied
+     * files counts once.
+     */
+    @Query(value = "SELECT segment_id, COALESCE(SUM(stored_size), 0) FROM " +
+            "(SELECT DISTINCT segment_id, segment_offset, stored_size FROM files WHERE segment_id IS NOT NULL) entries " +
+            "GROUP BY segment_id", nativeQuery = true)
+    List<Object[]> sumStoredSizeBySegment();
+
+    // Moves every row still pointing at the entry that was read, so shared entries stay shared
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.segmentId = :newSegmentId, f.segmentOffset = :newOffset " +
+            "WHERE f.segmentId = :oldSegmentId AND f.segmentOffset = :oldOffset")
+    int relocateSegmentEntry(@Param("oldSegmentId") Long oldSegmentId, @Param("oldOffset") Long oldOffset,
+                             @Param("newSegmentId") Long newSegmentId, @Param("newOffset") Long newOffset);
+
+    // =================== SHARED CONTENT ===================
+
+    // Rows (live or trashed) referring to a blob store or cold tier key; copies share keys
+    long countByStorageKey(String storageKey);
+
+    // =================== TIERING ===================
+
+    // Hot files in the local tree not downloaded (or, never downloaded, not created) since the cutoff
+    @Query("SELECT f FROM File f WHERE f.deleted = false AND f.segmentId IS NULL AND f.storageKey IS NULL " +
+            "AND f.id > :afterId AND COALESCE(f.lastAccessedAt, f.createdAt) < :cutoff ORDER BY f.id")
+    List<File> findDemotionCandidates(@Param("afterId") Long afterId, @Param("cutoff") LocalDateTime cutoff, Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.lastAccessedAt = :accessedAt WHERE f.id IN :ids")
+    int markAccessed(@Param("ids") Collection<Long> ids, @Param("accessedAt") LocalDateTime accessedAt);
+
+    // Only if the row still points at the hot blob that was copied
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.storageTier = :tier, f.storageKey = :storageKey " +
+            "WHERE f.id = :id AND f.filePath = :filePath AND f.storageKey IS NULL AND f.segmentId IS NULL")
+    int markDemoted(@Param("id") Long id, @Param("filePath") String filePath,
+                    @Param("tier") String tier, @Param("storageKey") String storageKey);
+
+    // Only if the row still points at the cold blob that was copied back
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.storageTier = null, f.storageKey = null " +
+            "WHERE f.id = :id AND f.filePath = :filePath AND f.storageKey = :storageKey")
+    int markPromoted(@Param("id") Long id, @Param("filePath") String filePath, @Param("storageKey") String storageKey);
+
+    // =================== SYNC ===================
+
+    @Query("SELECT f FROM File f WHERE f.deleted = false AND f.filePath LIKE :pattern ESCAPE '!'")
+    List<File> findLiveByPathPattern(@Param("pattern") String pattern);
+
+    // =================== PHOTOS ===================
+
+    /**
+     * Live photos per capture day below a path: [day, count], oldest day first
+     */
+    @Query(value = "SELECT CAST(captured_at AS DATE) AS capture_day, COUNT(*) FROM files " +
+            "WHERE deleted = FALSE AND captured_at >= :from AND captured_at < :to AND file_path LIKE :pattern ESCAPE '!' " +
+            "GROUP BY CAST(captured_at AS DATE) ORDER BY capture_day", nativeQuery = true)
+    List<Object[]> countCapturedByDay(@Param("pattern") String pattern,
+                                      @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query("SELECT f FROM File f WHERE f.deleted = false AND f.capturedAt >= :from AND f.capturedAt < :to " +
+            "AND f.filePath LIKE :pattern ESCAPE '!' ORDER BY f.capturedAt ASC, f.id ASC")
+    List<File> findCapturedBetween(@Param("pattern") String pattern, @Param("from") LocalDateTime from,
+                                   @Param("to") LocalDateTime to, Pageable pageable);
+
+    // Live images uploaded before metadata was read, or whose metadata could not be read
+    @Query("SELECT f FROM File f WHERE f.deleted = false AND f.imageWidth IS NULL AND f.id > :afterId " +
+            "AND LOWER(f.contentType) LIKE 'image/%' ORDER BY f.id")
+    List<File> findImagesWithoutMetadata(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Only if the row still points at the content that was read
+    @Transactional
+    @Modifying
+    @Query("UPDATE File f SET f.capturedAt = :capturedAt, f.imageWidth = :width, f.imageHeight = :height " +
+            "WHERE f.id = :id AND f.filePath = :filePath")
+    int updatePhotoMetadata(@Param("id") Long id, @Param("filePath") String filePath,
+                            @Param("capturedAt") LocalDateTime capturedAt,
+                            @Param("width") Integer width, @Param("height") Integer height);
+
+    // =================== TRASH ===================
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE File f SET f.deleted = true, f.deletedAt = :deletedAt " +
+            "WHERE f.deleted = false AND f.filePath LIKE :pattern ESCAPE '!'")
+    int markDeletedByPathPattern(@Param("pattern") String pattern, @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE File f SET f.deleted = true, f.deletedAt = :deletedAt WHERE f.deleted = false")
+    int markAllDeleted(@Param("deletedAt") LocalDateTime deletedAt);
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE File f SET f.deleted = false, f.deletedAt = null " +
+            "WHERE f.deletedAt = :deletedAt AND f.filePath LIKE :pattern ESCAPE '!'")
+    int restoreByPathPattern(@Param("pattern") String pattern, @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Modifying(clearAutomatically = true)
+    @Query("DELETE FROM File f WHERE f.filePath LIKE :pattern ESCAPE '!'")
+    int deleteByPathPattern(@Param("pattern") String pattern);
+
+    // Content outside the local tree is not removed with the directory
+    @Query("SELECT f FROM File f WHERE f.storageKey IS NOT NULL AND f.filePath LIKE :pattern ESCAPE '!'")
+    List<File> findWithStorageKeyByPathPattern(@Param("pattern") String pattern);
+
+    /**
+     * Individually deleted files, i.e. deleted files whose directory is still live
+     */
+    @Query("SELECT f FROM File f WHERE f.deleted = true AND f.directoryId NOT IN " +
+            "(SELECT d.id FROM Directory d WHERE d.deleted = true) ORDER BY f.deletedAt ASC")
+    List<File> findTrashedFiles();
+
+    List<File> findByDeletedTrueAndDeletedAtBefore(LocalDateTime cutoff, Pageable pageable);
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.construction.cddconstruction.repository;
+
+import com.construction.cddconstruction.entity.FileRevision;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface FileRevisionRepository extends JpaRepository<FileRevision, Long> {
+
+    List<FileRevision> findByFileIdOrderByRevisionNumberDesc(Long fileId);
+
+    Optional<FileRevision> findTopByFileIdOrderByRevisionNumberDesc(Long fileId);
+
+    long countByFileId(Long fileId);
+
+    @Query("SELECT r FROM FileRevision r LEFT JOIN FETCH r.chunkHashes " +
+            "WHERE r.fileId = :fileId AND r.revisionNumber = :revisionNumber")
+    Optional<FileRevision> findWithChunks(@Param("fileId") Long fileId, @Param("revisionNumber") Integer revisionNumber);
+
+    @Query("SELECT DISTINCT r FROM FileRevision r LEFT JOIN FETCH r.chunkHashes WHERE r.fileId = :fileId")
+    List<FileRevision> findAllWithChunks(@Param("fileId") Long fileId);
+}
@@ -0,0 +1,9 @@
+package com.construction.cddconstruction.repository;
+
+import com.construction.cddconstruction.entity.QuotaUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface QuotaUsageRepository extends JpaRepository<QuotaUsage, Long> {
+}
@@ -0,0 +1,33 @@
+package com.construction.cddconstruction.repository;
+
+import com.construction.cddconstruction.entity.StorageSegment;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StorageSegmentRepository extends JpaRepository<StorageSegment, Long> {
+
+    Optional<StorageSegment> findFirstBySealedFalseOrderByIdDesc();
+
+    Optional<StorageSegment> findFirstBySealedFalseAndHolderOrderByIdDesc(String holder);
+
+    /**
+     * Take a sealed segment for compaction, unless another instance has it
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE StorageSegment s SET s.holder = :holder WHERE s.id = :id AND s.sealed = true " +
+            "AND s.retired = false AND (s.holder IS NULL OR s.holder = :holder)")
+    int claimForCompaction(@Param("id") Long id, @Param("holder") String holder);
+
+    List<StorageSegment> findBySealedTrueAndRetiredFalse();
+
+    List<StorageSegment> findByRetiredTrue();
+}
@@ -0,0 +1,332 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.entity.ChangeLogEntry;
+import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.repository.ChangeLogRepository;
+import com.construction.cddconstruction.repository.DirectoryRepository;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records every directory and file change in the persisted change log (read by delta
+ * sync) and pushes it as a compact event to SSE clients.
+ * Recent events are kept in a bounded ring buffer so a reconnecting client can resume
+ * from its last sequence number. Every client gets a bounded queue drained by its own
+ * sender task; a client that falls further behind than its queue is disconnected and
+ * resumes from the ring buffer when it reconnects, so it never slows down the others.
+ */
+@Service
+public class ChangeEventService {
+
+    public static final String DIRECTORY = "directory";
+    public static final String FILE = "file";
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record ChangeEvent(long sequence, String entity, String action, Long id, Long parentId,
+                              String name, String path, String previousPath) {}
+
+    @Value("${file.events.buffer-size:1024}")
+    private int bufferSize;
+
+    @Value("${file.events.client-queue-size:256}")
+    private int clientQueueSize;
+
+    @Value("${file.events.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    @Autowired
+    private DirectoryRepository directoryRepository;
+
+    @Autowired
+    private ChangeLogRepository changeLogRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService sender = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "change-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Ring buffer of the latest events; guarded by "this" together with nextSequence
+    private ChangeEvent[] ring;
+    private long nextSequence = 1;
+
+    @PostConstruct
+    public void init() {
+        ring = new ChangeEvent[bufferSize];
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        sender.shutdownNow();
+    }
+
+    /**
+     * Record a directory change and publish its event once the surrounding transaction (if any) has committed
+     */
+    public void publishDirectory(String action, Directory directory, String path, String previousPath) {
+        publish(DIRECTORY, action, directory.getId(), directory.getParentId(), directory.getName(), path, previousPath);
+    }
+
+    /**
+     * Record many newly created directories with one batched insert, e.g. a provisioned
+     * project tree, and publish their events once the surrounding transaction has committed
+     */
+    public void publishDirectoriesCreated(List<Directory> directories, int batchSize) {
+        publishCreated(directories.stream()
+                .map(directory -> new ChangeEvent(0, DIRECTORY, "created", directory.getId(),
+                        directory.getParentId(), directory.getName(), directory.getFullPath(), null))
+                .toList(), batchSize);
+    }
+
+    /**
+     * Record many newly created files with one batched insert, e.g. a copied subtree
+     */
+    public void publishFilesCreated(List<File> files, int batchSize) {
+        publishCreated(files.stream()
+                .map(file -> new ChangeEvent(0, FILE, "created", file.getId(),
+                        file.getDirectoryId(), file.getOriginalName(), file.getFilePath(), null))
+                .toList(), batchSize);
+    }
+
+    /**
+     * Record a file change and publish its event once the surrounding transaction (if any) has committed
+     */
+    public void publishFile(String action, File file) {
+        publish(FILE, action, file.getId(), file.getDirectoryId(), file.getOriginalName(), file.getFilePath(), null);
+    }
+
+    /**
+     * Tell every client to re-list, e.g. after a bulk operation that is not worth itemizing
+     */
+    public void publishReset() {
+        publish(null, "reset", null, null, null, null, null);
+    }
+
+    /**
+     * Open an event stream, optionally limited to one directory subtree and resumed after
+     * the given sequence number. A client whose cursor is older than the ring buffer gets a
+     * "reset" event and should re-list before applying further events.
+     */
+    public SseEmitter subscribe(Long directoryId, Long lastSequence) {
+        String subtreePath = null;
+        if (directoryId != null) {
+            subtreePath = directoryRepository.findByIdAndDeletedFalse(directoryId)
+                    .orElseThrow(() -> new RuntimeException("Directory not found"))
+                    .getFullPath();
+        }
+
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, subtreePath);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+
+        // Replay and registration under the same lock, so no event is missed or sent twice
+        synchronized (this) {
+            if (lastSequence != null) {
+                long oldest = Math.max(1, nextSequence - ring.length);
+                if (lastSequence + 1 < oldest || lastSequence >= nextSequence) {
+                    subscriber.queue.offer(resetEvent());
+                } else {
+                    for (long sequence = lastSequence + 1; sequence < nextSequence; sequence++) {
+                        ChangeEvent event = ring[(int) (sequence % ring.length)];
+                        if (subscriber.matches(event) && !subscriber.queue.offer(event)) {
+                            subscriber.queue.clear();
+                            subscriber.queue.offer(resetEvent());
+                            break;
+                        }
+                    }
+                }
+            }
+            subscribers.add(subscriber);
+        }
+        subscriber.scheduleDrain();
+
+        return emitter;
+    }
+
+    /**
+     * Latest sequence number handed out
+     */
+    public synchronized long getCurrentSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Keep idle connections open through proxies and detect clients that went away
+     */
+    @Scheduled(fixedDelayString = "${file.events.heartbeat-ms:30000}")
+    public void sendHeartbeats() {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.queue.isEmpty()) {
+                subscriber.heartbeatDue.set(true);
+                subscriber.scheduleDrain();
+            }
+        }
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private void publish(String entity, String action, Long id, Long parentId, String name,
+                         String path, String previousPath) {
+        // Written in the caller's transaction, so the log commits or rolls back with the change itself
+        changeLogRepository.save(new ChangeLogEntry(entity != null ? entity : "all", id, action, path, previousPath));
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(entity, action, id, parentId, name, path, previousPath);
+                }
+            });
+        } else {
+            dispatch(entity, action, id, parentId, name, path, previousPath);
+        }
+    }
+
+    /**
+     * Batched counterpart of publish(); the events' sequence numbers are assigned on dispatch
+     */
+    private void publishCreated(List<ChangeEvent> events, int batchSize) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO change_log (entity_type, entity_id, action, path, previous_path, created_at) VALUES (?, ?, ?, ?, NULL, ?)",
+                events, batchSize, (statement, event) -> {
+                    statement.setString(1, event.entity());
+                    statement.setLong(2, event.id());
+                    statement.setString(3, event.action());
+                    statement.setString(4, event.path());
+                    statement.setTimestamp(5, now);
+                });
+
+        Runnable dispatchAll = () -> events.forEach(event -> dispatch(event.entity(), event.action(), event.id(),
+                event.parentId(), event.name(), event.path(), null));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatchAll.run();
+                }
+            });
+        } else {
+            dispatchAll.run();
+        }
+    }
+
+    private void dispatch(String entity, String action, Long id, Long parentId, String name,
+                          String path, String previousPath) {
+        ChangeEvent event;
+        synchronized (this) {
+            event = new ChangeEvent(nextSequence, entity, action, id, parentId, name, path, previousPath);
+            ring[(int) (nextSequence % ring.length)] = event;
+            nextSequence++;
+
+            // Enqueue under the lock so every client sees events in sequence order
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.matches(event) && !subscriber.queue.offer(event)) {
+                    subscriber.overflowed.set(true);
+                }
+            }
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            subscriber.scheduleDrain();
+        }
+    }
+
+    private ChangeEvent resetEvent() {
+        return new ChangeEvent(nextSequence - 1, null, "reset", null, null, null, null, null);
+    }
+
+    private class Subscriber {
+
+        private final SseEmitter emitter;
+        private final String subtreePath;
+        private final String subtreePrefix;
+        private final BlockingQueue<ChangeEvent> queue = new ArrayBlockingQueue<>(clientQueueSize);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean overflowed = new AtomicBoolean();
+        private final AtomicBoolean heartbeatDue = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, String subtreePath) {
+            this.emitter = emitter;
+            this.subtreePath = subtreePath;
+            this.subtreePrefix = subtreePath == null ? null : subtreePath + FileSystems.getDefault().getSeparator();
+        }
+
+        boolean matches(ChangeEvent event) {
+            // Events without a path (resets) concern every client
+            return subtreePath == null || event.path() == null
+                    || isInSubtree(event.path()) || isInSubtree(event.previousPath());
+        }
+
+        private boolean isInSubtree(String path) {
+            return path != null && (path.equals(subtreePath) || path.startsWith(subtreePrefix));
+        }
+
+        void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                while (true) {
+                    if (overflowed.get()) {
+                        // Too far behind: drop the connection, the client resumes from the ring buffer
+                        subscribers.remove(this);
+                        emitter.complete();
+                        return;
+                    }
+
+                    ChangeEvent event = queue.poll();
+                    if (event != null) {
+                        emitter.send(SseEmitter.event()
+                                .id(String.valueOf(event.sequence()))
+                                .name(event.action())
+                                .data(event));
+                    } else if (heartbeatDue.compareAndSet(true, false)) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        draining.set(false);
+                        // An event may have arrived between the poll and releasing the flag
+                        if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                            return;
+                        }
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
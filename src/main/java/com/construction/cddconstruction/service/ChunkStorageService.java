@@ -0,0 +1,216 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.entity.BlobChunk;
+import com.construction.cddconstruction.repository.BlobChunkRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Content-addressed chunk store used for file revisions. Content is split with a
+ * content-defined (gear hash) chunker, so an edit in the middle of a drawing only
+ * produces a few new chunks and every unchanged region is shared between revisions.
+ */
+@Service
+public class ChunkStorageService {
+
+    private static final String CHUNK_DIR_NAME = ".chunks";
+
+    private static final int MIN_CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_CHUNK_SIZE = 256 * 1024;
+    // 16 high bits must be zero to cut: ~64KB average on top of the minimum
+    private static final long CUT_MASK = 0xFFFF_0000_0000_0000L;
+
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // Fixed seed: chunk boundaries must be stable across restarts for dedup to work
+        Random random = new Random(0x5EEDC0DEL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    // Stores run concurrently; releasing takes the write lock so a chunk file is never
+    // deleted between a store finding it on disk and taking its reference
+    private final ReadWriteLock chunkLock = new ReentrantReadWriteLock();
+
+    @Value("${file.upload-dir:./uploads}")
+    private String baseUploadDir;
+
+    @Autowired
+    private BlobChunkRepository blobChunkRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Split a stream into chunks, store the ones not seen before and take a reference
+     * on every chunk. Returns the chunk hashes in content order.
+     */
+    public List<String> storeChunks(InputStream inputStream) throws IOException {
+        chunkLock.readLock().lock();
+        try {
+            return storeChunksLocked(inputStream);
+        } finally {
+            chunkLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stream the concatenation of the given chunks. Only one chunk file is open at a time.
+     */
+    public InputStream openChunks(List<String> hashes) {
+        Iterator<String> iterator = hashes.iterator();
+        if (!iterator.hasNext()) {
+            return InputStream.nullInputStream();
+        }
+
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return Files.newInputStream(chunkPath(iterator.next()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Missing chunk", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Drop one reference per occurrence and delete chunks nobody references any more
+     */
+    public void releaseChunks(List<String> hashes) {
+        chunkLock.writeLock().lock();
+        try {
+            releaseChunksLocked(hashes);
+        } finally {
+            chunkLock.writeLock().unlock();
+        }
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private List<String> storeChunksLocked(InputStream inputStream) throws IOException {
+        List<String> hashes = new ArrayList<>();
+        Map<String, Integer> chunkSizes = new HashMap<>();
+
+        InputStream input = new BufferedInputStream(inputStream, 64 * 1024);
+        byte[] buffer = new byte[MAX_CHUNK_SIZE];
+        int length = 0;
+        long gearHash = 0;
+        int b;
+
+        while ((b = input.read()) != -1) {
+            buffer[length++] = (byte) b;
+            gearHash = (gearHash << 1) + GEAR[b];
+
+            if ((length >= MIN_CHUNK_SIZE && (gearHash & CUT_MASK) == 0) || length == MAX_CHUNK_SIZE) {
+                String hash = writeChunk(buffer, length);
+                hashes.add(hash);
+                chunkSizes.put(hash, length);
+                length = 0;
+                gearHash = 0;
+            }
+        }
+        if (length > 0) {
+            String hash = writeChunk(buffer, length);
+            hashes.add(hash);
+            chunkSizes.put(hash, length);
+        }
+
+        addReferences(hashes, chunkSizes);
+        return hashes;
+    }
+
+    private void releaseChunksLocked(List<String> hashes) {
+        Map<String, Integer> counts = countOccurrences(hashes);
+
+        List<BlobChunk> unreferenced = transactionTemplate.execute(status -> {
+            counts.forEach((hash, count) -> blobChunkRepository.adjustRefCount(hash, -count));
+            List<BlobChunk> orphans = blobChunkRepository.findByHashInAndRefCountLessThanEqual(counts.keySet(), 0);
+            blobChunkRepository.deleteAll(orphans);
+            return orphans;
+        });
+
+        for (BlobChunk chunk : unreferenced) {
+            try {
+                Files.deleteIfExists(chunkPath(chunk.getHash()));
+            } catch (IOException e) {
+                System.err.println("❌ Failed to delete chunk " + chunk.getHash() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void addReferences(List<String> hashes, Map<String, Integer> chunkSizes) {
+        Map<String, Integer> counts = countOccurrences(hashes);
+
+        transactionTemplate.executeWithoutResult(status -> counts.forEach((hash, count) -> {
+            if (blobChunkRepository.adjustRefCount(hash, count) == 0) {
+                blobChunkRepository.save(new BlobChunk(hash, chunkSizes.get(hash), count));
+            }
+        }));
+    }
+
+    private String writeChunk(byte[] buffer, int length) throws IOException {
+        String hash = sha256(buffer, length);
+        Path chunkPath = chunkPath(hash);
+
+        if (!Files.exists(chunkPath)) {
+            Files.createDirectories(chunkPath.getParent());
+            Path tempPath = Files.createTempFile(chunkPath.getParent(), hash, ".tmp");
+            try {
+                Files.write(tempPath, Arrays.copyOf(buffer, length));
+                Files.move(tempPath, chunkPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        }
+
+        return hash;
+    }
+
+    private Path chunkPath(String hash) {
+        return Paths.get(baseUploadDir, CHUNK_DIR_NAME, hash.substring(0, 2), hash);
+    }
+
+    private Map<String, Integer> countOccurrences(List<String> hashes) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String hash : hashes) {
+            counts.merge(hash, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private String sha256(byte[] buffer, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(buffer, 0, length);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.construction.cddconstruction.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decides which uploads are worth compressing at rest and handles the gzip encoding
+ */
+@Service
+public class ContentCompressionService {
+
+    public static final String GZIP = "gzip";
+
+    private static final Set<String> COMPRESSIBLE_TYPES = Set.of(
+            "application/xml", "application/json", "application/csv", "application/x-ndjson",
+            "application/sql", "application/rtf", "image/tiff", "image/bmp", "image/svg+xml");
+
+    private static final Set<String> COMPRESSIBLE_EXTENSIONS = Set.of(
+            "txt", "csv", "log", "xml", "json", "tsv", "sql", "rtf", "tif", "tiff", "bmp", "svg", "dxf", "ifc");
+
+    @Value("${file.compression.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.compression.sample-bytes:65536}")
+    private int sampleBytes;
+
+    @Value("${file.compression.max-ratio:0.9}")
+    private double maxRatio;
+
+    /**
+     * Compress only known compressible formats, and only when a sample of the content
+     * actually shrinks; already-compressed formats (JPEG, PDF, ZIP, ...) are never touched.
+     */
+    public boolean shouldCompress(MultipartFile file) throws IOException {
+        if (!enabled || !isCompressibleType(file.getContentType(), file.getOriginalFilename())) {
+            return false;
+        }
+
+        byte[] sample;
+        try (InputStream in = file.getInputStream()) {
+            sample = in.readNBytes(sampleBytes);
+        }
+        if (sample.length == 0) {
+            return false;
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] output = new byte[sample.length];
+            long compressed = 0;
+            while (!deflater.finished() && compressed < sample.length) {
+                compressed += deflater.deflate(output);
+            }
+            return deflater.finished() && (double) compressed / sample.length <= maxRatio;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Write the stream gzip-encoded and return the number of bytes stored on disk
+     */
+    public long writeCompressed(InputStream in, Path targetPath) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(targetPath), 64 * 1024)) {
+            in.transferTo(out);
+        }
+        return Files.size(targetPath);
+    }
+
+    /**
+     * Wrap a stored stream so it yields the original bytes
+     */
+    public InputStream decode(InputStream stored, String storageEncoding) throws IOException {
+        if (GZIP.equals(storageEncoding)) {
+            return new GZIPInputStream(stored, 64 * 1024);
+        }
+        return stored;
+    }
+
+    private boolean isCompressibleType(String contentType, String filename) {
+        if (contentType != null) {
+            String type = contentType.toLowerCase(Locale.ROOT);
+            int parameters = type.indexOf(';');
+            if (parameters >= 0) {
+                type = type.substring(0, parameters).trim();
+            }
+            if (type.startsWith("text/") || COMPRESSIBLE_TYPES.contains(type) || type.endsWith("+xml")) {
+                return true;
+            }
+        }
+
+        if (filename != null && filename.contains(".")) {
+            String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+            return COMPRESSIBLE_EXTENSIONS.contains(extension);
+        }
+        return false;
+    }
+}
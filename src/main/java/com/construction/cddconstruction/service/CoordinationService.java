@@ -0,0 +1,365 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.entity.ChangeLogEntry;
+import com.construction.cddconstruction.repository.ChangeLogRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps directory creates, moves and deletes safe when several instances share the
+ * catalog (file H2 in AUTO_SERVER mode, or an H2 server) and the uploads volume.
+ *
+ * Locks are rows in coordination_locks, held from the update that takes them until the
+ * transaction ends, so a crashed instance never leaves one behind. Structural changes
+ * (move, rename, trash, restore, copy, purge) take the tree lock; anything adding a name
+ * under a parent takes that parent's name lock, striped over a fixed number of rows.
+ * Order is always tree lock, then name lock, then directory rows.
+ *
+ * Every acquisition gives the lock a new fencing token from a sequence, so tokens only
+ * grow and one rolled back with its acquisition is never handed out again. Lock waits
+ * are bounded by the datasource's LOCK_TIMEOUT. With coordination enabled, changes to
+ * the volume go through {@link #fenced}, which checks the token against the latest one
+ * recorded in a fence file under an OS file lock: a holder whose database session was
+ * lost (and whose lock was therefore taken over) can no longer touch the volume once the
+ * new holder has. Caches on other instances learn about directory changes by tailing
+ * the change log.
+ */
+@Service
+public class CoordinationService {
+
+    public static final String TREE_LOCK = "directory-tree";
+    private static final String NAME_LOCK_PREFIX = "directory-names-";
+    private static final String FENCE_DIR_NAME = ".coordination";
+    private static final String FENCE_SEQUENCE = "coordination_fence_seq";
+    private static final int POLL_BATCH_SIZE = 500;
+    private static final int MAX_PENDING_GAPS = 10000;
+
+    private static final String ACQUIRE = "UPDATE coordination_locks SET fencing_token = NEXT VALUE FOR " +
+            FENCE_SEQUENCE + ", holder = ?, acquired_at = ? WHERE name = ?";
+
+    /**
+     * A lock held by the current transaction, with the token that fences its disk changes
+     */
+    public record Fence(String name, long token) {}
+
+    /**
+     * A change to the uploads volume made under a fence
+     */
+    @FunctionalInterface
+    public interface DiskChange {
+        void run() throws IOException;
+    }
+
+    /**
+     * The lock behind a fence was taken over by another holder since it was acquired
+     */
+    public static class StaleFenceException extends RuntimeException {
+        public StaleFenceException(String message) {
+            super(message);
+        }
+    }
+
+    @Value("${file.upload-dir:./uploads}")
+    private String baseUploadDir;
+
+    // Fencing and cross-instance cache invalidation; locks are taken either way
+    @Value("${file.coordination.enabled:false}")
+    private boolean enabled;
+
+    // Recorded as lock holder and names this instance's upload journal and staging area, so it
+    // must stay the same across restarts; the host name when empty
+    @Value("${file.coordination.node-id:}")
+    private String nodeId;
+
+    @Value("${file.coordination.name-lock-stripes:64}")
+    private int nameLockStripes;
+
+    // How long a change log id missing from a poll is waited for (its transaction may still commit)
+    @Value("${file.coordination.gap-timeout-ms:10000}")
+    private long gapTimeoutMs;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ChangeLogRepository changeLogRepository;
+
+    @Autowired
+    private DirectoryCacheService directoryCacheService;
+
+    // Threads of this instance exclude each other here; file locks only exclude other processes
+    private final Map<String, Object> fenceMonitors = new ConcurrentHashMap<>();
+
+    // Change log ids skipped by a poll, with when they were first missed
+    private final Map<Long, Long> pendingGaps = new ConcurrentHashMap<>();
+    private volatile Long changeLogCursor;
+
+    private final AtomicLong locksAcquired = new AtomicLong();
+    private final AtomicLong lockWaitMicros = new AtomicLong();
+    private final AtomicLong maxLockWaitMicros = new AtomicLong();
+    private final AtomicLong lockTimeouts = new AtomicLong();
+    private final AtomicLong fencedChanges = new AtomicLong();
+    private final AtomicLong staleFences = new AtomicLong();
+    private final AtomicLong peerInvalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        // The persistent schema has it from V11; the default in-memory one is created from the entities
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + FENCE_SEQUENCE);
+        if (nodeId == null || nodeId.isBlank()) {
+            String host;
+            try {
+                host = InetAddress.getLocalHost().getHostName();
+            } catch (IOException e) {
+                host = "node";
+            }
+            nodeId = host;
+        }
+        // Used as a directory name on the shared volume
+        nodeId = nodeId.trim().replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Take the directory tree lock for the rest of the current transaction
+     */
+    public Fence lockTree() {
+        return lock(TREE_LOCK);
+    }
+
+    /**
+     * Take the lock on the names under a parent (null for root directories) for the rest of
+     * the current transaction
+     */
+    public Fence lockNames(Long parentId) {
+        return lock(NAME_LOCK_PREFIX + (parentId == null ? "root" : Math.floorMod(parentId, nameLockStripes)));
+    }
+
+    /**
+     * Take a named lock for the rest of the current transaction, waiting up to the
+     * datasource's lock timeout for other holders on any instance
+     */
+    public Fence lock(String name) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Lock " + name + " must be taken inside a transaction");
+        }
+        long start = System.nanoTime();
+        Long token;
+        try {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            if (jdbcTemplate.update(ACQUIRE, nodeId, now, name) == 0) {
+                createLock(name);
+                jdbcTemplate.update(ACQUIRE, nodeId, now, name);
+            }
+            token = jdbcTemplate.queryForObject("SELECT fencing_token FROM coordination_locks WHERE name = ?",
+                    Long.class, name);
+        } catch (PessimisticLockingFailureException e) {
+            lockTimeouts.incrementAndGet();
+            throw new RuntimeException("Timed out waiting for lock " + name + ", try again", e);
+        }
+
+        long waited = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        locksAcquired.incrementAndGet();
+        lockWaitMicros.addAndGet(waited);
+        maxLockWaitMicros.accumulateAndGet(waited, Math::max);
+        return new Fence(name, token);
+    }
+
+    /**
+     * Make a change to the uploads volume under a fence: rejected if a later holder of the
+     * same lock has already made one, and excluding any other change under the same lock
+     * while it runs
+     */
+    public void fenced(Fence fence, DiskChange change) throws IOException {
+        if (!enabled) {
+            change.run();
+            return;
+        }
+        Path fenceFile = getFencePath().resolve(fence.name() + ".fence");
+        Files.createDirectories(fenceFile.getParent());
+
+        synchronized (fenceMonitors.computeIfAbsent(fence.name(), k -> new Object())) {
+            try (FileChannel channel = FileChannel.open(fenceFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                Long latest = readFence(channel);
+                if (latest != null && latest > fence.token()) {
+                    staleFences.incrementAndGet();
+                    throw new StaleFenceException("Lock " + fence.name() + " was taken over (token " + fence.token()
+                            + ", latest " + latest + "), change not applied");
+                }
+                writeFence(channel, fence.token());
+                change.run();
+                fencedChanges.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drop cached directories when another instance changed any: new directory entries in
+     * the change log, including ones from transactions that committed after later ids
+     */
+    @Scheduled(fixedDelayString = "${file.coordination.poll-interval-ms:1000}")
+    public void pollChanges() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (changeLogCursor == null) {
+                changeLogCursor = changeLogRepository.findMaxId();
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            boolean changed = false;
+            List<ChangeLogEntry> entries;
+            do {
+                entries = changeLogRepository.findAfter(changeLogCursor, PageRequest.of(0, POLL_BATCH_SIZE));
+                for (ChangeLogEntry entry : entries) {
+                    long skipped = entry.getId() - changeLogCursor - 1;
+                    if (skipped > MAX_PENDING_GAPS - pendingGaps.size()) {
+                        // Too many to follow; assume one of them was a directory change
+                        changed = true;
+                    } else {
+                        for (long id = changeLogCursor + 1; id < entry.getId(); id++) {
+                            pendingGaps.put(id, now);
+                        }
+                    }
+                    changed |= affectsDirectories(entry);
+                    changeLogCursor = entry.getId();
+                }
+            } while (entries.size() == POLL_BATCH_SIZE);
+
+            if (!pendingGaps.isEmpty()) {
+                for (ChangeLogEntry entry : changeLogRepository.findAllById(new ArrayList<>(pendingGaps.keySet()))) {
+                    pendingGaps.remove(entry.getId());
+                    changed |= affectsDirectories(entry);
+                }
+                // Rolled back, or compacted away
+                pendingGaps.values().removeIf(since -> now - since > gapTimeoutMs);
+            }
+
+            if (changed) {
+                directoryCacheService.invalidateAll();
+                peerInvalidations.incrementAndGet();
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Error polling change log for directory changes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lock contention, fencing and invalidation counters, and the state of every lock
+     */
+    public Map<String, Object> getStatus() {
+        long acquired = locksAcquired.get();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("nodeId", nodeId);
+        status.put("locksAcquired", acquired);
+        status.put("avgLockWaitMs", acquired == 0 ? 0.0 : lockWaitMicros.get() / 1000.0 / acquired);
+        status.put("maxLockWaitMs", maxLockWaitMicros.get() / 1000.0);
+        status.put("lockTimeouts", lockTimeouts.get());
+        status.put("fencedChanges", fencedChanges.get());
+        status.put("staleFencesRejected", staleFences.get());
+        status.put("changeLogCursor", changeLogCursor);
+        status.put("pendingGaps", pendingGaps.size());
+        status.put("peerInvalidations", peerInvalidations.get());
+        status.put("locks", jdbcTemplate.query(
+                "SELECT name, fencing_token, holder, acquired_at FROM coordination_locks ORDER BY name",
+                (rs, rowNum) -> {
+                    Map<String, Object> lock = new LinkedHashMap<>();
+                    lock.put("name", rs.getString("name"));
+                    lock.put("fencingToken", rs.getLong("fencing_token"));
+                    lock.put("holder", rs.getString("holder"));
+                    lock.put("acquiredAt", rs.getTimestamp("acquired_at"));
+                    return lock;
+                }));
+        return status;
+    }
+
+    /**
+     * Where the fence files live, on the shared volume itself
+     */
+    public Path getFencePath() {
+        return Paths.get(baseUploadDir, FENCE_DIR_NAME);
+    }
+
+    // =================== HELPER METHODS ===================
+
+    /**
+     * Insert a lock row on first use, committed on its own so other instances wait on the
+     * row rather than on our uncommitted insert
+     */
+    private void createLock(String name) {
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            requiresNew.executeWithoutResult(status -> jdbcTemplate.update(
+                    "INSERT INTO coordination_locks (name, fencing_token) VALUES (?, 0)", name));
+        } catch (DuplicateKeyException e) {
+            // Created by another instance meanwhile
+        }
+    }
+
+    private boolean affectsDirectories(ChangeLogEntry entry) {
+        // "all" is a reset, e.g. after everything was deleted
+        return ChangeEventService.DIRECTORY.equals(entry.getEntityType()) || "all".equals(entry.getEntityType());
+    }
+
+    // Latest token, or null for a new fence file
+    private Long readFence(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        channel.read(buffer, 0);
+        String content = new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII).trim();
+        return content.isEmpty() ? null : Long.parseLong(content.split(" ")[0]);
+    }
+
+    private void writeFence(FileChannel channel, long token) throws IOException {
+        channel.truncate(0);
+        ByteBuffer buffer = ByteBuffer.wrap((token + "\n").getBytes(StandardCharsets.US_ASCII));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+        // Visible to other hosts on a network volume before the change is made
+        channel.force(false);
+    }
+}
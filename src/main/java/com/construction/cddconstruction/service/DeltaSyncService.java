@@ -0,0 +1,274 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.config.RequestActivityFilter;
+import com.construction.cddconstruction.entity.ChangeLogEntry;
+import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.repository.ChangeLogRepository;
+import com.construction.cddconstruction.repository.DirectoryRepository;
+import com.construction.cddconstruction.repository.FileRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Delta-sync manifests for offline clients mirroring a directory. The change log only
+ * says which entities changed after a cursor; what is reported for them is always read
+ * from their current rows, so replaying a change twice is harmless and the log can be
+ * compacted without changing any answer.
+ */
+@Service
+public class DeltaSyncService {
+
+    private static final String ENTITY_LOG = "log";
+    private static final String ENTITY_ALL = "all";
+
+    @Value("${file.sync.retention-days:90}")
+    private int retentionDays;
+
+    // More changes than this after a cursor and a full listing is cheaper than the delta
+    @Value("${file.sync.max-changes:10000}")
+    private int maxChanges;
+
+    // Changes younger than this may still have lower-id siblings in uncommitted transactions
+    @Value("${file.sync.settle-ms:5000}")
+    private long settleMs;
+
+    @Value("${file.sync.quiet-period-ms:30000}")
+    private long quietPeriodMs;
+
+    @Autowired
+    private ChangeLogRepository changeLogRepository;
+
+    @Autowired
+    private DirectoryRepository directoryRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private DirectoryService directoryService;
+
+    @Autowired
+    private RequestActivityFilter requestActivityFilter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Everything that changed below a directory since the cursor: directories and files
+     * added or changed (with their current metadata) and the ids of those removed. Without
+     * a usable cursor the full listing is returned with "full": true. Paths are relative
+     * to the synced directory; a removed directory implies everything below it.
+     */
+    public Map<String, Object> getManifest(Long directoryId, Long cursor) {
+        Directory root = directoryRepository.findByIdAndDeletedFalse(directoryId)
+                .orElseThrow(() -> new RuntimeException("Directory not found"));
+        Path rootPath = Paths.get(root.getFullPath());
+
+        // Taken before reading any state, so changes made while we read are sent again next time
+        long nextCursor = settledCursor();
+        if (cursor != null) {
+            nextCursor = Math.max(nextCursor, cursor);
+        }
+
+        Map<Long, Directory> directories = new LinkedHashMap<>();
+        Map<Long, File> files = new LinkedHashMap<>();
+        Set<Long> removedDirectories = new LinkedHashSet<>();
+        Set<Long> removedFiles = new LinkedHashSet<>();
+
+        List<ChangeLogEntry> changes = cursor == null ? null : loadChanges(cursor);
+        boolean full = changes == null;
+        if (full) {
+            directories.put(root.getId(), root);
+            addSubtree(rootPath, directories, files);
+        } else {
+            collectChanges(root, changes, directories, files, removedDirectories, removedFiles);
+        }
+
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("directoryId", directoryId);
+        manifest.put("cursor", nextCursor);
+        manifest.put("full", full);
+        manifest.put("directories", directories.values().stream()
+                .map(directory -> toDirectoryEntry(rootPath, directory)).toList());
+        manifest.put("files", files.values().stream()
+                .map(this::toFileEntry).toList());
+        manifest.put("removedDirectories", removedDirectories);
+        manifest.put("removedFiles", removedFiles);
+        return manifest;
+    }
+
+    /**
+     * Collapse superseded entries and drop entries past the retention period. Clients
+     * with a cursor older than what was dropped get a full listing on their next sync.
+     */
+    @Scheduled(fixedDelayString = "${file.sync.compact-interval-ms:3600000}",
+            initialDelayString = "${file.sync.compact-interval-ms:3600000}")
+    public void compactChangeLog() {
+        if (!requestActivityFilter.isQuiet(quietPeriodMs)) {
+            return;
+        }
+        try {
+            int[] removed = transactionTemplate.execute(status -> {
+                int superseded = changeLogRepository.deleteSuperseded(LocalDateTime.now().minus(settleMs, ChronoUnit.MILLIS));
+
+                int expired = 0;
+                Long throughId = changeLogRepository.findMaxIdCreatedBefore(LocalDateTime.now().minusDays(retentionDays));
+                if (throughId != null) {
+                    // The marker outlives the entries it replaces and tells clients how far the log was cut
+                    changeLogRepository.save(new ChangeLogEntry(ENTITY_LOG, throughId, "truncated", null, null));
+                    expired = changeLogRepository.deleteThrough(throughId);
+                }
+                return new int[]{superseded, expired};
+            });
+
+            if (removed[0] + removed[1] > 0) {
+                System.out.println("🧹 Change log compacted: " + removed[0] + " superseded, " + removed[1] + " expired");
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Error compacting change log: " + e.getMessage());
+        }
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private long settledCursor() {
+        long maxId = changeLogRepository.findMaxId();
+        Long firstUnsettled = changeLogRepository.findMinIdCreatedSince(LocalDateTime.now().minus(settleMs, ChronoUnit.MILLIS));
+        return firstUnsettled == null ? maxId : Math.min(maxId, firstUnsettled - 1);
+    }
+
+    /**
+     * Changes after the cursor, or null if the client has to start over with a full listing
+     */
+    private List<ChangeLogEntry> loadChanges(long cursor) {
+        if (cursor < changeLogRepository.findTruncatedThrough()) {
+            return null;
+        }
+        List<ChangeLogEntry> changes = changeLogRepository.findAfter(cursor, PageRequest.of(0, maxChanges + 1));
+        if (changes.size() > maxChanges || changes.stream().anyMatch(entry -> ENTITY_ALL.equals(entry.getEntityType()))) {
+            return null;
+        }
+        return changes;
+    }
+
+    private void collectChanges(Directory root, List<ChangeLogEntry> changes,
+                                Map<Long, Directory> directories, Map<Long, File> files,
+                                Set<Long> removedDirectories, Set<Long> removedFiles) {
+        List<String> aliases = subtreeAliases(root.getFullPath(), changes);
+
+        Set<Long> changedDirectoryIds = new LinkedHashSet<>();
+        Set<Long> relocatedDirectoryIds = new HashSet<>();
+        Set<Long> changedFileIds = new LinkedHashSet<>();
+        for (ChangeLogEntry entry : changes) {
+            if (!isUnderAny(entry.getPath(), aliases) && !isUnderAny(entry.getPreviousPath(), aliases)) {
+                continue;
+            }
+            if (ChangeEventService.DIRECTORY.equals(entry.getEntityType())) {
+                changedDirectoryIds.add(entry.getEntityId());
+                if ("moved".equals(entry.getAction()) || "restored".equals(entry.getAction())) {
+                    relocatedDirectoryIds.add(entry.getEntityId());
+                }
+            } else if (ChangeEventService.FILE.equals(entry.getEntityType())) {
+                changedFileIds.add(entry.getEntityId());
+            }
+        }
+
+        Map<Long, Directory> currentDirectories = new HashMap<>();
+        directoryRepository.findAllById(changedDirectoryIds).forEach(d -> currentDirectories.put(d.getId(), d));
+        for (Long id : changedDirectoryIds) {
+            Directory directory = currentDirectories.get(id);
+            if (directory == null || directory.isDeleted() || !isUnder(directory.getFullPath(), root.getFullPath())) {
+                removedDirectories.add(id);
+                continue;
+            }
+            directories.put(id, directory);
+            // Everything below a moved or restored directory has a new path
+            if (relocatedDirectoryIds.contains(id)) {
+                addSubtree(Paths.get(directory.getFullPath()), directories, files);
+            }
+        }
+
+        Map<Long, File> currentFiles = new HashMap<>();
+        fileRepository.findAllById(changedFileIds).forEach(f -> currentFiles.put(f.getId(), f));
+        for (Long id : changedFileIds) {
+            File file = currentFiles.get(id);
+            if (file == null || file.isDeleted() || !isUnder(file.getFilePath(), root.getFullPath())) {
+                removedFiles.add(id);
+            } else {
+                files.put(id, file);
+            }
+        }
+    }
+
+    /**
+     * Paths the synced directory had since the cursor. Entries are logged with the path
+     * current at the time, so if the directory or one of its ancestors was moved, older
+     * entries refer to it by an older path.
+     */
+    private List<String> subtreeAliases(String currentPath, List<ChangeLogEntry> changes) {
+        List<String> aliases = new ArrayList<>();
+        aliases.add(currentPath);
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            ChangeLogEntry entry = changes.get(i);
+            if (!"moved".equals(entry.getAction()) || entry.getPreviousPath() == null) {
+                continue;
+            }
+            for (String alias : List.copyOf(aliases)) {
+                if (isUnder(alias, entry.getPath())) {
+                    aliases.add(entry.getPreviousPath() + alias.substring(entry.getPath().length()));
+                }
+            }
+        }
+        return aliases;
+    }
+
+    private void addSubtree(Path directoryPath, Map<Long, Directory> directories, Map<Long, File> files) {
+        String pattern = directoryService.subtreePattern(directoryPath);
+        for (Directory directory : directoryRepository.findLiveByPathPattern(pattern)) {
+            directories.put(directory.getId(), directory);
+        }
+        for (File file : fileRepository.findLiveByPathPattern(pattern)) {
+            files.put(file.getId(), file);
+        }
+    }
+
+    private boolean isUnderAny(String path, List<String> ancestors) {
+        return path != null && ancestors.stream().anyMatch(ancestor -> isUnder(path, ancestor));
+    }
+
+    private boolean isUnder(String path, String ancestor) {
+        return path.equals(ancestor) || path.startsWith(ancestor + FileSystems.getDefault().getSeparator());
+    }
+
+    private Map<String, Object> toDirectoryEntry(Path rootPath, Directory directory) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("id", directory.getId());
+        entry.put("parentId", directory.getParentId());
+        entry.put("name", directory.getName());
+        entry.put("path", rootPath.relativize(Paths.get(directory.getFullPath())).toString());
+        return entry;
+    }
+
+    private Map<String, Object> toFileEntry(File file) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("id", file.getId());
+        entry.put("directoryId", file.getDirectoryId());
+        entry.put("name", file.getOriginalName());
+        entry.put("size", file.getFileSize());
+        entry.put("contentHash", file.getContentHash());
+        entry.put("updatedAt", file.getUpdatedAt());
+        return entry;
+    }
+}
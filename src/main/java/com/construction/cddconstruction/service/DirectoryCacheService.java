@@ -0,0 +1,223 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.repository.DirectoryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded read-through cache of live directories by id and by (parentId, name), for the
+ * lookups every upload and every subdirectory creation repeats. Only identity and
+ * location are meant to be read from the returned copies: usage counters change with
+ * every upload and are not kept fresh here.
+ *
+ * Name lookups also cache "no such directory", which is the usual answer when creating
+ * one, so everything that creates, moves, trashes or restores directories must invalidate.
+ * Invalidation happens immediately and again when the surrounding transaction completes,
+ * and a generation counter keeps lookups that raced with it from caching what they read.
+ * Changes made by other instances reach the cache through CoordinationService, up to a
+ * poll interval later, so checks that must be exact read the database under a lock.
+ */
+@Service
+public class DirectoryCacheService {
+
+    // Cached answer of a name lookup that found nothing
+    private static final Long NOT_FOUND = -1L;
+
+    @Value("${file.directory-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.directory-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Autowired
+    private DirectoryRepository directoryRepository;
+
+    private final Object lock = new Object();
+    private final Map<Long, Directory> byId = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Directory> eldest) {
+            return evictIf(size() > maxEntries);
+        }
+    };
+    // Directory id, or NOT_FOUND
+    private final Map<String, Long> byName = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return evictIf(size() > maxEntries);
+        }
+    };
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * A live directory by id
+     */
+    public Optional<Directory> findById(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        if (!enabled) {
+            return directoryRepository.findByIdAndDeletedFalse(id);
+        }
+        synchronized (lock) {
+            Directory cached = byId.get(id);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return Optional.of(copy(cached));
+            }
+        }
+
+        misses.incrementAndGet();
+        long seen = generation.get();
+        Optional<Directory> loaded = directoryRepository.findByIdAndDeletedFalse(id);
+        loaded.ifPresent(directory -> store(seen, directory));
+        return loaded.map(this::copy);
+    }
+
+    /**
+     * A live directory by name under a parent (null for root directories)
+     */
+    public Optional<Directory> findByName(Long parentId, String name) {
+        if (!enabled) {
+            return directoryRepository.findByNameAndParentIdAndDeletedFalse(name, parentId);
+        }
+        String key = nameKey(parentId, name);
+        Long cachedId;
+        synchronized (lock) {
+            cachedId = byName.get(key);
+        }
+        if (NOT_FOUND.equals(cachedId)) {
+            hits.incrementAndGet();
+            return Optional.empty();
+        }
+        if (cachedId != null) {
+            Optional<Directory> directory = findById(cachedId);
+            if (directory.isPresent()) {
+                return directory;
+            }
+        } else {
+            misses.incrementAndGet();
+        }
+
+        long seen = generation.get();
+        Optional<Directory> loaded = directoryRepository.findByNameAndParentIdAndDeletedFalse(name, parentId);
+        synchronized (lock) {
+            if (generation.get() == seen) {
+                byName.put(key, loaded.map(Directory::getId).orElse(NOT_FOUND));
+            }
+        }
+        loaded.ifPresent(directory -> store(seen, directory));
+        return loaded.map(this::copy);
+    }
+
+    /**
+     * A directory was created under this parent
+     */
+    public void invalidateName(Long parentId, String name) {
+        invalidate(() -> byName.remove(nameKey(parentId, name)));
+    }
+
+    /**
+     * Directories were moved, renamed, trashed or restored: their paths and those of
+     * everything below changed, so nothing cached is trusted any more
+     */
+    public void invalidateAll() {
+        invalidate(() -> {
+            byId.clear();
+            byName.clear();
+        });
+    }
+
+    /**
+     * Hit ratio and size
+     */
+    public Map<String, Object> getStatus() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("maxEntries", maxEntries);
+        synchronized (lock) {
+            status.put("idEntries", byId.size());
+            status.put("nameEntries", byName.size());
+        }
+        status.put("hits", hitCount);
+        status.put("misses", missCount);
+        status.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        status.put("evictions", evictions.get());
+        status.put("invalidations", invalidations.get());
+        return status;
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private void invalidate(Runnable eviction) {
+        Runnable apply = () -> {
+            synchronized (lock) {
+                generation.incrementAndGet();
+                eviction.run();
+            }
+            invalidations.incrementAndGet();
+        };
+        apply.run();
+
+        // Lookups inside the transaction may have cached uncommitted (or rolled back) state
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    apply.run();
+                }
+            });
+        }
+    }
+
+    private void store(long seen, Directory directory) {
+        synchronized (lock) {
+            // Skip if an invalidation happened while the row was being read
+            if (generation.get() == seen) {
+                byId.put(directory.getId(), copy(directory));
+            }
+        }
+    }
+
+    private boolean evictIf(boolean full) {
+        if (full) {
+            evictions.incrementAndGet();
+        }
+        return full;
+    }
+
+    private String nameKey(Long parentId, String name) {
+        return (parentId == null ? "" : parentId.toString()) + "/" + name;
+    }
+
+    /**
+     * Callers get their own instance, so nothing they do to it reaches the cache
+     */
+    private Directory copy(Directory directory) {
+        Directory copy = new Directory(directory.getName(), directory.getFullPath(),
+                directory.getParentId(), directory.getDirectoryType());
+        copy.setId(directory.getId());
+        copy.setCreatedAt(directory.getCreatedAt());
+        copy.setUpdatedAt(directory.getUpdatedAt());
+        copy.setFileCount(directory.getFileCount());
+        copy.setSizeBytes(directory.getSizeBytes());
+        copy.setTotalFileCount(directory.getTotalFileCount());
+        copy.setTotalSizeBytes(directory.getTotalSizeBytes());
+        return copy;
+    }
+}
@@ -2,20 +2,31 @@ package com.construction.cddconstruction.service;
 
 import com.construction.cddconstruction.entity.Directory;
 import com.construction.cddconstruction.repository.DirectoryRepository;
+import com.construction.cddconstruction.repository.FileRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
 public class DirectoryService {
 
+    private static final String TRASH_DIR_NAME = ".trash";
+
     @Value("${file.upload-dir:./uploads}")
     private String baseUploadDir;
 
@@ -23,63 +34,71 @@ public class DirectoryService {
     private DirectoryRepository directoryRepository;
 
     @Autowired
-    private FileStorageService fileStorageService;
+    private DirectoryCacheService directoryCacheService;
 
-    /**
-     * Create root directory with default subdirectories
-     */
-    public Directory createRootDirectory(String directoryName) {
-        try {
-            // Clean directory name
-            String cleanName = cleanDirectoryName(directoryName);
+    @Autowired
+    private FileRepository fileRepository;
 
-            // Create physical directory
-            Path directoryPath = Paths.get(baseUploadDir, cleanName);
-            Files.createDirectories(directoryPath);
+    @Autowired
+    private DirectoryUsageService directoryUsageService;
 
-            // Save to database
-            Directory directory = new Directory(
-                    cleanName,
-                    directoryPath.toString(),
-                    null, // no parent - this is root
-                    "root"
-            );
+    @Autowired
+    private ChangeEventService changeEventService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
-            Directory savedDir = directoryRepository.save(directory);
-            System.out.println("📁 Created root directory: " + directoryPath.toAbsolutePath());
+    @Autowired
+    private ProvisioningService provisioningService;
 
-            // Create default subdirectories
-            createDefaultSubdirectories(savedDir.getId(), directoryPath);
+    @Autowired
+    private QuotaService quotaService;
 
-            return savedDir;
+    @Autowired
+    private CoordinationService coordinationService;
 
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to create root directory", e);
-        }
+    /**
+     * Create root directory with the default template's subdirectories
+     */
+    public Directory createRootDirectory(String directoryName) {
+        return provisioningService.provisionProjects(List.of(directoryName), null).get(0);
     }
 
     /**
-     * Create a custom subdirectory
+     * Create the default root directory at startup, taking over its folder if that
+     * survived from an earlier run without the catalog row
+     */
+    public Directory createDefaultRootDirectory(String directoryName) {
+        return provisioningService.provisionProjects(List.of(directoryName), null, true).get(0);
+    }
+
+    /**
+     * Create a custom subdirectory. The name check and the insert run under the parent's
+     * name lock and row lock, so two instances can't both create the same name, nor
+     * create one under a parent that is being moved or trashed.
      */
     public Directory createSubdirectory(Long parentId, String directoryName) {
-        try {
-            // Find parent directory
-            Directory parentDir = directoryRepository.findById(parentId)
+        String cleanName = cleanDirectoryName(directoryName);
+
+        Directory savedDir = transactionTemplate.execute(status -> {
+            CoordinationService.Fence fence = coordinationService.lockNames(parentId);
+
+            // Find parent directory; from the database, as other instances don't invalidate our cache synchronously
+            Directory parentDir = directoryRepository.findLiveByIdForUpdate(parentId)
                     .orElseThrow(() -> new RuntimeException("Parent directory not found"));
 
             // Check if directory already exists
-            String cleanName = cleanDirectoryName(directoryName);
-            Optional<Directory> existingDir = directoryRepository
-                    .findByNameAndParentId(cleanName, parentDir.getId());
-
-            if (existingDir.isPresent()) {
+            if (directoryRepository.findByNameAndParentIdAndDeletedFalse(cleanName, parentDir.getId()).isPresent()) {
                 throw new RuntimeException("Directory already exists: " + cleanName);
             }
 
             // Create physical directory
-            Path parentPath = Paths.get(parentDir.getFullPath());
-            Path newDirPath = parentPath.resolve(cleanName);
-            Files.createDirectories(newDirPath);
+            Path newDirPath = Paths.get(parentDir.getFullPath()).resolve(cleanName);
+            try {
+                coordinationService.fenced(fence, () -> Files.createDirectories(newDirPath));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to create subdirectory: " + directoryName, e);
+            }
 
             // Save to database
             Directory newDir = new Directory(
@@ -89,14 +108,66 @@ public class DirectoryService {
                     "custom"
             );
 
-            Directory savedDir = directoryRepository.save(newDir);
-            System.out.println("📁 Created subdirectory: " + newDirPath.toAbsolutePath());
+            Directory dir = directoryRepository.save(newDir);
+            directoryCacheService.invalidateName(parentDir.getId(), cleanName);
+            changeEventService.publishDirectory("created", dir, dir.getFullPath(), null);
+            return dir;
+        });
 
-            return savedDir;
+        System.out.println("📁 Created subdirectory: " + Paths.get(savedDir.getFullPath()).toAbsolutePath());
+        return savedDir;
+    }
 
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to create subdirectory: " + directoryName, e);
+    /**
+     * Rename a directory. Only the directory row is touched individually; descendant
+     * directories and files are rewritten with one set-based path-prefix update each.
+     */
+    @Transactional
+    public Directory renameDirectory(Long directoryId, String newName) {
+        CoordinationService.Fence fence = coordinationService.lockTree();
+        Directory directory = directoryRepository.findByIdAndDeletedFalse(directoryId)
+                .orElseThrow(() -> new RuntimeException("Directory not found"));
+
+        String cleanName = cleanDirectoryName(newName);
+        Path newPath = Paths.get(directory.getFullPath()).resolveSibling(cleanName);
+
+        return relocateDirectory(directory, directory.getParentId(), cleanName, newPath, fence);
+    }
+
+    /**
+     * Move a directory (and everything below it) under a new parent
+     */
+    @Transactional
+    public Directory moveDirectory(Long directoryId, Long newParentId) {
+        CoordinationService.Fence fence = coordinationService.lockTree();
+        Directory directory = directoryRepository.findByIdAndDeletedFalse(directoryId)
+                .orElseThrow(() -> new RuntimeException("Directory not found"));
+        Directory newParent = directoryRepository.findByIdAndDeletedFalse(newParentId)
+                .orElseThrow(() -> new RuntimeException("Target parent directory not found"));
+
+        if (isSameOrDescendant(newParent.getFullPath(), directory.getFullPath())) {
+            throw new RuntimeException("Cannot move a directory into itself or one of its subdirectories");
         }
+
+        Path newPath = Paths.get(newParent.getFullPath()).resolve(directory.getName());
+
+        return relocateDirectory(directory, newParent.getId(), directory.getName(), newPath, fence);
+    }
+
+    /**
+     * Get the usage counters of a single directory
+     */
+    public Map<String, Object> getDirectoryUsage(Long directoryId) {
+        Directory directory = directoryRepository.findByIdAndDeletedFalse(directoryId)
+                .orElseThrow(() -> new RuntimeException("Directory not found"));
+
+        Map<String, Object> usage = new HashMap<>();
+        usage.put("id", directory.getId());
+        usage.put("fileCount", directory.getFileCount());
+        usage.put("sizeBytes", directory.getSizeBytes());
+        usage.put("totalFileCount", directory.getTotalFileCount());
+        usage.put("totalSizeBytes", directory.getTotalSizeBytes());
+        return usage;
     }
 
     /**
@@ -116,57 +187,31 @@ public class DirectoryService {
      * Get all directories (flat list)
      */
     public List<Directory> getAllDirectories() {
-        return directoryRepository.findAll();
+        return directoryRepository.findByDeletedFalse();
     }
 
     /**
      * Get root directories
      */
     public List<Directory> getRootDirectories() {
-        return directoryRepository.findByParentIdIsNull();
+        return directoryRepository.findByParentIdIsNullAndDeletedFalse();
     }
 
     /**
      * Get subdirectories of a parent
      */
     public List<Directory> getSubdirectories(Long parentId) {
-        return directoryRepository.findByParentId(parentId);
+        return directoryRepository.findByParentIdAndDeletedFalse(parentId);
     }
 
     /**
-     * Delete a directory and all its subdirectories
+     * Move a directory and all its subdirectories to the trash. Rows are tombstoned with
+     * set-based updates and the physical directory is renamed into the trash area, so the
+     * caller never waits for the subtree to be unlinked; TrashService purges it later.
      */
     public boolean deleteDirectory(Long directoryId) {
         try {
-            Directory directory = directoryRepository.findById(directoryId)
-                    .orElseThrow(() -> new RuntimeException("Directory not found"));
-
-            // Get all subdirectories recursively
-            List<Directory> allSubdirs = getAllSubdirectories(directoryId);
-
-            // Delete files in subdirectories first, then the directories (deepest first)
-            Collections.reverse(allSubdirs);
-            for (Directory subdir : allSubdirs) {
-                // Delete all files in this directory
-                fileStorageService.deleteDirectoryFiles(subdir.getId());
-
-                Path dirPath = Paths.get(subdir.getFullPath());
-                if (Files.exists(dirPath)) {
-                    Files.delete(dirPath);
-                    System.out.println("🗑️ Deleted directory: " + dirPath);
-                }
-                directoryRepository.delete(subdir);
-            }
-
-            // Delete files in the main directory, then the directory itself
-            fileStorageService.deleteDirectoryFiles(directory.getId());
-            Path mainDirPath = Paths.get(directory.getFullPath());
-            if (Files.exists(mainDirPath)) {
-                Files.delete(mainDirPath);
-                System.out.println("🗑️ Deleted directory: " + mainDirPath);
-            }
-            directoryRepository.delete(directory);
-
+            transactionTemplate.executeWithoutResult(status -> trashDirectory(directoryId));
             return true;
 
         } catch (Exception e) {
@@ -180,7 +225,7 @@ public class DirectoryService {
      */
     public void deleteAllDirectories() {
         try {
-            List<Directory> rootDirs = directoryRepository.findByParentIdIsNull();
+            List<Directory> rootDirs = directoryRepository.findByParentIdIsNullAndDeletedFalse();
 
             for (Directory rootDir : rootDirs) {
                 deleteDirectory(rootDir.getId());
@@ -191,32 +236,206 @@ public class DirectoryService {
         }
     }
 
+    /**
+     * Restore a trashed directory, and everything that was deleted together with it,
+     * to its original parent
+     */
+    @Transactional
+    public Directory restoreDirectory(Long directoryId) {
+        CoordinationService.Fence fence = coordinationService.lockTree();
+        Directory directory = directoryRepository.findById(directoryId)
+                .filter(Directory::isDeleted)
+                .orElseThrow(() -> new RuntimeException("Directory not found in trash"));
+        coordinationService.lockNames(directory.getParentId());
+
+        Path restorePath;
+        if (directory.getParentId() == null) {
+            restorePath = Paths.get(baseUploadDir, directory.getName());
+        } else {
+            Directory parentDir = directoryRepository.findByIdAndDeletedFalse(directory.getParentId())
+                    .orElseThrow(() -> new RuntimeException("Parent directory is deleted, restore it first"));
+            restorePath = Paths.get(parentDir.getFullPath()).resolve(directory.getName());
+        }
+
+        if (directoryRepository.findByNameAndParentIdAndDeletedFalse(directory.getName(), directory.getParentId()).isPresent()
+                || Files.exists(restorePath)) {
+            throw new RuntimeException("Directory already exists: " + directory.getName());
+        }
+
+        Path trashPath = Paths.get(directory.getFullPath());
+        LocalDateTime deletedAt = directory.getDeletedAt();
+
+        directory.setDeleted(false);
+        directory.setDeletedAt(null);
+        directory.setFullPath(restorePath.toString());
+        Directory savedDir = directoryRepository.saveAndFlush(directory);
+        directoryCacheService.invalidateAll();
+
+        String pattern = subtreePattern(trashPath);
+        directoryRepository.restoreByPathPattern(pattern, deletedAt);
+        fileRepository.restoreByPathPattern(pattern, deletedAt);
+        rewriteSubtree(trashPath, restorePath);
+        directoryUsageService.applySubtreeDelta(savedDir.getParentId(),
+                savedDir.getTotalFileCount(), savedDir.getTotalSizeBytes());
+        // The restored files count against their uploaders again
+        quotaService.reconcileSoon();
+        changeEventService.publishDirectory("restored", savedDir, savedDir.getFullPath(), null);
+        moveOnDisk(trashPath, restorePath, fence);
+
+        System.out.println("♻️ Restored directory: " + restorePath);
+        return savedDir;
+    }
+
+    /**
+     * Physical location of trashed directories
+     */
+    public Path getTrashPath() {
+        return Paths.get(baseUploadDir, TRASH_DIR_NAME);
+    }
+
+    /**
+     * LIKE pattern (escape character '!') matching every path strictly below the given directory
+     */
+    public String subtreePattern(Path directoryPath) {
+        return subtreePatternOf(directoryPath);
+    }
+
+    static String subtreePatternOf(Path directoryPath) {
+        String prefix = directoryPath.toString() + FileSystems.getDefault().getSeparator();
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
     // =================== HELPER METHODS ===================
 
-    private void createDefaultSubdirectories(Long parentId, Path parentPath) {
-        String[] defaultDirs = {"Documents", "Images", "Plans", "Contracts", "Progress_Photos"};
+    private Directory relocateDirectory(Directory directory, Long newParentId, String newName, Path newPath,
+                                        CoordinationService.Fence fence) {
+        Path oldPath = Paths.get(directory.getFullPath());
+        if (oldPath.equals(newPath)) {
+            return directory;
+        }
+        coordinationService.lockNames(newParentId);
 
-        for (String dirName : defaultDirs) {
-            try {
-                Path subDirPath = parentPath.resolve(dirName);
-                Files.createDirectories(subDirPath);
+        Optional<Directory> existingDir = directoryRepository.findByNameAndParentIdAndDeletedFalse(newName, newParentId);
+        if (existingDir.isPresent() && !existingDir.get().getId().equals(directory.getId())) {
+            throw new RuntimeException("Directory already exists: " + newName);
+        }
+        if (Files.exists(newPath)) {
+            throw new RuntimeException("Target path already exists: " + newPath);
+        }
 
-                Directory subDir = new Directory(
-                        dirName,
-                        subDirPath.toString(),
-                        parentId,
-                        "default"
-                );
+        Long oldParentId = directory.getParentId();
 
-                directoryRepository.save(subDir);
-                System.out.println("📁 Created default subdirectory: " + dirName);
+        // Metadata first, so a failed rename at the end rolls the whole transaction back
+        directory.setName(newName);
+        directory.setParentId(newParentId);
+        directory.setFullPath(newPath.toString());
+        if (newParentId != null && "root".equals(directory.getDirectoryType())) {
+            directory.setDirectoryType("custom");
+        }
+        Directory savedDir = directoryRepository.saveAndFlush(directory);
+        directoryCacheService.invalidateAll();
 
-            } catch (IOException e) {
-                System.err.println("❌ Failed to create default directory: " + dirName);
-            }
+        rewriteSubtree(oldPath, newPath);
+
+        if (!Objects.equals(oldParentId, newParentId)) {
+            directoryUsageService.applySubtreeDelta(oldParentId,
+                    -savedDir.getTotalFileCount(), -savedDir.getTotalSizeBytes());
+            directoryUsageService.applySubtreeDelta(newParentId,
+                    savedDir.getTotalFileCount(), savedDir.getTotalSizeBytes());
+        }
+        changeEventService.publishDirectory("moved", savedDir, savedDir.getFullPath(), oldPath.toString());
+        moveOnDisk(oldPath, newPath, fence);
+
+        System.out.println("📁 Moved directory: " + oldPath + " -> " + newPath);
+        return savedDir;
+    }
+
+    private void trashDirectory(Long directoryId) {
+        CoordinationService.Fence fence = coordinationService.lockTree();
+        Directory directory = directoryRepository.findByIdAndDeletedFalse(directoryId)
+                .orElseThrow(() -> new RuntimeException("Directory not found"));
+
+        // Millisecond precision so the timestamp survives the round trip and identifies this delete on restore
+        LocalDateTime deletedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        Path oldPath = Paths.get(directory.getFullPath());
+        Path trashPath = getTrashPath().resolve(directory.getId() + "_" + directory.getName());
+
+        directory.setDeleted(true);
+        directory.setDeletedAt(deletedAt);
+        directory.setFullPath(trashPath.toString());
+        directoryRepository.saveAndFlush(directory);
+        directoryCacheService.invalidateAll();
+
+        String pattern = subtreePattern(oldPath);
+        directoryRepository.markDeletedByPathPattern(pattern, deletedAt);
+        fileRepository.markDeletedByPathPattern(pattern, deletedAt);
+        rewriteSubtree(oldPath, trashPath);
+        directoryUsageService.applySubtreeDelta(directory.getParentId(),
+                -directory.getTotalFileCount(), -directory.getTotalSizeBytes());
+        quotaService.reconcileSoon();
+        // Clients know the directory by its live path, not the trash location
+        changeEventService.publishDirectory("deleted", directory, oldPath.toString(), null);
+        moveOnDisk(oldPath, trashPath, fence);
+
+        System.out.println("🗑️ Moved directory to trash: " + oldPath);
+    }
+
+    /**
+     * Rewrite descendant directory and file paths with one prefix update per table
+     */
+    private void rewriteSubtree(Path oldPath, Path newPath) {
+        String separator = FileSystems.getDefault().getSeparator();
+        String oldPrefix = oldPath.toString() + separator;
+        String newPrefix = newPath.toString() + separator;
+
+        String pattern = subtreePattern(oldPath);
+        directoryRepository.rewritePathPrefix(pattern, oldPrefix.length(), newPrefix);
+        fileRepository.rewritePathPrefix(pattern, oldPrefix.length(), newPrefix);
+    }
+
+    /**
+     * Rename the physical directory, as the last step of the caller's transaction and
+     * under its tree lock, so a failed rename rolls the metadata back. If the transaction
+     * still rolls back afterwards (at commit), the directory is moved back where the
+     * rows say it is.
+     */
+    private void moveOnDisk(Path oldPath, Path newPath, CoordinationService.Fence fence) {
+        try {
+            coordinationService.fenced(fence, () -> {
+                if (!Files.exists(oldPath)) {
+                    return;
+                }
+                Files.createDirectories(newPath.getParent());
+                Files.move(oldPath, newPath, StandardCopyOption.ATOMIC_MOVE);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == STATUS_ROLLED_BACK) {
+                            moveBack(newPath, oldPath);
+                        }
+                    }
+                });
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to move directory on disk: " + e.getMessage(), e);
         }
     }
 
+    private void moveBack(Path movedPath, Path originalPath) {
+        try {
+            Files.move(movedPath, originalPath, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("↩️ Rolled back directory move: " + movedPath + " -> " + originalPath);
+        } catch (IOException e) {
+            System.err.println("❌ Could not move " + movedPath + " back to " + originalPath
+                    + " after a rollback, the reconciliation scan will report it: " + e.getMessage());
+        }
+    }
+
+    static boolean isSameOrDescendant(String candidatePath, String ancestorPath) {
+        return candidatePath.equals(ancestorPath)
+                || candidatePath.startsWith(ancestorPath + FileSystems.getDefault().getSeparator());
+    }
+
     private List<Map<String, Object>> buildDirectoryTree(List<Directory> allDirs) {
         Map<Long, List<Directory>> childrenMap = new HashMap<>();
         List<Directory> rootDirs = new ArrayList<>();
@@ -242,6 +461,10 @@ public class DirectoryService {
         node.put("fullPath", dir.getFullPath());
         node.put("type", dir.getDirectoryType());
         node.put("createdAt", dir.getCreatedAt());
+        node.put("fileCount", dir.getFileCount());
+        node.put("sizeBytes", dir.getSizeBytes());
+        node.put("totalFileCount", dir.getTotalFileCount());
+        node.put("totalSizeBytes", dir.getTotalSizeBytes());
 
         List<Directory> children = childrenMap.get(dir.getId());
         if (children != null && !children.isEmpty()) {
@@ -255,19 +478,9 @@ public class DirectoryService {
         return node;
     }
 
-    private List<Directory> getAllSubdirectories(Long parentId) {
-        List<Directory> result = new ArrayList<>();
-        List<Directory> children = directoryRepository.findByParentId(parentId);
-
-        for (Directory child : children) {
-            result.add(child);
-            result.addAll(getAllSubdirectories(child.getId()));
-        }
-
-        return result;
-    }
-
-    private String cleanDirectoryName(String name) {
-        return name.replaceAll("[^a-zA-Z0-9._-]", "_").replaceAll("_{2,}", "_");
+    static String cleanDirectoryName(String name) {
+        String cleanName = name.replaceAll("[^a-zA-Z0-9._-]", "_").replaceAll("_{2,}", "_");
+        // Dot-prefixed names are reserved for internal areas such as the trash
+        return cleanName.startsWith(".") ? "_" + cleanName.substring(1) : cleanName;
     }
 }
\ No newline at end of file
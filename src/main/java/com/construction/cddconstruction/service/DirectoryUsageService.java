@@ -0,0 +1,164 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.config.RequestActivityFilter;
+import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.repository.DirectoryRepository;
+import com.construction.cddconstruction.repository.FileRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Keeps per-directory file counts and byte totals up to date incrementally, so folder
+ * usage can be read straight off the directory row. Totals include every live file
+ * below the directory; a periodic reconciliation recomputes them from the file rows.
+ */
+@Service
+public class DirectoryUsageService {
+
+    @Value("${file.usage.quiet-period-ms:30000}")
+    private long quietPeriodMs;
+
+    @Autowired
+    private DirectoryRepository directoryRepository;
+
+    @Autowired
+    private DirectoryCacheService directoryCacheService;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private RequestActivityFilter requestActivityFilter;
+
+    @Autowired
+    private QuotaService quotaService;
+
+    /**
+     * Account for files added to (positive) or removed from (negative) a directory
+     */
+    @Transactional
+    public void applyFileDelta(Long directoryId, long files, long bytes) {
+        if (files == 0 && bytes == 0) {
+            return;
+        }
+        List<Long> ids = getSelfAndAncestorIds(directoryId);
+        directoryRepository.adjustDirectUsage(directoryId, files, bytes);
+        directoryRepository.adjustTotalUsage(ids, files, bytes);
+        quotaService.addProjectUsage(ids.get(ids.size() - 1), bytes);
+    }
+
+    /**
+     * Account for a whole subtree attached to (positive) or detached from (negative) a parent
+     */
+    @Transactional
+    public void applySubtreeDelta(Long parentId, long files, long bytes) {
+        if (parentId == null || (files == 0 && bytes == 0)) {
+            return;
+        }
+        List<Long> ids = getSelfAndAncestorIds(parentId);
+        directoryRepository.adjustTotalUsage(ids, files, bytes);
+        quotaService.addProjectUsage(ids.get(ids.size() - 1), bytes);
+    }
+
+    /**
+     * Zero every counter, e.g. after all files were deleted at once
+     */
+    @Transactional
+    public void resetUsage() {
+        directoryRepository.resetUsage();
+        quotaService.reconcileSoon();
+    }
+
+    /**
+     * Recompute all counters from the file rows and fix any drift. Returns the number
+     * of directories that had to be corrected.
+     */
+    @Transactional
+    public int reconcile() {
+        Map<Long, long[]> directUsage = new HashMap<>();
+        for (Object[] row : fileRepository.sumLiveUsageByDirectory()) {
+            directUsage.put((Long) row[0], new long[]{((Number) row[1]).longValue(), ((Number) row[2]).longValue()});
+        }
+
+        List<Directory> directories = directoryRepository.findByDeletedFalse();
+        Map<Long, List<Directory>> childrenMap = new HashMap<>();
+        List<Directory> rootDirs = new ArrayList<>();
+        for (Directory dir : directories) {
+            if (dir.getParentId() == null) {
+                rootDirs.add(dir);
+            } else {
+                childrenMap.computeIfAbsent(dir.getParentId(), k -> new ArrayList<>()).add(dir);
+            }
+        }
+
+        int corrected = 0;
+        for (Directory root : rootDirs) {
+            corrected += reconcileNode(root, childrenMap, directUsage, new long[2]);
+        }
+
+        if (corrected > 0) {
+            System.out.println("📊 Usage reconciliation corrected " + corrected + " directories");
+        }
+        return corrected;
+    }
+
+    @Scheduled(fixedDelayString = "${file.usage.reconcile-interval-ms:3600000}",
+            initialDelayString = "${file.usage.reconcile-interval-ms:3600000}")
+    public void scheduledReconcile() {
+        if (!requestActivityFilter.isQuiet(quietPeriodMs)) {
+            return;
+        }
+        try {
+            reconcile();
+        } catch (Exception e) {
+            System.err.println("❌ Error reconciling directory usage: " + e.getMessage());
+        }
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private int reconcileNode(Directory dir, Map<Long, List<Directory>> childrenMap,
+                              Map<Long, long[]> directUsage, long[] totalsOut) {
+        long[] direct = directUsage.getOrDefault(dir.getId(), new long[2]);
+        long totalFiles = direct[0];
+        long totalBytes = direct[1];
+        int corrected = 0;
+
+        for (Directory child : childrenMap.getOrDefault(dir.getId(), List.of())) {
+            long[] childTotals = new long[2];
+            corrected += reconcileNode(child, childrenMap, directUsage, childTotals);
+            totalFiles += childTotals[0];
+            totalBytes += childTotals[1];
+        }
+
+        if (dir.getFileCount() != direct[0] || dir.getSizeBytes() != direct[1]
+                || dir.getTotalFileCount() != totalFiles || dir.getTotalSizeBytes() != totalBytes) {
+            directoryRepository.setUsage(dir.getId(), direct[0], direct[1], totalFiles, totalBytes);
+            corrected++;
+        }
+
+        totalsOut[0] = totalFiles;
+        totalsOut[1] = totalBytes;
+        return corrected;
+    }
+
+    private List<Long> getSelfAndAncestorIds(Long directoryId) {
+        List<Long> ids = new ArrayList<>();
+        Long currentId = directoryId;
+        while (currentId != null && !ids.contains(currentId)) {
+            ids.add(currentId);
+            // Trashed directories are not cached, so those fall back to the repository
+            Long id = currentId;
+            currentId = directoryCacheService.findById(id)
+                    .or(() -> directoryRepository.findById(id))
+                    .map(Directory::getParentId)
+                    .orElse(null);
+        }
+        return ids;
+    }
+}
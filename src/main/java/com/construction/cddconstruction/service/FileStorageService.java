@@ -2,24 +2,41 @@ package com.construction.cddconstruction.service;
 
 import com.construction.cddconstruction.entity.File;
 import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.entity.FileRevision;
 import com.construction.cddconstruction.repository.FileRepository;
 import com.construction.cddconstruction.repository.DirectoryRepository;
+import com.construction.cddconstruction.repository.FileRevisionRepository;
+import com.construction.cddconstruction.storage.BlobStore;
+import com.construction.cddconstruction.storage.LocalBlobStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.UUID;
 
 @Service
 public class FileStorageService {
 
-    private final String uploadDir = "uploads"; // Base upload directory
+    // Prefix of keys in a non-local blob store
+    private static final String BLOB_KEY_PREFIX = "blobs/";
 
     @Autowired
     private FileRepository fileRepository;
@@ -27,38 +44,111 @@ public class FileStorageService {
     @Autowired
     private DirectoryRepository directoryRepository;
 
+    @Autowired
+    private DirectoryCacheService directoryCacheService;
+
+    @Autowired
+    private FileRevisionRepository fileRevisionRepository;
+
+    @Autowired
+    private ChunkStorageService chunkStorageService;
+
+    @Autowired
+    private ContentCompressionService contentCompressionService;
+
+    @Autowired
+    private DirectoryUsageService directoryUsageService;
+
+    @Autowired
+    private ChangeEventService changeEventService;
+
+    @Autowired
+    private UploadJournalService uploadJournalService;
+
+    @Autowired
+    private SegmentStorageService segmentStorageService;
+
+    @Autowired
+    private MappedFileService mappedFileService;
+
+    @Autowired
+    private TraceService traceService;
+
+    @Autowired
+    private PhotoMetadataService photoMetadataService;
+
+    @Autowired
+    private QuotaService quotaService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private LocalBlobStore localBlobStore;
+
+    @Autowired
+    @Qualifier("coldBlobStore")
+    private BlobStore coldBlobStore;
+
     /**
-     * Upload a file to a specific directory
+     * Upload a file to a specific directory. The content is staged first; publishing it
+     * into the directory and saving the row happen under the directory's row lock, so a
+     * rename, move or trash of the directory (or above it) either commits before and its
+     * new path is used, or waits until the row is saved and then takes the file along.
      */
     public File uploadFileToDirectory(MultipartFile file, Long directoryId) {
         try {
-            // Find the target directory
-            Directory targetDirectory = directoryRepository.findById(directoryId)
+            // Fail fast on an unknown directory; its path is only read under the lock
+            directoryCacheService.findById(directoryId)
                     .orElseThrow(() -> new RuntimeException("Directory not found"));
 
-            // Generate unique filename to prevent conflicts
-            String originalFilename = file.getOriginalFilename();
-            String fileExtension = "";
-            if (originalFilename != null && originalFilename.contains(".")) {
-                fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
-            }
-            String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
-
-            // Save file to the directory's path
-            Path targetPath = Paths.get(targetDirectory.getFullPath()).resolve(uniqueFilename);
-            Files.copy(file.getInputStream(), targetPath, StandardCopyOption.REPLACE_EXISTING);
+            // Over quota is rejected before anything is written
+            String user = QuotaService.currentUser();
+            quotaService.checkUpload(user, directoryId, file.getSize());
 
-            // Save file metadata to database
+            String originalFilename = file.getOriginalFilename();
             File fileEntity = new File(
                     originalFilename,
-                    targetPath.toString(),
+                    null,
                     file.getSize(),
                     file.getContentType(),
                     directoryId
             );
-
-            File savedFile = fileRepository.save(fileEntity);
-            System.out.println("✅ File uploaded: " + originalFilename + " -> " + targetDirectory.getFullPath() + "/" + uniqueFilename);
+            fileEntity.setUploadedBy(user);
+            StagedUpload staged = stage(file, fileEntity);
+
+            File savedFile;
+            try {
+                savedFile = transactionTemplate.execute(status -> {
+                    Directory targetDirectory = directoryRepository.findLiveByIdForUpdate(directoryId)
+                            .orElseThrow(() -> new RuntimeException("Directory not found"));
+                    UploadJournalService.Ticket ticket;
+                    try {
+                        ticket = place(staged, targetDirectory, fileEntity);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+
+                    // Save file metadata to database
+                    File saved = saveUploaded(fileEntity, ticket);
+                    directoryUsageService.applyFileDelta(directoryId, 1, saved.getFileSize());
+                    quotaService.addUserUsage(user, saved.getFileSize());
+                    return saved;
+                });
+            } catch (RuntimeException e) {
+                // Rolled back: nothing refers to the content
+                discard(staged, fileEntity);
+                if (e instanceof UncheckedIOException io) {
+                    throw io.getCause();
+                }
+                throw e;
+            }
+            changeEventService.publishFile("created", savedFile);
+            System.out.println("✅ File uploaded: " + originalFilename + " -> " + savedFile.getFilePath()
+                    + (savedFile.getStorageEncoding() != null ? " (" + savedFile.getStorageEncoding() + ")" : ""));
 
             return savedFile;
 
@@ -68,11 +158,99 @@ public class FileStorageService {
         }
     }
 
+    /**
+     * Upload a new revision of an existing file. Every revision is kept in the chunk
+     * store, so regions that did not change between revisions are stored only once.
+     * Revisions of one file are serialized by a lock on its row, held until the row points
+     * at the new content and the revision is recorded; the previous content is deleted
+     * only once that has committed.
+     */
+    public File uploadRevision(Long fileId, MultipartFile file) {
+        StoredContent[] previous = new StoredContent[1];
+        StoredContent[] written = new StoredContent[1];
+        FileRevision[] revision = new FileRevision[1];
+        File savedFile;
+        try {
+            savedFile = transactionTemplate.execute(status -> {
+                File fileEntity = fileRepository.findLiveByIdForUpdate(fileId)
+                        .orElseThrow(() -> new RuntimeException("File not found"));
+                // Read after the file lock: a directory move rewrites the file row, so its path is settled by now
+                Directory targetDirectory = directoryRepository.findByIdAndDeletedFalse(fileEntity.getDirectoryId())
+                        .orElseThrow(() -> new RuntimeException("Directory not found"));
+
+                // A revision counts against the file's uploader, and only by what it adds
+                quotaService.checkUpload(fileEntity.getUploadedBy(), fileEntity.getDirectoryId(), file.getSize() - fileEntity.getFileSize());
+
+                try {
+                    // Files uploaded before they had any history get their current content as revision 1
+                    if (fileRevisionRepository.countByFileId(fileId) == 0) {
+                        recordRevision(fileEntity);
+                    }
+
+                    // New revisions always go to a new path; the previous blob is never modified in place
+                    previous[0] = StoredContent.of(fileEntity);
+                    long previousSize = fileEntity.getFileSize();
+                    UploadJournalService.Ticket ticket = writeToDirectory(file, targetDirectory, fileEntity);
+                    written[0] = StoredContent.of(fileEntity);
+
+                    fileEntity.setOriginalName(file.getOriginalFilename());
+                    fileEntity.setFileSize(file.getSize());
+                    fileEntity.setContentType(file.getContentType());
+                    File saved = saveUploaded(fileEntity, ticket);
+
+                    directoryUsageService.applyFileDelta(saved.getDirectoryId(), 0, saved.getFileSize() - previousSize);
+                    quotaService.addUserUsage(saved.getUploadedBy(), saved.getFileSize() - previousSize);
+
+                    revision[0] = recordRevision(saved);
+                    return saved;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Rolled back: the row still points at the previous content, so the new one goes
+            if (written[0] != null) {
+                deleteQuietly(written[0]);
+            }
+            if (e instanceof UncheckedIOException io) {
+                System.err.println("❌ Error uploading revision: " + io.getCause().getMessage());
+                throw new RuntimeException("Could not store revision: " + io.getCause().getMessage());
+            }
+            throw e;
+        }
+
+        deleteQuietly(previous[0]);
+        changeEventService.publishFile("updated", savedFile);
+        System.out.println("✅ Revision " + revision[0].getRevisionNumber() + " uploaded: " + savedFile.getOriginalName());
+        return savedFile;
+    }
+
+    /**
+     * Get the revision history of a file, newest first
+     */
+    public List<FileRevision> getRevisions(Long fileId) {
+        return fileRevisionRepository.findByFileIdOrderByRevisionNumberDesc(fileId);
+    }
+
+    /**
+     * Get a single revision, including its chunk list
+     */
+    public FileRevision getRevision(Long fileId, Integer revisionNumber) {
+        return fileRevisionRepository.findWithChunks(fileId, revisionNumber).orElse(null);
+    }
+
+    /**
+     * Stream the content of a revision, reassembled chunk by chunk
+     */
+    public InputStream openRevision(FileRevision revision) {
+        return chunkStorageService.openChunks(revision.getChunkHashes());
+    }
+
     /**
      * Get all files
      */
     public List<File> getAllFiles() {
-        return fileRepository.findAll();
+        return fileRepository.findByDeletedFalse();
     }
 
     /**
@@ -80,7 +258,7 @@ public class FileStorageService {
      */
     public File uploadFile(MultipartFile file) {
         // Find the first root directory
-        List<Directory> rootDirs = directoryRepository.findByParentIdIsNull();
+        List<Directory> rootDirs = directoryRepository.findByParentIdIsNullAndDeletedFalse();
         if (rootDirs.isEmpty()) {
             throw new RuntimeException("No root directory found. Create a root directory first.");
         }
@@ -93,74 +271,86 @@ public class FileStorageService {
      * Get all files in a specific directory
      */
     public List<File> getDirectoryFiles(Long directoryId) {
-        return fileRepository.findByDirectoryId(directoryId);
+        return fileRepository.findByDirectoryIdAndDeletedFalse(directoryId);
     }
 
     /**
-     * Delete a file (both from disk and database)
+     * Move a file to the trash. The row is only tombstoned; the physical file is
+     * removed by the trash collector once the retention period has passed.
      */
     public boolean deleteFile(Long fileId) {
-        try {
-            File fileEntity = fileRepository.findById(fileId).orElse(null);
-            if (fileEntity == null) {
-                System.err.println("❌ File not found with ID: " + fileId);
-                return false;
-            }
-
-            // Delete physical file
-            Path filePath = Paths.get(fileEntity.getFilePath());
-            if (Files.exists(filePath)) {
-                Files.delete(filePath);
-                System.out.println("✅ Deleted physical file: " + filePath);
-            }
-
-            // Delete database record
-            fileRepository.delete(fileEntity);
-            System.out.println("✅ Deleted file record from database");
-
-            return true;
-
-        } catch (IOException e) {
-            System.err.println("❌ Error deleting file: " + e.getMessage());
+        File fileEntity = fileRepository.findByIdAndDeletedFalse(fileId).orElse(null);
+        if (fileEntity == null) {
+            System.err.println("❌ File not found with ID: " + fileId);
             return false;
         }
+
+        fileEntity.setDeleted(true);
+        fileEntity.setDeletedAt(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+        fileRepository.save(fileEntity);
+        directoryUsageService.applyFileDelta(fileEntity.getDirectoryId(), -1, -fileEntity.getFileSize());
+        quotaService.addUserUsage(fileEntity.getUploadedBy(), -fileEntity.getFileSize());
+        changeEventService.publishFile("deleted", fileEntity);
+        System.out.println("🗑️ Moved file to trash: " + fileEntity.getOriginalName());
+
+        return true;
     }
 
     /**
-     * Delete all files in a directory (when directory is deleted)
+     * Move all files to the trash
      */
-    public boolean deleteDirectoryFiles(Long directoryId) {
+    public boolean deleteAllFiles() {
         try {
-            // Delete all file records from database for this directory
-            List<File> directoryFiles = fileRepository.findByDirectoryId(directoryId);
-            for (File file : directoryFiles) {
-                deleteFile(file.getId());
-            }
-
+            int deleted = fileRepository.markAllDeleted(LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+            directoryUsageService.resetUsage();
+            changeEventService.publishReset();
+            System.out.println("🗑️ Moved " + deleted + " files to trash");
             return true;
 
         } catch (Exception e) {
-            System.err.println("❌ Error deleting directory files: " + e.getMessage());
+            System.err.println("❌ Error deleting all files: " + e.getMessage());
             return false;
         }
     }
 
     /**
-     * Delete all files
+     * Restore a trashed file into its (live) directory
      */
-    public boolean deleteAllFiles() {
+    public File restoreFile(Long fileId) {
+        File fileEntity = fileRepository.findById(fileId)
+                .filter(File::isDeleted)
+                .orElseThrow(() -> new RuntimeException("File not found in trash"));
+
+        directoryRepository.findByIdAndDeletedFalse(fileEntity.getDirectoryId())
+                .orElseThrow(() -> new RuntimeException("Directory is deleted, restore it first"));
+
+        fileEntity.setDeleted(false);
+        fileEntity.setDeletedAt(null);
+        File savedFile = fileRepository.save(fileEntity);
+        directoryUsageService.applyFileDelta(savedFile.getDirectoryId(), 1, savedFile.getFileSize());
+        quotaService.addUserUsage(savedFile.getUploadedBy(), savedFile.getFileSize());
+        changeEventService.publishFile("restored", savedFile);
+
+        return savedFile;
+    }
+
+    /**
+     * Permanently delete a file (both from disk and database)
+     */
+    public void purgeFile(File fileEntity) {
         try {
-            // Delete all file records from database
-            List<File> allFiles = fileRepository.findAll();
-            for (File file : allFiles) {
-                deleteFile(file.getId());
+            List<FileRevision> revisions = fileRevisionRepository.findAllWithChunks(fileEntity.getId());
+            for (FileRevision revision : revisions) {
+                chunkStorageService.releaseChunks(revision.getChunkHashes());
             }
+            fileRevisionRepository.deleteAll(revisions);
 
-            return true;
+            // Row first: a shared key is only deleted once nothing refers to it
+            fileRepository.delete(fileEntity);
+            deleteStoredContent(fileEntity.getFilePath(), fileEntity.getSegmentId(), fileEntity.getStorageKey(), fileEntity.getStorageTier());
 
-        } catch (Exception e) {
-            System.err.println("❌ Error deleting all files: " + e.getMessage());
-            return false;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not purge file: " + e.getMessage());
         }
     }
 
@@ -169,23 +359,325 @@ public class FileStorageService {
      */
     public byte[] getFileContent(Long fileId) {
         try {
-            File fileEntity = fileRepository.findById(fileId).orElse(null);
+            File fileEntity = fileRepository.findByIdAndDeletedFalse(fileId).orElse(null);
             if (fileEntity == null) {
                 throw new RuntimeException("File not found");
             }
 
-            Path filePath = Paths.get(fileEntity.getFilePath());
-            return Files.readAllBytes(filePath);
+            try (InputStream in = openFileContent(fileEntity)) {
+                return in.readAllBytes();
+            }
 
         } catch (IOException e) {
             throw new RuntimeException("Could not read file: " + e.getMessage());
         }
     }
 
+    /**
+     * Stream the original content of a file, decompressing on the fly if it is compressed at rest
+     */
+    public InputStream openFileContent(File fileEntity) throws IOException {
+        return contentCompressionService.decode(openStoredContent(fileEntity), fileEntity.getStorageEncoding());
+    }
+
+    /**
+     * Stream the bytes exactly as stored (still encoded with {@link File#getStorageEncoding()})
+     */
+    public InputStream openStoredContent(File fileEntity) throws IOException {
+        if (fileEntity.getSegmentId() != null) {
+            return segmentStorageService.open(fileEntity.getSegmentId(), fileEntity.getSegmentOffset(), fileEntity.getStoredSize());
+        }
+        if (TieringService.COLD.equals(fileEntity.getStorageTier())) {
+            // Cold blobs are gzip of the original content, which is already the stored form of gzip-encoded files
+            InputStream cold = coldBlobStore.get(fileEntity.getStorageKey());
+            return ContentCompressionService.GZIP.equals(fileEntity.getStorageEncoding())
+                    ? cold
+                    : contentCompressionService.decode(cold, ContentCompressionService.GZIP);
+        }
+        if (fileEntity.getStorageKey() != null) {
+            return blobStore.get(fileEntity.getStorageKey());
+        }
+        try {
+            return localBlobStore.get(localBlobStore.keyOf(Paths.get(fileEntity.getFilePath())));
+        } catch (NoSuchFileException e) {
+            // Demoted since the row was read: the content is the same, only its tier changed
+            File current = fileRepository.findById(fileEntity.getId()).orElse(null);
+            if (current == null || !TieringService.COLD.equals(current.getStorageTier())
+                    || !current.getFilePath().equals(fileEntity.getFilePath())) {
+                throw e;
+            }
+            return openStoredContent(current);
+        }
+    }
+
+    /**
+     * Remove the stored content of a file once its row is gone or points elsewhere. Packed
+     * content is only unreferenced and left to segment compaction; a key shared with copies
+     * is kept while any row still refers to it; a local blob may be a hard link, and
+     * deleting it only drops this name.
+     */
+    public void deleteStoredContent(String filePath, Long segmentId, String storageKey, String storageTier) throws IOException {
+        if (segmentId != null) {
+            return;
+        }
+        if (storageKey != null && fileRepository.countByStorageKey(storageKey) > 0) {
+            return;
+        }
+        if (TieringService.COLD.equals(storageTier)) {
+            coldBlobStore.delete(storageKey);
+        } else if (storageKey != null) {
+            blobStore.delete(storageKey);
+        } else {
+            // Unmapped before the file goes, or by the last download still reading it
+            mappedFileService.release(filePath);
+            localBlobStore.delete(localBlobStore.keyOf(Paths.get(filePath)));
+        }
+    }
+
     /**
      * Get file by ID
      */
     public File getFile(Long fileId) {
-        return fileRepository.findById(fileId).orElse(null);
+        return fileRepository.findByIdAndDeletedFalse(fileId).orElse(null);
+    }
+
+    // =================== HELPER METHODS ===================
+
+    /**
+     * Write the upload to a staging file and publish it under a new unique name in the
+     * directory, pack it into a segment if it is small, or hand it to the configured blob
+     * store if that is not the local tree. The returned ticket (null unless published into
+     * the local tree) must be settled once the row is saved.
+     */
+    private UploadJournalService.Ticket writeToDirectory(MultipartFile file, Directory targetDirectory, File fileEntity) throws IOException {
+        return place(stage(file, fileEntity), targetDirectory, fileEntity);
+    }
+
+    /**
+     * Content that is stored, but not yet published under its name in the directory
+     * (stagingPath is null when it went into a segment or a blob store)
+     */
+    private record StagedUpload(Path stagingPath, String fileName) {}
+
+    /**
+     * Everything up to publishing: stage the upload, and pack it or put it into the blob
+     * store where that applies. Only needs the directory's path afterwards.
+     */
+    private StagedUpload stage(MultipartFile file, File fileEntity) throws IOException {
+        // Generate unique filename to prevent conflicts
+        String originalFilename = file.getOriginalFilename();
+        String fileExtension = "";
+        if (originalFilename != null && originalFilename.contains(".")) {
+            fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
+        }
+        String uniqueFilename = UUID.randomUUID().toString() + fileExtension;
+
+        // Compressed if the content is worth it. The checksum and byte count are taken
+        // on the way through, so the upload is read only once.
+        MessageDigest digest = newSha256();
+        boolean compress = contentCompressionService.shouldCompress(file);
+        String fileName = compress ? uniqueFilename + ".gz" : uniqueFilename;
+        Path stagingPath = uploadJournalService.newStagingFile();
+        boolean publishLater = false;
+        try {
+            long bytesRead;
+            try (TraceService.Span span = traceService.span(TraceService.DISK, compress ? "stageCompressed" : "stage");
+                 CountingInputStream in = new CountingInputStream(new DigestInputStream(file.getInputStream(), digest))) {
+                if (compress) {
+                    fileEntity.setStoredSize(contentCompressionService.writeCompressed(in, stagingPath));
+                } else {
+                    Files.copy(in, stagingPath, StandardCopyOption.REPLACE_EXISTING);
+                    fileEntity.setStoredSize(in.getCount());
+                }
+                bytesRead = in.getCount();
+                span.addBytes(bytesRead);
+            }
+
+            // Never trust the declared size: a short read means a truncated upload
+            if (bytesRead != file.getSize()) {
+                throw new IOException("Upload truncated: expected " + file.getSize() + " bytes, got " + bytesRead);
+            }
+
+            // Capture date and size of photos, from the staged copy unless that one is compressed
+            PhotoMetadataService.PhotoMetadata photo = PhotoMetadataService.PhotoMetadata.NONE;
+            if (photoMetadataService.isPhoto(originalFilename, file.getContentType())) {
+                if (compress) {
+                    try (InputStream in = file.getInputStream()) {
+                        photo = photoMetadataService.extract(in);
+                    }
+                } else {
+                    photo = photoMetadataService.extract(stagingPath);
+                }
+            }
+            fileEntity.setCapturedAt(photo.capturedAt());
+            fileEntity.setImageWidth(photo.width());
+            fileEntity.setImageHeight(photo.height());
+
+            if (segmentStorageService.shouldPack(fileEntity.getStoredSize())) {
+                // Small blobs go into a segment file; targetPath only serves as the logical path
+                SegmentStorageService.Location location = segmentStorageService.append(stagingPath);
+                fileEntity.setSegmentId(location.segmentId());
+                fileEntity.setSegmentOffset(location.offset());
+                fileEntity.setStorageKey(null);
+                fileEntity.setStorageTier(null);
+            } else if (blobStore != localBlobStore) {
+                // Stores publish a put atomically; a crash before the row is saved leaves an unreferenced object
+                String storageKey = BLOB_KEY_PREFIX + fileName;
+                try (TraceService.Span span = traceService.span(TraceService.DISK, "blobPut");
+                     InputStream staged = Files.newInputStream(stagingPath)) {
+                    blobStore.put(storageKey, staged, fileEntity.getStoredSize());
+                    span.addBytes(fileEntity.getStoredSize());
+                }
+                fileEntity.setSegmentId(null);
+                fileEntity.setSegmentOffset(null);
+                fileEntity.setStorageKey(storageKey);
+                fileEntity.setStorageTier(null);
+            } else {
+                // Published into the directory by place()
+                publishLater = true;
+                fileEntity.setSegmentId(null);
+                fileEntity.setSegmentOffset(null);
+                fileEntity.setStorageKey(null);
+                fileEntity.setStorageTier(null);
+            }
+        } finally {
+            if (!publishLater) {
+                Files.deleteIfExists(stagingPath);
+            }
+        }
+
+        fileEntity.setStorageEncoding(compress ? ContentCompressionService.GZIP : null);
+        fileEntity.setContentHash(HexFormat.of().formatHex(digest.digest()));
+        fileEntity.setChecksumVerifiedAt(null);
+        fileEntity.setChecksumMismatch(false);
+        return new StagedUpload(publishLater ? stagingPath : null, fileName);
+    }
+
+    /**
+     * Give staged content its path in the directory, publishing it there if it lives in
+     * the local tree. A partial write never shows up under the final name.
+     */
+    private UploadJournalService.Ticket place(StagedUpload staged, Directory targetDirectory, File fileEntity) throws IOException {
+        Path targetPath = Paths.get(targetDirectory.getFullPath()).resolve(staged.fileName());
+        UploadJournalService.Ticket ticket = staged.stagingPath() == null
+                ? null
+                : uploadJournalService.publish(staged.stagingPath(), targetPath);
+        fileEntity.setFilePath(targetPath.toString());
+        return ticket;
+    }
+
+    /**
+     * Remove the content of a new upload whose row was never committed
+     */
+    private void discard(StagedUpload staged, File fileEntity) {
+        try {
+            if (staged.stagingPath() != null) {
+                Files.deleteIfExists(staged.stagingPath());
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Could not remove staged upload " + staged.stagingPath() + ": " + e.getMessage());
+        }
+        if (fileEntity.getStorageKey() != null || (fileEntity.getSegmentId() == null && fileEntity.getFilePath() != null)) {
+            deleteQuietly(StoredContent.of(fileEntity));
+        }
+    }
+
+    private File saveUploaded(File fileEntity, UploadJournalService.Ticket ticket) {
+        File savedFile;
+        try {
+            savedFile = fileRepository.save(fileEntity);
+        } catch (RuntimeException e) {
+            if (ticket != null) {
+                uploadJournalService.abort(ticket);
+            } else if (fileEntity.getStorageKey() != null) {
+                try {
+                    blobStore.delete(fileEntity.getStorageKey());
+                } catch (IOException deleteError) {
+                    System.err.println("❌ Could not remove unsaved upload " + fileEntity.getStorageKey() + ": " + deleteError.getMessage());
+                }
+            }
+            throw e;
+        }
+        if (ticket != null) {
+            uploadJournalService.commit(ticket);
+        }
+        return savedFile;
+    }
+
+    /**
+     * Where a file's content was stored, kept to delete it once nothing points there
+     */
+    private record StoredContent(String filePath, Long segmentId, String storageKey, String storageTier) {
+
+        static StoredContent of(File file) {
+            return new StoredContent(file.getFilePath(), file.getSegmentId(), file.getStorageKey(), file.getStorageTier());
+        }
+    }
+
+    private void deleteQuietly(StoredContent content) {
+        try {
+            deleteStoredContent(content.filePath(), content.segmentId(), content.storageKey(), content.storageTier());
+        } catch (IOException e) {
+            System.err.println("❌ Could not remove stored content " + content.filePath() + ": " + e.getMessage());
+        }
+    }
+
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    private FileRevision recordRevision(File fileEntity) throws IOException {
+        List<String> chunkHashes;
+        try (InputStream in = openFileContent(fileEntity)) {
+            chunkHashes = chunkStorageService.storeChunks(in);
+        }
+
+        int revisionNumber = fileRevisionRepository.findTopByFileIdOrderByRevisionNumberDesc(fileEntity.getId())
+                .map(revision -> revision.getRevisionNumber() + 1)
+                .orElse(1);
+
+        return fileRevisionRepository.save(new FileRevision(
+                fileEntity.getId(),
+                revisionNumber,
+                fileEntity.getOriginalName(),
+                fileEntity.getFileSize(),
+                fileEntity.getContentType(),
+                chunkHashes
+        ));
     }
 }
\ No newline at end of file
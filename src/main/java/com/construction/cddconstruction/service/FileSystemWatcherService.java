@@ -0,0 +1,374 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.repository.DirectoryRepository;
+import com.construction.cddconstruction.repository.FileRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the catalog in sync with changes made directly on the upload volume (e.g. through
+ * a network share) while the application runs. Events are coalesced per path and applied
+ * in batches once a path has been quiet for the debounce interval, so a folder copied in
+ * over the share costs a handful of queries instead of one per event. If the OS drops
+ * events (OVERFLOW) a full reconciliation is started instead.
+ */
+@Service
+public class FileSystemWatcherService {
+
+    @Value("${file.upload-dir:./uploads}")
+    private String baseUploadDir;
+
+    @Value("${file.watcher.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.watcher.debounce-ms:2000}")
+    private long debounceMs;
+
+    @Value("${file.watcher.batch-size:500}")
+    private int batchSize;
+
+    @Autowired
+    private DirectoryRepository directoryRepository;
+
+    @Autowired
+    private DirectoryCacheService directoryCacheService;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private DirectoryService directoryService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private DirectoryUsageService directoryUsageService;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @Autowired
+    private ChangeEventService changeEventService;
+
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    // Path -> time of its latest event; a path is applied once it has been quiet for debounceMs
+    private final Map<Path, Long> pendingChanges = new ConcurrentHashMap<>();
+    private final AtomicLong eventsReceived = new AtomicLong();
+    private final AtomicLong changesApplied = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+
+    private volatile WatchService watchService;
+    private Thread watcherThread;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Path root = Paths.get(baseUploadDir);
+            Files.createDirectories(root);
+            watchService = root.getFileSystem().newWatchService();
+            registerTree(root, false);
+
+            watcherThread = new Thread(this::watchLoop, "upload-watcher");
+            watcherThread.setDaemon(true);
+            watcherThread.start();
+            System.out.println("👀 Watching " + watchedDirectories.size() + " directories under " + root);
+
+        } catch (IOException e) {
+            System.err.println("❌ Could not start file system watcher: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        watcherThread.interrupt();
+    }
+
+    /**
+     * Counters for the running watcher
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("running", watchService != null && watcherThread != null && watcherThread.isAlive());
+        status.put("watchedDirectories", watchedDirectories.size());
+        status.put("pendingChanges", pendingChanges.size());
+        status.put("eventsReceived", eventsReceived.get());
+        status.put("changesApplied", changesApplied.get());
+        status.put("overflows", overflows.get());
+        return status;
+    }
+
+    @Scheduled(fixedDelayString = "${file.watcher.debounce-ms:2000}")
+    public void flushPendingChanges() {
+        if (watchService == null || pendingChanges.isEmpty()) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - debounceMs;
+        List<Path> ready = new ArrayList<>();
+        for (Map.Entry<Path, Long> entry : pendingChanges.entrySet()) {
+            // remove(key, value) fails if a newer event arrived meanwhile; the path then waits for the next round
+            if (entry.getValue() <= cutoff && pendingChanges.remove(entry.getKey(), entry.getValue())) {
+                ready.add(entry.getKey());
+                if (ready.size() >= batchSize) {
+                    applyChanges(ready);
+                    ready = new ArrayList<>();
+                }
+            }
+        }
+        if (!ready.isEmpty()) {
+            applyChanges(ready);
+        }
+    }
+
+    // =================== EVENT LOOP ===================
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path directory = watchedDirectories.get(key);
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        handleOverflow();
+                        continue;
+                    }
+                    if (directory == null) {
+                        continue;
+                    }
+
+                    Path child = directory.resolve((Path) event.context());
+                    // Dot-prefixed entries are internal areas (trash, chunk store, ...)
+                    if (child.getFileName().toString().startsWith(".")) {
+                        continue;
+                    }
+                    eventsReceived.incrementAndGet();
+                    pendingChanges.put(child, System.currentTimeMillis());
+
+                    // A new folder may already have content by the time it is registered
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                            && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+                        registerTree(child, true);
+                    }
+                }
+
+                if (!key.reset()) {
+                    watchedDirectories.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        } catch (IOException e) {
+            System.err.println("❌ File system watcher stopped: " + e.getMessage());
+        }
+    }
+
+    private void handleOverflow() throws IOException {
+        overflows.incrementAndGet();
+        pendingChanges.clear();
+        System.out.println("⚠️ Watcher overflow, falling back to a full reconciliation");
+        registerTree(Paths.get(baseUploadDir), false);
+        reconciliationService.startReconciliation();
+    }
+
+    private void registerTree(Path start, boolean markPending) throws IOException {
+        long now = System.currentTimeMillis();
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(start) && dir.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(key, dir);
+                if (markPending) {
+                    pendingChanges.put(dir, now);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (markPending && !file.getFileName().toString().startsWith(".")) {
+                    pendingChanges.put(file, now);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // =================== CATALOG SYNC ===================
+
+    private void applyChanges(List<Path> paths) {
+        Path root = Paths.get(baseUploadDir);
+        // Parents before children, so new folders are registered before their contents
+        paths.sort(Comparator.comparingInt(Path::getNameCount));
+
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            try {
+                if (Files.isDirectory(path)) {
+                    syncDirectory(root, path);
+                } else if (Files.isRegularFile(path)) {
+                    // Loose files in the upload root do not belong to any directory
+                    if (!root.equals(path.getParent())) {
+                        files.add(path);
+                    }
+                } else {
+                    syncRemoved(path);
+                }
+            } catch (Exception e) {
+                System.err.println("❌ Watcher could not sync " + path + ": " + e.getMessage());
+            }
+        }
+
+        if (!files.isEmpty()) {
+            try {
+                syncFiles(root, files);
+            } catch (Exception e) {
+                System.err.println("❌ Watcher could not sync " + files.size() + " files: " + e.getMessage());
+            }
+        }
+        changesApplied.addAndGet(paths.size());
+    }
+
+    private Long syncDirectory(Path root, Path path) {
+        Optional<Directory> existing = directoryRepository.findByFullPath(path.toString());
+        if (existing.isPresent()) {
+            return existing.get().isDeleted() ? null : existing.get().getId();
+        }
+        if (path.getParent() == null) {
+            return null;
+        }
+
+        Long parentId = null;
+        if (!root.equals(path.getParent())) {
+            parentId = syncDirectory(root, path.getParent());
+            if (parentId == null) {
+                return null;
+            }
+        }
+
+        Directory directory = directoryRepository.save(new Directory(
+                path.getFileName().toString(),
+                path.toString(),
+                parentId,
+                parentId == null ? "root" : "custom"
+        ));
+        directoryCacheService.invalidateName(parentId, directory.getName());
+        changeEventService.publishDirectory("created", directory, directory.getFullPath(), null);
+        System.out.println("📁 Watcher registered directory: " + path);
+        return directory.getId();
+    }
+
+    /**
+     * Register new files and pick up size changes of existing ones with one lookup and
+     * one batched save, then apply the usage deltas once per directory
+     */
+    private void syncFiles(Path root, List<Path> paths) throws IOException {
+        Map<String, File> known = fileRepository.findByFilePathIn(paths.stream().map(Path::toString).toList())
+                .stream()
+                .collect(Collectors.toMap(File::getFilePath, Function.identity()));
+
+        List<File> changed = new ArrayList<>();
+        Map<Long, long[]> usageDeltas = new HashMap<>();
+        for (Path path : paths) {
+            long size = Files.size(path);
+            File existing = known.get(path.toString());
+
+            if (existing == null) {
+                Long directoryId = syncDirectory(root, path.getParent());
+                if (directoryId == null) {
+                    continue;
+                }
+                String contentType = Files.probeContentType(path);
+                File file = new File(path.getFileName().toString(), path.toString(), size, contentType, directoryId);
+                file.setStoredSize(size);
+                changed.add(file);
+                addDelta(usageDeltas, directoryId, 1, size);
+
+            } else if (!existing.isDeleted() && existing.getStorageEncoding() == null
+                    && (existing.getFileSize() != size || existing.isBlobMissing())) {
+                // Compressed blobs are only ever written by the application, so only plain files are resized
+                addDelta(usageDeltas, existing.getDirectoryId(), 0, size - existing.getFileSize());
+                existing.setFileSize(size);
+                existing.setStoredSize(size);
+                existing.setBlobMissing(false);
+                // Rewritten outside the application: the scrubber takes the new content as reference
+                existing.setContentHash(null);
+                existing.setChecksumVerifiedAt(null);
+                existing.setUpdatedAt(LocalDateTime.now());
+                changed.add(existing);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            fileRepository.saveAll(changed);
+            for (File file : changed) {
+                changeEventService.publishFile(known.containsKey(file.getFilePath()) ? "updated" : "created", file);
+            }
+            usageDeltas.forEach((directoryId, delta) ->
+                    directoryUsageService.applyFileDelta(directoryId, delta[0], delta[1]));
+            System.out.println("🔄 Watcher synced " + changed.size() + " files");
+        }
+    }
+
+    private void syncRemoved(Path path) {
+        // Packed, cold and blob store content is not kept at the path, so its absence means nothing
+        Optional<File> file = fileRepository.findByFilePath(path.toString())
+                .filter(f -> !f.isDeleted() && f.getSegmentId() == null && f.getStorageKey() == null);
+        if (file.isPresent()) {
+            fileStorageService.deleteFile(file.get().getId());
+            return;
+        }
+
+        // The folder is already gone, so trashing it only tombstones and re-paths the rows
+        directoryRepository.findByFullPath(path.toString())
+                .filter(directory -> !directory.isDeleted())
+                .ifPresent(directory -> directoryService.deleteDirectory(directory.getId()));
+    }
+
+    private void addDelta(Map<Long, long[]> usageDeltas, Long directoryId, long files, long bytes) {
+        long[] delta = usageDeltas.computeIfAbsent(directoryId, k -> new long[2]);
+        delta[0] += files;
+        delta[1] += bytes;
+    }
+}
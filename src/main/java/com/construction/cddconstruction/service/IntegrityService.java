@@ -0,0 +1,327 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.config.RequestActivityFilter;
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.repository.FileRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks stored blobs against the SHA-256 recorded at upload. A low-priority scrubber
+ * re-reads blobs at a capped I/O rate while the application is quiet, and downloads can
+ * optionally be verified on the fly. Mismatches are flagged on the file row and, with
+ * the "quarantine" policy, the blob is moved out of the tree.
+ */
+@Service
+public class IntegrityService {
+
+    private static final String QUARANTINE_DIR_NAME = ".quarantine";
+
+    @Value("${file.upload-dir:./uploads}")
+    private String baseUploadDir;
+
+    @Value("${file.integrity.verify-on-download:false}")
+    private boolean verifyOnDownload;
+
+    @Value("${file.integrity.scrub.enabled:true}")
+    private boolean scrubEnabled;
+
+    // Bytes per second the scrubber may read
+    @Value("${file.integrity.scrub.rate-bytes-per-second:8388608}")
+    private long scrubRateBytesPerSecond;
+
+    @Value("${file.integrity.scrub.batch-size:100}")
+    private int scrubBatchSize;
+
+    @Value("${file.integrity.scrub.reverify-after-days:30}")
+    private int reverifyAfterDays;
+
+    @Value("${file.integrity.scrub.quiet-period-ms:30000}")
+    private long quietPeriodMs;
+
+    // "report" only flags mismatches, "quarantine" also moves the blob aside
+    @Value("${file.integrity.mismatch-policy:report}")
+    private String mismatchPolicy;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private MappedFileService mappedFileService;
+
+    @Autowired
+    private RequestActivityFilter requestActivityFilter;
+
+    private final ExecutorService scrubber = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "integrity-scrubber");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final AtomicBoolean scrubbing = new AtomicBoolean();
+    private final AtomicLong filesVerified = new AtomicLong();
+    private final AtomicLong bytesVerified = new AtomicLong();
+    private final AtomicLong hashesBackfilled = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+    private volatile LocalDateTime lastScrubAt;
+
+    @PreDestroy
+    public void shutdown() {
+        scrubber.shutdownNow();
+    }
+
+    public boolean isVerifyOnDownload() {
+        return verifyOnDownload;
+    }
+
+    /**
+     * Wrap a decoded content stream so it fails at the end if the content does not match
+     * the recorded hash. Returns the stream unchanged if verification is off or no hash is known.
+     */
+    public InputStream verifyingStream(File file, InputStream decoded) {
+        if (!verifyOnDownload || file.getContentHash() == null) {
+            return decoded;
+        }
+        return new VerifyingInputStream(decoded, file);
+    }
+
+    /**
+     * Re-read one file now (unthrottled) and record the result. Returns true if it matches.
+     */
+    public boolean verifyFile(Long fileId) {
+        File file = fileRepository.findByIdAndDeletedFalse(fileId)
+                .orElseThrow(() -> new RuntimeException("File not found"));
+        return verify(file, Long.MAX_VALUE);
+    }
+
+    /**
+     * Scrubber progress and the files currently flagged as corrupt
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("verifyOnDownload", verifyOnDownload);
+        status.put("scrubEnabled", scrubEnabled);
+        status.put("scrubbing", scrubbing.get());
+        status.put("lastScrubAt", lastScrubAt);
+        status.put("filesVerified", filesVerified.get());
+        status.put("bytesVerified", bytesVerified.get());
+        status.put("hashesBackfilled", hashesBackfilled.get());
+        status.put("mismatches", mismatches.get());
+        status.put("mismatchPolicy", mismatchPolicy);
+        status.put("corruptFiles", fileRepository.findByChecksumMismatchTrueAndDeletedFalse().stream()
+                .map(file -> Map.of("id", file.getId(), "name", file.getOriginalName(), "path", file.getFilePath()))
+                .toList());
+        return status;
+    }
+
+    /**
+     * Hand the next batch to the scrubber thread; the scheduler thread itself never reads blobs
+     */
+    @Scheduled(fixedDelayString = "${file.integrity.scrub.interval-ms:60000}",
+            initialDelayString = "${file.integrity.scrub.interval-ms:60000}")
+    public void scheduleScrub() {
+        if (!scrubEnabled || !requestActivityFilter.isQuiet(quietPeriodMs) || !scrubbing.compareAndSet(false, true)) {
+            return;
+        }
+        scrubber.submit(() -> {
+            try {
+                scrubBatch();
+            } catch (Exception e) {
+                System.err.println("❌ Error scrubbing files: " + e.getMessage());
+            } finally {
+                scrubbing.set(false);
+            }
+        });
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private void scrubBatch() {
+        List<File> candidates = fileRepository.findScrubCandidates(
+                LocalDateTime.now().minusDays(reverifyAfterDays), PageRequest.of(0, scrubBatchSize));
+
+        for (File file : candidates) {
+            // Stop as soon as users are back; the rest waits for the next quiet period
+            if (!requestActivityFilter.isQuiet(quietPeriodMs)) {
+                break;
+            }
+            verify(file, scrubRateBytesPerSecond);
+        }
+        lastScrubAt = LocalDateTime.now();
+    }
+
+    private boolean verify(File file, long bytesPerSecond) {
+        String actualHash;
+        try (InputStream in = fileStorageService.openFileContent(file)) {
+            actualHash = digest(in, bytesPerSecond);
+        } catch (NoSuchFileException e) {
+            // Replaced by a new revision or removed meanwhile; reconciliation deals with lost blobs
+            return false;
+        } catch (IOException e) {
+            // Unreadable (e.g. a truncated gzip stream) counts as corrupt
+            actualHash = null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        filesVerified.incrementAndGet();
+        if (file.getContentHash() == null && actualHash != null) {
+            // Registered by reconciliation or the watcher: the first read becomes the reference
+            fileRepository.markVerified(file.getId(), file.getFilePath(), actualHash, LocalDateTime.now());
+            hashesBackfilled.incrementAndGet();
+            return true;
+        }
+        if (actualHash != null && actualHash.equals(file.getContentHash())) {
+            fileRepository.markVerified(file.getId(), file.getFilePath(), null, LocalDateTime.now());
+            return true;
+        }
+
+        recordMismatch(file);
+        return false;
+    }
+
+    private void recordMismatch(File file) {
+        // Packed blobs share their segment file and blob store content is outside the tree, so both are only flagged
+        boolean quarantine = "quarantine".equalsIgnoreCase(mismatchPolicy)
+                && file.getSegmentId() == null && file.getStorageKey() == null;
+        if (fileRepository.markChecksumMismatch(file.getId(), file.getFilePath(), quarantine) == 0) {
+            return;
+        }
+        mismatches.incrementAndGet();
+        System.err.println("❌ Checksum mismatch: " + file.getOriginalName() + " (" + file.getFilePath() + ")");
+
+        // A mapping would keep serving the old inode after the move, and ranges from it are never verified
+        mappedFileService.release(file.getFilePath());
+        if (quarantine) {
+            try {
+                Path root = Paths.get(baseUploadDir);
+                Path source = Paths.get(file.getFilePath());
+                Path target = root.resolve(QUARANTINE_DIR_NAME).resolve(root.relativize(source));
+                Files.createDirectories(target.getParent());
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                System.err.println("❌ Could not quarantine " + file.getFilePath() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private String digest(InputStream in, long bytesPerSecond) throws IOException, InterruptedException {
+        MessageDigest digest = newSha256();
+        byte[] buffer = new byte[64 * 1024];
+        long start = System.nanoTime();
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            total += read;
+
+            // Sleep off any lead over the allowed rate
+            if (bytesPerSecond != Long.MAX_VALUE) {
+                long aheadMs = total * 1000 / bytesPerSecond - (System.nanoTime() - start) / 1_000_000;
+                if (aheadMs > 0) {
+                    Thread.sleep(aheadMs);
+                }
+            }
+        }
+        bytesVerified.addAndGet(total);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Hashes what passes through and fails at end of stream on a mismatch, so a corrupt
+     * download ends as a broken transfer instead of a silently damaged file
+     */
+    private class VerifyingInputStream extends FilterInputStream {
+
+        private final File file;
+        private final MessageDigest digest = newSha256();
+        private boolean checked;
+
+        VerifyingInputStream(InputStream in, File file) {
+            super(in);
+            this.file = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                check();
+            } else {
+                digest.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                check();
+            } else {
+                digest.update(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes still have to be hashed
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read == -1) {
+                    break;
+                }
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        private void check() throws IOException {
+            if (checked) {
+                return;
+            }
+            checked = true;
+            if (!HexFormat.of().formatHex(digest.digest()).equals(file.getContentHash())) {
+                recordMismatch(file);
+                throw new IOException("Checksum mismatch for file " + file.getId());
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.entity.File;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Serves large, often re-read drawings (PDFs, TIFFs) from read-only memory mappings
+ * instead of opening and reading the file through the heap on every request. Mappings
+ * are pooled by file, reference counted per download, and bounded in total size; when
+ * the pool is full the least recently used unreferenced mappings are unmapped, and if
+ * that isn't enough the request is streamed as usual.
+ *
+ * Only hot, uncompressed, unpacked local blobs qualify. Before such a blob is deleted
+ * (purge, replaced revision, demotion to the cold tier) its mapping is retired: it is
+ * unmapped right away, or by the last download still reading from it.
+ */
+@Service
+public class MappedFileService {
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Mappings are then only released once the buffers are garbage collected
+            System.err.println("⚠️ Explicit unmapping unavailable: " + e.getMessage());
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    @Value("${file.mmap.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.mmap.min-bytes:4194304}")
+    private long minBytes;
+
+    @Value("${file.mmap.max-mapped-bytes:1073741824}")
+    private long maxMappedBytes;
+
+    @Value("${file.mmap.extensions:pdf,tif,tiff}")
+    private List<String> extensions;
+
+    // Access-ordered, so iteration starts at the least recently used mapping
+    private final Map<String, Mapping> mappings = new LinkedHashMap<>(16, 0.75f, true);  // guarded by this
+    private long mappedBytes;                                                            // guarded by this
+    private long hits;
+    private long maps;
+    private long evictions;
+    private long rejected;
+    private long retired;
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        for (Mapping mapping : new ArrayList<>(mappings.values())) {
+            retire(mapping);
+        }
+    }
+
+    /**
+     * A lease on a mapping of the file's content, or null if the file isn't served mapped.
+     * The caller must close the lease, or the stream it hands the lease to.
+     */
+    public Lease acquire(File file) {
+        if (!isEligible(file)) {
+            return null;
+        }
+        String key = file.getId() + ":" + file.getFilePath();
+        synchronized (this) {
+            Mapping mapping = mappings.get(key);
+            if (mapping != null) {
+                hits++;
+                mapping.refs++;
+                return new Lease(mapping);
+            }
+        }
+
+        long size = file.getStoredSize();
+        if (!reserve(size)) {
+            return null;
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(Paths.get(file.getFilePath()), StandardOpenOption.READ)) {
+            if (channel.size() != size) {
+                // Being replaced or not what the row says; the regular path sorts it out
+                unreserve(size);
+                return null;
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException | RuntimeException e) {
+            unreserve(size);
+            return null;
+        }
+
+        synchronized (this) {
+            Mapping existing = mappings.get(key);
+            if (existing != null) {
+                // Mapped by a concurrent request meanwhile; use that one
+                unreserve(size);
+                unmap(buffer);
+                existing.refs++;
+                return new Lease(existing);
+            }
+            Mapping mapping = new Mapping(key, normalize(Paths.get(file.getFilePath())), buffer, size);
+            mapping.refs = 1;
+            mappings.put(key, mapping);
+            maps++;
+            return new Lease(mapping);
+        }
+    }
+
+    /**
+     * Retire the mappings of a blob about to be deleted
+     */
+    public synchronized void release(String filePath) {
+        Path path = normalize(Paths.get(filePath));
+        for (Mapping mapping : new ArrayList<>(mappings.values())) {
+            if (mapping.path.equals(path)) {
+                retire(mapping);
+            }
+        }
+    }
+
+    /**
+     * Retire the mappings of every blob below a directory about to be deleted
+     */
+    public synchronized void releaseUnder(Path directory) {
+        Path root = normalize(directory);
+        for (Mapping mapping : new ArrayList<>(mappings.values())) {
+            if (mapping.path.startsWith(root)) {
+                retire(mapping);
+            }
+        }
+    }
+
+    /**
+     * Pool size and how often downloads were served from it
+     */
+    public synchronized Map<String, Object> getStatus() {
+        long inUse = mappings.values().stream().filter(mapping -> mapping.refs > 0).count();
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("mappings", mappings.size());
+        status.put("mappingsInUse", inUse);
+        status.put("mappedBytes", mappedBytes);
+        status.put("maxMappedBytes", maxMappedBytes);
+        status.put("hits", hits);
+        status.put("maps", maps);
+        status.put("evictions", evictions);
+        status.put("rejected", rejected);
+        status.put("retired", retired);
+        return status;
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private boolean isEligible(File file) {
+        if (!enabled || file.getStoredSize() == null || file.getStoredSize() < minBytes
+                || file.getStoredSize() > Integer.MAX_VALUE) {
+            return false;
+        }
+        // Only whole, uncompressed files of their own in the hot tree, and none known to be damaged
+        if (file.isChecksumMismatch() || file.isBlobMissing()
+                || file.getSegmentId() != null || file.getStorageKey() != null || file.getStorageEncoding() != null
+                || TieringService.COLD.equals(file.getStorageTier())) {
+            return false;
+        }
+        String name = file.getFilePath().toLowerCase();
+        return extensions.stream().anyMatch(extension -> name.endsWith("." + extension.trim().toLowerCase()));
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Make room for a new mapping by unmapping unused ones, least recently used first
+     */
+    private synchronized boolean reserve(long size) {
+        Iterator<Mapping> lru = mappings.values().iterator();
+        while (mappedBytes + size > maxMappedBytes && lru.hasNext()) {
+            Mapping mapping = lru.next();
+            if (mapping.refs == 0) {
+                lru.remove();
+                unmap(mapping);
+                evictions++;
+            }
+        }
+        if (mappedBytes + size > maxMappedBytes) {
+            rejected++;
+            return false;
+        }
+        mappedBytes += size;
+        return true;
+    }
+
+    private synchronized void unreserve(long size) {
+        mappedBytes -= size;
+    }
+
+    private void retire(Mapping mapping) {
+        mappings.remove(mapping.key);
+        mapping.retired = true;
+        retired++;
+        if (mapping.refs == 0) {
+            unmap(mapping);
+        }
+    }
+
+    private synchronized void release(Mapping mapping) {
+        if (--mapping.refs == 0 && mapping.retired) {
+            unmap(mapping);
+        }
+    }
+
+    private void unmap(Mapping mapping) {
+        mappedBytes -= mapping.size;
+        unmap(mapping.buffer);
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("❌ Error unmapping file: " + e.getMessage());
+        }
+    }
+
+    private static class Mapping {
+
+        private final String key;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final long size;
+        private int refs;          // guarded by the service
+        private boolean retired;   // guarded by the service
+
+        Mapping(String key, Path path, MappedByteBuffer buffer, long size) {
+            this.key = key;
+            this.path = path;
+            this.buffer = buffer;
+            this.size = size;
+        }
+    }
+
+    /**
+     * One download's hold on a mapping; the mapping stays valid until the lease is closed
+     */
+    public class Lease implements AutoCloseable {
+
+        private final Mapping mapping;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Lease(Mapping mapping) {
+            this.mapping = mapping;
+        }
+
+        public long size() {
+            return mapping.size;
+        }
+
+        /**
+         * Stream a range of the mapped content; closing the stream closes the lease
+         */
+        public InputStream openStream(long offset, long length) {
+            ByteBuffer slice = mapping.buffer.duplicate();
+            slice.position((int) offset).limit((int) (offset + length));
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    checkOpen();
+                    return slice.hasRemaining() ? slice.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    checkOpen();
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (!slice.hasRemaining()) {
+                        return -1;
+                    }
+                    int count = Math.min(len, slice.remaining());
+                    slice.get(b, off, count);
+                    return count;
+                }
+
+                @Override
+                public long skip(long n) {
+                    int count = (int) Math.max(0, Math.min(n, slice.remaining()));
+                    slice.position(slice.position() + count);
+                    return count;
+                }
+
+                @Override
+                public int available() {
+                    return closed.get() ? 0 : slice.remaining();
+                }
+
+                @Override
+                public void close() {
+                    Lease.this.close();
+                }
+            };
+        }
+
+        private void checkOpen() throws IOException {
+            // Reading an unmapped buffer would crash the JVM
+            if (closed.get()) {
+                throw new IOException("Stream closed");
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(mapping);
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.construction.cddconstruction.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.plugins.tiff.BaselineTIFFTagSet;
+import javax.imageio.plugins.tiff.TIFFDirectory;
+import javax.imageio.plugins.tiff.TIFFField;
+import javax.imageio.stream.FileCacheImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the capture date and pixel dimensions of photos with the JDK's ImageIO, from
+ * headers and metadata only (the image itself is never decoded). The capture date comes
+ * from EXIF DateTimeOriginal, falling back to DateTimeDigitized and the IFD0 DateTime;
+ * it is camera local time, as EXIF has no time zone.
+ */
+@Service
+public class PhotoMetadataService {
+
+    public record PhotoMetadata(LocalDateTime capturedAt, Integer width, Integer height) {
+        public static final PhotoMetadata NONE = new PhotoMetadata(null, null, null);
+    }
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private static final int APP1 = 0xE1;
+    private static final byte[] EXIF_HEADER = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_DATE_TIME_DIGITIZED = 0x9004;
+    private static final int TYPE_ASCII = 2;
+
+    private static final DateTimeFormatter EXIF_DATE = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    @Value("${file.photos.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.photos.extensions:jpg,jpeg,tif,tiff,png}")
+    private List<String> extensions;
+
+    /**
+     * Whether an upload looks like a photo worth reading metadata from
+     */
+    public boolean isPhoto(String filename, String contentType) {
+        if (!enabled) {
+            return false;
+        }
+        if (contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("image/")) {
+            return true;
+        }
+        if (filename == null || !filename.contains(".")) {
+            return false;
+        }
+        String extension = filename.substring(filename.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        return extensions.stream().anyMatch(candidate -> candidate.trim().equalsIgnoreCase(extension));
+    }
+
+    /**
+     * Capture date and dimensions of the image in a file; missing values are null. The file
+     * is read in place, so seeking to metadata behind the image data buffers nothing.
+     * Never fails: unreadable or unknown content just has no metadata.
+     */
+    public PhotoMetadata extract(Path file) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            return input == null ? PhotoMetadata.NONE : extract(input);
+        } catch (IOException | RuntimeException e) {
+            return PhotoMetadata.NONE;
+        }
+    }
+
+    /**
+     * Same for a stream. What has been read is cached in a temporary file rather than on
+     * the heap, as TIFF metadata may only be reachable after the whole image.
+     */
+    public PhotoMetadata extract(InputStream content) {
+        try (ImageInputStream input = new FileCacheImageInputStream(content, null)) {
+            return extract(input);
+        } catch (IOException | RuntimeException e) {
+            return PhotoMetadata.NONE;
+        }
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private PhotoMetadata extract(ImageInputStream input) {
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return PhotoMetadata.NONE;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, false);
+                Integer width = reader.getWidth(0);
+                Integer height = reader.getHeight(0);
+                LocalDateTime capturedAt = null;
+                try {
+                    capturedAt = captureDate(reader.getImageMetadata(0));
+                } catch (IOException | RuntimeException e) {
+                    // Dimensions are still worth keeping when the metadata is broken
+                }
+                return new PhotoMetadata(capturedAt, width, height);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return PhotoMetadata.NONE;
+        }
+    }
+
+    private LocalDateTime captureDate(IIOMetadata metadata) {
+        if (metadata == null) {
+            return null;
+        }
+        for (String format : metadata.getMetadataFormatNames()) {
+            if (JPEG_METADATA_FORMAT.equals(format)) {
+                return jpegCaptureDate(metadata.getAsTree(format));
+            }
+        }
+        try {
+            return tiffCaptureDate(TIFFDirectory.createFromMetadata(metadata));
+        } catch (IllegalArgumentException | IIOInvalidTreeException e) {
+            // Neither JPEG nor TIFF (e.g. PNG): no EXIF to read
+            return null;
+        }
+    }
+
+    /**
+     * EXIF lives in an APP1 marker, which ImageIO's JPEG metadata keeps as an opaque node
+     */
+    private LocalDateTime jpegCaptureDate(Node root) {
+        for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (!"markerSequence".equals(node.getNodeName())) {
+                continue;
+            }
+            for (Node marker = node.getFirstChild(); marker != null; marker = marker.getNextSibling()) {
+                if (!"unknown".equals(marker.getNodeName()) || !(marker instanceof IIOMetadataNode unknown)) {
+                    continue;
+                }
+                Node tag = marker.getAttributes().getNamedItem("MarkerTag");
+                if (tag != null && Integer.parseInt(tag.getNodeValue()) == APP1
+                        && unknown.getUserObject() instanceof byte[] payload && startsWith(payload, EXIF_HEADER)) {
+                    return exifCaptureDate(ByteBuffer.wrap(payload, EXIF_HEADER.length,
+                            payload.length - EXIF_HEADER.length).slice());
+                }
+            }
+        }
+        return null;
+    }
+
+    private LocalDateTime tiffCaptureDate(TIFFDirectory directory) {
+        TIFFField dateTime = directory.getTIFFField(BaselineTIFFTagSet.TAG_DATE_TIME);
+        return dateTime == null ? null : parseDate(dateTime.getAsString(0));
+    }
+
+    /**
+     * Walk the TIFF structure inside the EXIF payload: IFD0 for DateTime and the pointer
+     * to the EXIF IFD, which holds DateTimeOriginal and DateTimeDigitized
+     */
+    private LocalDateTime exifCaptureDate(ByteBuffer tiff) {
+        if (tiff.remaining() < 8) {
+            return null;
+        }
+        tiff.order(tiff.get(0) == 'M' ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        int ifd0 = tiff.getInt(4);
+
+        LocalDateTime dateTime = parseDate(asciiTag(tiff, ifd0, TAG_DATE_TIME));
+        Long exifIfd = longTag(tiff, ifd0, TAG_EXIF_IFD);
+        if (exifIfd != null) {
+            LocalDateTime original = parseDate(asciiTag(tiff, exifIfd.intValue(), TAG_DATE_TIME_ORIGINAL));
+            if (original != null) {
+                return original;
+            }
+            LocalDateTime digitized = parseDate(asciiTag(tiff, exifIfd.intValue(), TAG_DATE_TIME_DIGITIZED));
+            if (digitized != null) {
+                return digitized;
+            }
+        }
+        return dateTime;
+    }
+
+    // Offset of an IFD entry with this tag, or -1
+    private int findEntry(ByteBuffer tiff, int ifd, int tag) {
+        if (ifd < 8 || ifd + 2 > tiff.limit()) {
+            return -1;
+        }
+        int count = Short.toUnsignedInt(tiff.getShort(ifd));
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > tiff.limit()) {
+                return -1;
+            }
+            if (Short.toUnsignedInt(tiff.getShort(entry)) == tag) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private Long longTag(ByteBuffer tiff, int ifd, int tag) {
+        int entry = findEntry(tiff, ifd, tag);
+        return entry < 0 ? null : Integer.toUnsignedLong(tiff.getInt(entry + 8));
+    }
+
+    private String asciiTag(ByteBuffer tiff, int ifd, int tag) {
+        int entry = findEntry(tiff, ifd, tag);
+        if (entry < 0 || Short.toUnsignedInt(tiff.getShort(entry + 2)) != TYPE_ASCII) {
+            return null;
+        }
+        int length = tiff.getInt(entry + 4);
+        // Up to four bytes are stored in the entry itself, longer values at an offset
+        int offset = length <= 4 ? entry + 8 : tiff.getInt(entry + 8);
+        if (length <= 0 || offset < 0 || offset + length > tiff.limit()) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        tiff.get(offset, value);
+        return new String(value, StandardCharsets.US_ASCII);
+    }
+
+    private LocalDateTime parseDate(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.replace("\0", "").trim();
+        // Cameras without a clock write zeros or blanks
+        if (trimmed.length() < 19 || trimmed.startsWith("0000")) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(trimmed.substring(0, 19), EXIF_DATE);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        if (data.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,132 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.repository.FileRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * "Photos taken on site X between two dates": day buckets and pages of photos by capture
+ * date, below a directory. Both are range scans on the captured_at index; nothing is read
+ * from the photos themselves at query time.
+ */
+@Service
+public class PhotoTimelineService {
+
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1900, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 1, 1, 0, 0);
+
+    @Value("${file.photos.max-page-size:500}")
+    private int maxPageSize;
+
+    @Value("${file.photos.backfill-batch-size:100}")
+    private int backfillBatchSize;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private DirectoryCacheService directoryCacheService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private PhotoMetadataService photoMetadataService;
+
+    /**
+     * Photo count per capture day, from and to inclusive; either may be null for open ends
+     */
+    public Map<String, Object> getTimeline(Long directoryId, LocalDate from, LocalDate to) {
+        List<Map<String, Object>> days = new ArrayList<>();
+        long total = 0;
+        for (Object[] row : fileRepository.countCapturedByDay(pathPattern(directoryId), start(from), end(to))) {
+            long count = ((Number) row[1]).longValue();
+            Map<String, Object> day = new LinkedHashMap<>();
+            day.put("day", LocalDate.parse(row[0].toString()));
+            day.put("count", count);
+            days.add(day);
+            total += count;
+        }
+
+        Map<String, Object> timeline = new LinkedHashMap<>();
+        timeline.put("directoryId", directoryId);
+        timeline.put("from", from);
+        timeline.put("to", to);
+        timeline.put("total", total);
+        timeline.put("days", days);
+        return timeline;
+    }
+
+    /**
+     * One page of photos in capture order, from and to inclusive
+     */
+    public List<File> getPhotos(Long directoryId, LocalDate from, LocalDate to, int page, int size) {
+        PageRequest pageRequest = PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, maxPageSize)));
+        return fileRepository.findCapturedBetween(pathPattern(directoryId), start(from), end(to), pageRequest);
+    }
+
+    /**
+     * Read the metadata of images stored before it was captured on upload, up to a limit.
+     * Returns [images scanned, images updated].
+     */
+    public int[] backfill(int limit) {
+        int scanned = 0;
+        int updated = 0;
+        Long afterId = 0L;
+        while (scanned < limit) {
+            List<File> batch = fileRepository.findImagesWithoutMetadata(afterId,
+                    PageRequest.of(0, Math.min(backfillBatchSize, limit - scanned)));
+            if (batch.isEmpty()) {
+                break;
+            }
+            for (File file : batch) {
+                afterId = file.getId();
+                scanned++;
+                PhotoMetadataService.PhotoMetadata photo;
+                try (InputStream in = fileStorageService.openFileContent(file)) {
+                    photo = photoMetadataService.extract(in);
+                } catch (Exception e) {
+                    System.err.println("❌ Error reading photo metadata of " + file.getFilePath() + ": " + e.getMessage());
+                    continue;
+                }
+                if (photo.width() != null) {
+                    updated += fileRepository.updatePhotoMetadata(file.getId(), file.getFilePath(),
+                            photo.capturedAt(), photo.width(), photo.height());
+                }
+            }
+        }
+        if (updated > 0) {
+            System.out.println("📷 Photo metadata backfilled for " + updated + " of " + scanned + " images");
+        }
+        return new int[]{scanned, updated};
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private String pathPattern(Long directoryId) {
+        if (directoryId == null) {
+            return "%";
+        }
+        Directory directory = directoryCacheService.findById(directoryId)
+                .orElseThrow(() -> new RuntimeException("Directory not found"));
+        return DirectoryService.subtreePatternOf(Paths.get(directory.getFullPath()));
+    }
+
+    private static LocalDateTime start(LocalDate from) {
+        return from == null ? EARLIEST : from.atStartOfDay();
+    }
+
+    private static LocalDateTime end(LocalDate to) {
+        return to == null ? LATEST : to.plusDays(1).atStartOfDay();
+    }
+}
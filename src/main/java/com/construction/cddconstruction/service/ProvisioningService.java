@@ -0,0 +1,645 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.config.ProjectTemplateProperties;
+import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.repository.DirectoryRepository;
+import com.construction.cddconstruction.repository.FileRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates directory trees in bulk: new projects from folder templates, and copies of
+ * existing subtrees. Rows are inserted level by level with JDBC batches (each level needs
+ * the generated ids of the one above), folders are created on disk in parallel, and all
+ * of it happens in one transaction: if anything fails, no row is kept and the folders
+ * created so far are removed again.
+ *
+ * Copies share the stored content instead of duplicating it. Blobs in the local tree are
+ * hard-linked (a new revision is always written to a new path, never into the shared
+ * inode), packed blobs point at the same segment entry, and blobs in a blob store or the
+ * cold tier share their key, which is only deleted once no row references it any more.
+ */
+@Service
+public class ProvisioningService {
+
+    private static final String INSERT_DIRECTORY = "INSERT INTO directories (name, full_path, parent_id, directory_type, " +
+            "created_at, updated_at, file_count, size_bytes, total_file_count, total_size_bytes, deleted) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, FALSE)";
+
+    private static final String INSERT_FILE = "INSERT INTO files (original_name, file_path, file_size, content_type, " +
+            "directory_id, created_at, updated_at, storage_encoding, stored_size, segment_id, segment_offset, " +
+            "storage_key, storage_tier, content_hash, uploaded_by, captured_at, image_width, image_height, " +
+            "checksum_mismatch, blob_missing, deleted) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, FALSE, FALSE, FALSE)";
+
+    /**
+     * One directory to create; parentPath is null for the top of the tree. A copied
+     * directory starts with the usage of the files copied into it.
+     */
+    private record PlannedDirectory(String name, Path path, Path parentPath, String type, Usage usage) {}
+
+    private record Usage(long fileCount, long sizeBytes, long totalFileCount, long totalSizeBytes) {
+        static final Usage NONE = new Usage(0, 0, 0, 0);
+    }
+
+    @Value("${file.upload-dir:./uploads}")
+    private String baseUploadDir;
+
+    @Autowired
+    private ProjectTemplateProperties templateProperties;
+
+    @Autowired
+    private DirectoryRepository directoryRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private DirectoryCacheService directoryCacheService;
+
+    @Autowired
+    private DirectoryUsageService directoryUsageService;
+
+    @Autowired
+    private ChangeEventService changeEventService;
+
+    @Autowired
+    private QuotaService quotaService;
+
+    @Autowired
+    private CoordinationService coordinationService;
+
+    @Autowired
+    private UploadJournalService uploadJournalService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final AtomicLong filesLinked = new AtomicLong();
+    private final AtomicLong filesCopied = new AtomicLong();
+    private final AtomicLong filesShared = new AtomicLong();
+
+    /**
+     * Configured templates, each as its list of folder paths
+     */
+    public Map<String, List<String>> getTemplates() {
+        return templateProperties.getTemplates();
+    }
+
+    public String getDefaultTemplate() {
+        return templateProperties.getDefaultTemplate();
+    }
+
+    /**
+     * Create one root directory per project name, each with the template's folder tree.
+     * Returns the created root directories in the order of the names.
+     */
+    public List<Directory> provisionProjects(List<String> projectNames, String templateName) {
+        return provisionProjects(projectNames, templateName, false);
+    }
+
+    /**
+     * Same, but with adoptExisting a root folder that is on disk without a catalog row
+     * (the default in-memory catalog starts empty on every boot) is taken over instead of
+     * rejected. Whatever is already inside it is left alone, and kept if provisioning fails.
+     */
+    public List<Directory> provisionProjects(List<String> projectNames, String templateName, boolean adoptExisting) {
+        if (projectNames == null || projectNames.isEmpty()) {
+            throw new RuntimeException("No project names given");
+        }
+        List<Path> folders = expandTemplate(templateName != null ? templateName : templateProperties.getDefaultTemplate());
+
+        List<Path> roots = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String projectName : projectNames) {
+            String cleanName = DirectoryService.cleanDirectoryName(projectName);
+            if (!seen.add(cleanName)) {
+                throw new RuntimeException("Duplicate project name: " + cleanName);
+            }
+            Path rootPath = Paths.get(baseUploadDir, cleanName);
+            if (directoryCacheService.findByName(null, cleanName).isPresent() || (!adoptExisting && Files.exists(rootPath))) {
+                throw new RuntimeException("Directory already exists: " + cleanName);
+            }
+            roots.add(rootPath);
+        }
+
+        // Level 0 holds the project roots, level n the template folders n deep
+        List<List<PlannedDirectory>> levels = new ArrayList<>();
+        levels.add(new ArrayList<>());
+        for (Path root : roots) {
+            levels.get(0).add(new PlannedDirectory(root.getFileName().toString(), root, null, "root", Usage.NONE));
+            for (Path folder : folders) {
+                Path path = root.resolve(folder);
+                level(levels, folder.getNameCount())
+                        .add(new PlannedDirectory(folder.getFileName().toString(), path, path.getParent(), "default", Usage.NONE));
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        List<Directory> created;
+        boolean[] foldersCreated = {false};
+        Set<Path> adopted = new HashSet<>();
+        try {
+            created = transactionTemplate.execute(status -> {
+                CoordinationService.Fence fence = coordinationService.lockNames(null);
+                // Again under the lock: another instance may have created one of them meanwhile
+                for (Path root : roots) {
+                    checkAvailable(null, root, adoptExisting);
+                    if (adoptExisting && Files.exists(root)) {
+                        adopted.add(root);
+                    }
+                }
+                List<Directory> inserted = insertLevels(null, levels);
+                foldersCreated[0] = true;
+                fenced(fence, () -> createFolders(levels));
+                changeEventService.publishDirectoriesCreated(inserted, templateProperties.getBatchSize());
+                for (Path root : roots) {
+                    directoryCacheService.invalidateName(null, root.getFileName().toString());
+                }
+                return inserted;
+            });
+        } catch (RuntimeException e) {
+            // Only what this call created; the folders may belong to whoever took the name
+            if (foldersCreated[0]) {
+                removeFolders(roots.stream().filter(root -> !adopted.contains(root)).toList());
+            }
+            throw e;
+        }
+
+        System.out.println("📁 Provisioned " + roots.size() + " projects (" + created.size() + " directories) in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return created.subList(0, roots.size());
+    }
+
+    /**
+     * Copy a directory with everything below it under a new parent (null for a new root
+     * directory), optionally under a new name. Only metadata is written; the copied files
+     * share their stored content with the originals.
+     */
+    public Directory copySubtree(Long sourceId, Long targetParentId, String newName) {
+        Directory source = directoryRepository.findByIdAndDeletedFalse(sourceId)
+                .orElseThrow(() -> new RuntimeException("Directory not found"));
+        Directory targetParent = targetParentId == null ? null : directoryCacheService.findById(targetParentId)
+                .orElseThrow(() -> new RuntimeException("Target parent directory not found"));
+
+        if (targetParent != null && DirectoryService.isSameOrDescendant(targetParent.getFullPath(), source.getFullPath())) {
+            throw new RuntimeException("Cannot copy a directory into itself or one of its subdirectories");
+        }
+        String cleanName = DirectoryService.cleanDirectoryName(newName != null && !newName.isBlank() ? newName : source.getName());
+        Path sourcePath = Paths.get(source.getFullPath());
+        Path targetPath = targetParent == null
+                ? Paths.get(baseUploadDir, cleanName)
+                : Paths.get(targetParent.getFullPath()).resolve(cleanName);
+        if (directoryCacheService.findByName(targetParentId, cleanName).isPresent() || Files.exists(targetPath)) {
+            throw new RuntimeException("Directory already exists: " + cleanName);
+        }
+
+        // Files whose blob is known to be gone are left behind
+        String pattern = DirectoryService.subtreePatternOf(sourcePath);
+        List<File> sourceFiles = fileRepository.findLiveByPathPattern(pattern).stream()
+                .filter(file -> !file.isBlobMissing())
+                .toList();
+        Map<Path, long[]> copiedUsage = copiedUsage(sourceFiles, sourcePath, targetPath);
+
+        String type = targetParent == null ? "root"
+                : "root".equals(source.getDirectoryType()) ? "custom" : source.getDirectoryType();
+        List<List<PlannedDirectory>> levels = new ArrayList<>();
+        levels.add(new ArrayList<>(List.of(new PlannedDirectory(cleanName, targetPath, null, type,
+                usageOf(copiedUsage, targetPath)))));
+        for (Directory directory : directoryRepository.findLiveByPathPattern(pattern)) {
+            Path relative = sourcePath.relativize(Paths.get(directory.getFullPath()));
+            Path path = targetPath.resolve(relative);
+            level(levels, relative.getNameCount()).add(new PlannedDirectory(directory.getName(), path, path.getParent(),
+                    directory.getDirectoryType(), usageOf(copiedUsage, path)));
+        }
+        Usage total = levels.get(0).get(0).usage();
+
+        // The copy shares its content, but counts against the quotas like an upload
+        String user = QuotaService.currentUser();
+        long bytes = total.totalSizeBytes();
+        if (targetParentId != null) {
+            quotaService.checkUpload(user, targetParentId, bytes);
+        } else {
+            quotaService.checkUser(user, bytes);
+        }
+
+        long start = System.currentTimeMillis();
+        Directory copy;
+        boolean[] foldersCreated = {false};
+        // Second names for the local blobs, made before taking the locks (copying where linking fails can take long)
+        List<Path> staged = new ArrayList<>(Collections.nCopies(sourceFiles.size(), null));
+        try {
+            stageLocalFiles(sourceFiles, staged);
+
+            copy = transactionTemplate.execute(status -> {
+                CoordinationService.Fence fence = coordinationService.lockTree();
+                coordinationService.lockNames(targetParentId);
+                // What was read above may have been moved, trashed or taken on another instance meanwhile
+                if (!directoryRepository.findLivePathById(sourceId).equals(Optional.of(source.getFullPath()))
+                        || (targetParent != null && !directoryRepository.findLivePathById(targetParentId)
+                        .equals(Optional.of(targetParent.getFullPath())))) {
+                    throw new RuntimeException("Directory was moved or deleted meanwhile, try again");
+                }
+                checkAvailable(targetParentId, targetPath);
+
+                List<Directory> directories = insertLevels(targetParentId, levels);
+                Map<String, Long> directoryIds = new HashMap<>();
+                for (Directory directory : directories) {
+                    directoryIds.put(directory.getFullPath(), directory.getId());
+                }
+
+                List<File> files = insertFiles(sourceFiles, sourcePath, targetPath, directoryIds, user);
+                foldersCreated[0] = true;
+                fenced(fence, () -> {
+                    createFolders(levels);
+                    publishStaged(staged, files);
+                });
+
+                directoryUsageService.applySubtreeDelta(targetParentId, total.totalFileCount(), total.totalSizeBytes());
+                if (targetParentId == null) {
+                    quotaService.addProjectUsage(directories.get(0).getId(), total.totalSizeBytes());
+                }
+                quotaService.addUserUsage(user, bytes);
+                changeEventService.publishDirectoriesCreated(directories, templateProperties.getBatchSize());
+                changeEventService.publishFilesCreated(files, templateProperties.getBatchSize());
+                directoryCacheService.invalidateName(targetParentId, cleanName);
+                return directories.get(0);
+            });
+        } catch (RuntimeException e) {
+            if (foldersCreated[0]) {
+                removeFolders(List.of(targetPath));
+            }
+            throw e;
+        } finally {
+            discardStaged(staged);
+        }
+
+        System.out.println("📁 Copied " + source.getFullPath() + " -> " + targetPath + " (" + sourceFiles.size()
+                + " files) in " + (System.currentTimeMillis() - start) + " ms");
+        return copy;
+    }
+
+    /**
+     * How copied files shared their content so far
+     */
+    public Map<String, Object> getCopyStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("filesLinked", filesLinked.get());
+        status.put("filesCopied", filesCopied.get());
+        status.put("filesShared", filesShared.get());
+        return status;
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private void checkAvailable(Long parentId, Path path) {
+        checkAvailable(parentId, path, false);
+    }
+
+    // An adopted folder only has to be missing from the catalog
+    private void checkAvailable(Long parentId, Path path, boolean adoptExisting) {
+        String name = path.getFileName().toString();
+        if (directoryRepository.findByNameAndParentIdAndDeletedFalse(name, parentId).isPresent()
+                || (!adoptExisting && Files.exists(path))) {
+            throw new RuntimeException("Directory already exists: " + name);
+        }
+    }
+
+    private void fenced(CoordinationService.Fence fence, Runnable change) {
+        try {
+            coordinationService.fenced(fence, change::run);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create folders: " + e.getMessage(), e);
+        }
+    }
+
+    private List<PlannedDirectory> level(List<List<PlannedDirectory>> levels, int depth) {
+        while (levels.size() <= depth) {
+            levels.add(new ArrayList<>());
+        }
+        return levels.get(depth);
+    }
+
+    /**
+     * Template folders as clean relative paths, each implied parent included, parents first
+     */
+    private List<Path> expandTemplate(String templateName) {
+        List<String> template = templateProperties.getTemplates().get(templateName);
+        if (template == null) {
+            throw new RuntimeException("Unknown template: " + templateName);
+        }
+
+        Set<Path> folders = new LinkedHashSet<>();
+        for (String entry : template) {
+            Path folder = null;
+            for (String segment : entry.split("[/\\\\]")) {
+                if (segment.isBlank()) {
+                    continue;
+                }
+                String cleanSegment = DirectoryService.cleanDirectoryName(segment.trim());
+                if (cleanSegment.equals("_.") || cleanSegment.equals("_")) {
+                    throw new RuntimeException("Invalid folder in template " + templateName + ": " + entry);
+                }
+                folder = folder == null ? Paths.get(cleanSegment) : folder.resolve(cleanSegment);
+                folders.add(folder);
+            }
+        }
+
+        List<Path> ordered = new ArrayList<>(folders);
+        ordered.sort(Comparator.comparingInt(Path::getNameCount).thenComparing(Path::toString));
+        return ordered;
+    }
+
+    /**
+     * Insert level by level with batched statements, then read the generated ids back by
+     * path (unique) so the next level can reference its parents
+     */
+    private List<Directory> insertLevels(Long topParentId, List<List<PlannedDirectory>> levels) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Map<String, Long> ids = new HashMap<>();
+        List<Directory> inserted = new ArrayList<>();
+
+        for (List<PlannedDirectory> level : levels) {
+            jdbcTemplate.batchUpdate(INSERT_DIRECTORY, level, templateProperties.getBatchSize(), (statement, planned) -> {
+                Usage usage = planned.usage();
+                statement.setString(1, planned.name());
+                statement.setString(2, planned.path().toString());
+                statement.setObject(3, parentIdOf(planned, topParentId, ids), Types.BIGINT);
+                statement.setString(4, planned.type());
+                statement.setTimestamp(5, now);
+                statement.setTimestamp(6, now);
+                statement.setLong(7, usage.fileCount());
+                statement.setLong(8, usage.sizeBytes());
+                statement.setLong(9, usage.totalFileCount());
+                statement.setLong(10, usage.totalSizeBytes());
+            });
+            ids.putAll(findIdsByPath("directories", "full_path",
+                    level.stream().map(planned -> planned.path().toString()).toList()));
+
+            for (PlannedDirectory planned : level) {
+                Directory directory = new Directory(planned.name(), planned.path().toString(),
+                        parentIdOf(planned, topParentId, ids), planned.type());
+                directory.setId(ids.get(planned.path().toString()));
+                directory.setCreatedAt(now.toLocalDateTime());
+                inserted.add(directory);
+            }
+        }
+        return inserted;
+    }
+
+    private Long parentIdOf(PlannedDirectory planned, Long topParentId, Map<String, Long> ids) {
+        return planned.parentPath() == null ? topParentId : ids.get(planned.parentPath().toString());
+    }
+
+    /**
+     * Insert the copied file rows with batched statements; each points at the same stored
+     * content as its source, under a logical path in the copied tree
+     */
+    private List<File> insertFiles(List<File> sourceFiles, Path sourcePath, Path targetPath,
+                                   Map<String, Long> directoryIds, String uploadedBy) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<File> copies = new ArrayList<>();
+        for (File source : sourceFiles) {
+            Path path = targetPath.resolve(sourcePath.relativize(Paths.get(source.getFilePath())));
+            File copy = new File(source.getOriginalName(), path.toString(), source.getFileSize(),
+                    source.getContentType(), directoryIds.get(path.getParent().toString()));
+            copy.setStorageEncoding(source.getStorageEncoding());
+            copy.setStoredSize(source.getStoredSize());
+            copy.setSegmentId(source.getSegmentId());
+            copy.setSegmentOffset(source.getSegmentOffset());
+            copy.setStorageKey(source.getStorageKey());
+            copy.setStorageTier(source.getStorageTier());
+            copy.setContentHash(source.getContentHash());
+            copy.setUploadedBy(uploadedBy);
+            copy.setCapturedAt(source.getCapturedAt());
+            copy.setImageWidth(source.getImageWidth());
+            copy.setImageHeight(source.getImageHeight());
+            copies.add(copy);
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_FILE, copies, templateProperties.getBatchSize(), (statement, copy) -> {
+            statement.setString(1, copy.getOriginalName());
+            statement.setString(2, copy.getFilePath());
+            statement.setObject(3, copy.getFileSize(), Types.BIGINT);
+            statement.setString(4, copy.getContentType());
+            statement.setObject(5, copy.getDirectoryId(), Types.BIGINT);
+            statement.setTimestamp(6, now);
+            statement.setTimestamp(7, now);
+            statement.setString(8, copy.getStorageEncoding());
+            statement.setObject(9, copy.getStoredSize(), Types.BIGINT);
+            statement.setObject(10, copy.getSegmentId(), Types.BIGINT);
+            statement.setObject(11, copy.getSegmentOffset(), Types.BIGINT);
+            statement.setString(12, copy.getStorageKey());
+            statement.setString(13, copy.getStorageTier());
+            statement.setString(14, copy.getContentHash());
+            statement.setString(15, copy.getUploadedBy());
+            statement.setTimestamp(16, copy.getCapturedAt() == null ? null : Timestamp.valueOf(copy.getCapturedAt()));
+            statement.setObject(17, copy.getImageWidth(), Types.INTEGER);
+            statement.setObject(18, copy.getImageHeight(), Types.INTEGER);
+        });
+
+        Map<String, Long> ids = findIdsByPath("files", "file_path", copies.stream().map(File::getFilePath).toList());
+        for (File copy : copies) {
+            copy.setId(ids.get(copy.getFilePath()));
+        }
+        return copies;
+    }
+
+    private Map<String, Long> findIdsByPath(String table, String pathColumn, List<String> paths) {
+        Map<String, Long> ids = new HashMap<>();
+        for (int from = 0; from < paths.size(); from += templateProperties.getBatchSize()) {
+            List<String> chunk = paths.subList(from, Math.min(paths.size(), from + templateProperties.getBatchSize()));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            jdbcTemplate.query("SELECT id, " + pathColumn + " FROM " + table + " WHERE " + pathColumn + " IN (" + placeholders + ")",
+                    rs -> {
+                        ids.put(rs.getString(pathColumn), rs.getLong("id"));
+                    },
+                    chunk.toArray());
+        }
+        return ids;
+    }
+
+    /**
+     * Create the deepest folders in parallel; createDirectories makes their parents on the way
+     */
+    private void createFolders(List<List<PlannedDirectory>> levels) {
+        Set<Path> parents = new HashSet<>();
+        List<Path> leaves = new ArrayList<>();
+        for (int depth = levels.size() - 1; depth >= 0; depth--) {
+            for (PlannedDirectory planned : levels.get(depth)) {
+                if (!parents.contains(planned.path())) {
+                    leaves.add(planned.path());
+                }
+                if (planned.parentPath() != null) {
+                    parents.add(planned.parentPath());
+                }
+            }
+        }
+
+        inParallel(leaves, Files::createDirectories);
+    }
+
+    /**
+     * Usage of the copied files by target directory: {fileCount, sizeBytes} of the files
+     * directly in it, {totalFileCount, totalSizeBytes} of everything below it
+     */
+    private Map<Path, long[]> copiedUsage(List<File> sourceFiles, Path sourcePath, Path targetPath) {
+        Map<Path, long[]> usage = new HashMap<>();
+        for (File file : sourceFiles) {
+            long size = file.getFileSize() != null ? file.getFileSize() : 0;
+            Path directory = targetPath.resolve(sourcePath.relativize(Paths.get(file.getFilePath()))).getParent();
+            long[] direct = usage.computeIfAbsent(directory, k -> new long[4]);
+            direct[0]++;
+            direct[1] += size;
+            for (Path ancestor = directory; ancestor != null && ancestor.startsWith(targetPath); ancestor = ancestor.getParent()) {
+                long[] below = usage.computeIfAbsent(ancestor, k -> new long[4]);
+                below[2]++;
+                below[3] += size;
+            }
+        }
+        return usage;
+    }
+
+    private Usage usageOf(Map<Path, long[]> usage, Path directory) {
+        long[] counters = usage.get(directory);
+        return counters == null ? Usage.NONE : new Usage(counters[0], counters[1], counters[2], counters[3]);
+    }
+
+    /**
+     * Give each copied blob of the local tree a second name for the same inode, in the
+     * staging area. Where hard links are not possible (another file system, no support)
+     * the blob is copied instead. Packed and keyed blobs need nothing on disk.
+     */
+    private void stageLocalFiles(List<File> sourceFiles, List<Path> staged) {
+        List<Integer> local = new ArrayList<>();
+        for (int i = 0; i < sourceFiles.size(); i++) {
+            if (sourceFiles.get(i).getSegmentId() == null && sourceFiles.get(i).getStorageKey() == null) {
+                staged.set(i, uploadJournalService.getStagingPath().resolve("copy-" + UUID.randomUUID() + ".part"));
+                local.add(i);
+            } else {
+                filesShared.incrementAndGet();
+            }
+        }
+
+        inParallel(local, i -> {
+            Path link = staged.get(i);
+            Path existing = Paths.get(sourceFiles.get(i).getFilePath());
+            try {
+                Files.createLink(link, existing);
+                filesLinked.incrementAndGet();
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                if (Files.exists(link) || !Files.exists(existing)) {
+                    throw e;
+                }
+                Files.copy(existing, link);
+                filesCopied.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Rename the staged blobs to their paths in the copied tree
+     */
+    private void publishStaged(List<Path> staged, List<File> copies) {
+        List<Integer> local = new ArrayList<>();
+        for (int i = 0; i < staged.size(); i++) {
+            if (staged.get(i) != null) {
+                local.add(i);
+            }
+        }
+        inParallel(local, i -> Files.move(staged.get(i), Paths.get(copies.get(i).getFilePath()), StandardCopyOption.ATOMIC_MOVE));
+    }
+
+    private void discardStaged(List<Path> staged) {
+        for (Path path : staged) {
+            if (path == null) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.err.println("❌ Could not remove staged copy " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private interface DiskTask<T> {
+        void run(T item) throws IOException;
+    }
+
+    /**
+     * Run a disk operation per item on a bounded pool, failing on the first error
+     */
+    private <T> void inParallel(List<T> items, DiskTask<T> task) {
+        if (items.isEmpty()) {
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(templateProperties.getParallelism());
+        try {
+            pool.submit(() -> items.parallelStream().forEach(item -> {
+                try {
+                    task.run(item);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e.getMessage(), e);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while writing to disk", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void removeFolders(List<Path> roots) {
+        for (Path root : roots) {
+            if (!Files.exists(root)) {
+                continue;
+            }
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        Files.delete(file);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                        Files.delete(dir);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                System.err.println("❌ Could not remove partially created " + root + ": " + e.getMessage());
+            }
+        }
+    }
+}
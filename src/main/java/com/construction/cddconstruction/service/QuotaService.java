@@ -0,0 +1,410 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.config.QuotaProperties;
+import com.construction.cddconstruction.config.RequestActivityFilter;
+import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.entity.QuotaUsage;
+import com.construction.cddconstruction.repository.DirectoryRepository;
+import com.construction.cddconstruction.repository.FileRepository;
+import com.construction.cddconstruction.repository.QuotaUsageRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-project (root directory) and per-user storage quotas. Usage is kept in striped
+ * in-memory counters, so an upload is checked against its limits without touching the
+ * database. What changed since the last write is added to quota_usage periodically,
+ * and the counters are then reloaded from there, so instances sharing the catalog see
+ * each other's uploads within a persist interval. They are reconciled against the file
+ * and directory rows in quiet periods and after bulk operations (trashing or restoring a
+ * whole directory, deleting everything).
+ *
+ * A check only sees uploads that have completed (on other instances: by their last
+ * persist), so concurrent uploads can overshoot a limit by at most what is in flight at
+ * that moment.
+ */
+@Service
+public class QuotaService {
+
+    public static final String PROJECT = "project";
+    public static final String USER = "user";
+
+    /**
+     * An upload would take a project or user over its limit
+     */
+    public static class QuotaExceededException extends RuntimeException {
+        public QuotaExceededException(String message) {
+            super(message);
+        }
+    }
+
+    @Value("${file.quota.quiet-period-ms:30000}")
+    private long quietPeriodMs;
+
+    @Autowired
+    private QuotaProperties quotaProperties;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private DirectoryRepository directoryRepository;
+
+    @Autowired
+    private QuotaUsageRepository quotaUsageRepository;
+
+    @Autowired
+    private DirectoryCacheService directoryCacheService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RequestActivityFilter requestActivityFilter;
+
+    // Bytes by root directory id and by user name
+    private final Map<Long, LongAdder> projectUsage = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> userUsage = new ConcurrentHashMap<>();
+    // Changes to the above not yet added to quota_usage
+    private final Map<Long, LongAdder> pendingProjectUsage = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> pendingUserUsage = new ConcurrentHashMap<>();
+
+    private final ExecutorService reconciler = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "quota-reconciler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean reconcileQueued = new AtomicBoolean();
+    private final AtomicLong rejectedUploads = new AtomicLong();
+    private volatile LocalDateTime lastReconciledAt;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        refresh();
+        // The stored values may predate the last shutdown; correct them in the background
+        reconcileSoon();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        persist();
+        reconciler.shutdownNow();
+    }
+
+    /**
+     * Name of the authenticated user of the current request, or null
+     */
+    public static String currentUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getName();
+    }
+
+    /**
+     * Reject bytes about to be added to a directory (and so to its project) by a user,
+     * before anything is written
+     */
+    public void checkUpload(String user, Long directoryId, long bytes) {
+        if (!quotaProperties.isEnabled() || bytes <= 0) {
+            return;
+        }
+        Directory root = findRoot(directoryId);
+        if (root != null) {
+            long limit = quotaProperties.projectLimit(root.getName());
+            long used = usage(projectUsage, root.getId());
+            if (limit > 0 && used + bytes > limit) {
+                rejectedUploads.incrementAndGet();
+                throw new QuotaExceededException("Project quota exceeded for " + root.getName()
+                        + ": " + used + " of " + limit + " bytes used, " + bytes + " more requested");
+            }
+        }
+        checkUser(user, bytes);
+    }
+
+    /**
+     * Reject bytes about to be added for a user, regardless of where they go
+     */
+    public void checkUser(String user, long bytes) {
+        if (!quotaProperties.isEnabled() || user == null || bytes <= 0) {
+            return;
+        }
+        long limit = quotaProperties.userLimit(user);
+        long used = usage(userUsage, user);
+        if (limit > 0 && used + bytes > limit) {
+            rejectedUploads.incrementAndGet();
+            throw new QuotaExceededException("User quota exceeded for " + user
+                    + ": " + used + " of " + limit + " bytes used, " + bytes + " more requested");
+        }
+    }
+
+    /**
+     * Account for bytes added to or removed from a project, once the surrounding
+     * transaction (if any) has committed
+     */
+    public void addProjectUsage(Long rootId, long bytes) {
+        if (rootId != null && bytes != 0) {
+            afterCommit(() -> add(projectUsage, pendingProjectUsage, rootId, bytes));
+        }
+    }
+
+    /**
+     * Account for bytes added to or removed from a user's files
+     */
+    public void addUserUsage(String user, long bytes) {
+        if (user != null && bytes != 0) {
+            afterCommit(() -> add(userUsage, pendingUserUsage, user, bytes));
+        }
+    }
+
+    /**
+     * Queue a reconciliation, e.g. after a bulk operation the counters can't follow item by item
+     */
+    public void reconcileSoon() {
+        afterCommit(() -> {
+            if (reconcileQueued.compareAndSet(false, true)) {
+                reconciler.submit(() -> {
+                    reconcileQueued.set(false);
+                    try {
+                        reconcile();
+                    } catch (Exception e) {
+                        System.err.println("❌ Error reconciling quota usage: " + e.getMessage());
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Usage against limits of every live project and every user with files or a limit
+     */
+    public Map<String, Object> getUsage() {
+        List<Map<String, Object>> projects = new ArrayList<>();
+        for (Directory root : directoryRepository.findByParentIdIsNullAndDeletedFalse()) {
+            projects.add(entry(root.getId(), root.getName(), usage(projectUsage, root.getId()),
+                    quotaProperties.projectLimit(root.getName())));
+        }
+
+        Set<String> userNames = new TreeSet<>(userUsage.keySet());
+        userNames.addAll(quotaProperties.getUsers().keySet());
+        List<Map<String, Object>> users = new ArrayList<>();
+        for (String user : userNames) {
+            users.add(entry(null, user, usage(userUsage, user), quotaProperties.userLimit(user)));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", quotaProperties.isEnabled());
+        result.put("projects", projects);
+        result.put("users", users);
+        result.put("rejectedUploads", rejectedUploads.get());
+        result.put("lastReconciledAt", lastReconciledAt);
+        return result;
+    }
+
+    /**
+     * Usage against the limit of one user
+     */
+    public Map<String, Object> getUserUsage(String user) {
+        return entry(null, user, usage(userUsage, user), quotaProperties.userLimit(user));
+    }
+
+    /**
+     * Add the changes since the last call to quota_usage with one batched upsert (as
+     * deltas, so instances sharing the table don't overwrite each other), then reload the
+     * counters from there
+     */
+    @Scheduled(fixedDelayString = "${file.quota.persist-interval-ms:60000}",
+            initialDelayString = "${file.quota.persist-interval-ms:60000}")
+    public void persist() {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Map<Long, Long> projectDeltas = drain(pendingProjectUsage);
+        Map<String, Long> userDeltas = drain(pendingUserUsage);
+        List<Object[]> rows = new ArrayList<>();
+        projectDeltas.forEach((rootId, delta) -> rows.add(new Object[]{PROJECT, rootId.toString(), delta, now}));
+        userDeltas.forEach((user, delta) -> rows.add(new Object[]{USER, user, delta, now}));
+        try {
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate("MERGE INTO quota_usage t USING (VALUES (CAST(? AS VARCHAR(16)), " +
+                        "CAST(? AS VARCHAR(255)), CAST(? AS BIGINT), CAST(? AS TIMESTAMP(6)))) " +
+                        "s (scope, subject, delta, updated_at) ON t.scope = s.scope AND t.subject = s.subject " +
+                        "WHEN MATCHED THEN UPDATE SET used_bytes = t.used_bytes + s.delta, updated_at = s.updated_at " +
+                        "WHEN NOT MATCHED THEN INSERT (scope, subject, used_bytes, updated_at) " +
+                        "VALUES (s.scope, s.subject, s.delta, s.updated_at)", rows);
+            }
+        } catch (Exception e) {
+            // Added again with the next batch
+            projectDeltas.forEach((rootId, delta) -> counter(pendingProjectUsage, rootId).add(delta));
+            userDeltas.forEach((user, delta) -> counter(pendingUserUsage, user).add(delta));
+            System.err.println("❌ Error persisting quota usage: " + e.getMessage());
+            return;
+        }
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${file.quota.reconcile-interval-ms:3600000}",
+            initialDelayString = "${file.quota.reconcile-interval-ms:3600000}")
+    public void scheduledReconcile() {
+        if (requestActivityFilter.isQuiet(quietPeriodMs)) {
+            reconcileSoon();
+        }
+    }
+
+    /**
+     * Bring the counters in line with the rows: projects with their root directory's total,
+     * users with the sum over their live files. The counters are read before the rows, and
+     * one that moved while the rows were read is left to the next run, so an upload
+     * committing meanwhile is neither lost nor counted twice. Returns the number of
+     * counters corrected.
+     */
+    public int reconcile() {
+        Map<Long, Long> projectsBefore = snapshot(projectUsage);
+        Map<String, Long> usersBefore = snapshot(userUsage);
+        Map<Long, Long> projects = new HashMap<>();
+        for (Directory root : directoryRepository.findByParentIdIsNullAndDeletedFalse()) {
+            projects.put(root.getId(), root.getTotalSizeBytes());
+        }
+        Map<String, Long> users = new HashMap<>();
+        for (Object[] row : fileRepository.sumLiveSizeByUploader()) {
+            users.put((String) row[0], ((Number) row[1]).longValue());
+        }
+
+        int corrected = correct(projectUsage, pendingProjectUsage, projectsBefore, projects)
+                + correct(userUsage, pendingUserUsage, usersBefore, users);
+        lastReconciledAt = LocalDateTime.now();
+        if (corrected > 0) {
+            System.out.println("📊 Quota reconciliation corrected " + corrected + " counters");
+        }
+        return corrected;
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private <K> int correct(Map<K, LongAdder> counters, Map<K, LongAdder> pending,
+                            Map<K, Long> before, Map<K, Long> actual) {
+        int corrected = 0;
+        Set<K> subjects = new HashSet<>(counters.keySet());
+        subjects.addAll(actual.keySet());
+        for (K subject : subjects) {
+            LongAdder counter = counter(counters, subject);
+            long expected = before.getOrDefault(subject, 0L);
+            if (counter.sum() != expected) {
+                // Changed while the rows were read; they may or may not include the change
+                continue;
+            }
+            long drift = actual.getOrDefault(subject, 0L) - expected;
+            if (drift != 0) {
+                counter.add(drift);
+                counter(pending, subject).add(drift);
+                corrected++;
+            }
+        }
+        return corrected;
+    }
+
+    private <K> Map<K, Long> snapshot(Map<K, LongAdder> counters) {
+        Map<K, Long> values = new HashMap<>();
+        counters.forEach((subject, counter) -> values.put(subject, counter.sum()));
+        return values;
+    }
+
+    /**
+     * Set the counters to the stored totals plus what this instance has not stored yet
+     */
+    private void refresh() {
+        for (QuotaUsage stored : quotaUsageRepository.findAll()) {
+            if (PROJECT.equals(stored.getScope())) {
+                Long rootId = Long.valueOf(stored.getSubject());
+                reset(counter(projectUsage, rootId), stored.getUsedBytes() + usage(pendingProjectUsage, rootId));
+            } else {
+                reset(counter(userUsage, stored.getSubject()),
+                        stored.getUsedBytes() + usage(pendingUserUsage, stored.getSubject()));
+            }
+        }
+    }
+
+    private static void reset(LongAdder counter, long value) {
+        counter.add(value - counter.sum());
+    }
+
+    private <K> void add(Map<K, LongAdder> counters, Map<K, LongAdder> pending, K subject, long bytes) {
+        counter(counters, subject).add(bytes);
+        counter(pending, subject).add(bytes);
+    }
+
+    private <K> Map<K, Long> drain(Map<K, LongAdder> pending) {
+        Map<K, Long> deltas = new HashMap<>();
+        pending.forEach((subject, delta) -> {
+            long bytes = delta.sumThenReset();
+            if (bytes != 0) {
+                deltas.put(subject, bytes);
+            }
+        });
+        return deltas;
+    }
+
+    private <K> LongAdder counter(Map<K, LongAdder> counters, K subject) {
+        return counters.computeIfAbsent(subject, k -> new LongAdder());
+    }
+
+    private <K> long usage(Map<K, LongAdder> counters, K subject) {
+        LongAdder counter = counters.get(subject);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    private Map<String, Object> entry(Long id, String name, long used, long limit) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        if (id != null) {
+            entry.put("id", id);
+        }
+        entry.put("name", name);
+        entry.put("usedBytes", used);
+        entry.put("limitBytes", limit > 0 ? limit : null);
+        entry.put("remainingBytes", limit > 0 ? Math.max(0, limit - used) : null);
+        entry.put("usedRatio", limit > 0 ? (double) used / limit : null);
+        return entry;
+    }
+
+    private Directory findRoot(Long directoryId) {
+        Directory current = directoryCacheService.findById(directoryId).orElse(null);
+        Set<Long> seen = new HashSet<>();
+        while (current != null && current.getParentId() != null && seen.add(current.getId())) {
+            current = directoryCacheService.findById(current.getParentId()).orElse(null);
+        }
+        return current;
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.repository.FileRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single-flight reads for bursts of downloads of the same file (a link shared in a group
+ * chat). Concurrent lookups of the same file id share one query, and concurrent
+ * downloads of the same blob share one read of the stored content: whichever reader is
+ * ahead pulls the next chunk from disk, and everyone else is served from the chunks
+ * already read. A chunk is dropped once every reader of the flight has passed it, and
+ * late readers only join while the first chunk is still held. Only blobs up to a
+ * configured size are shared, and only while the flights in progress could not hold more
+ * than a configured number of bytes between them; everything else is streamed per request.
+ */
+@Service
+public class ReadCoalescingService {
+
+    @Value("${file.coalescing.enabled:true}")
+    private boolean enabled;
+
+    // Largest stored blob whose content is shared (and held in memory while read)
+    @Value("${file.coalescing.max-bytes:16777216}")
+    private long maxBytes;
+
+    @Value("${file.coalescing.chunk-bytes:262144}")
+    private int chunkBytes;
+
+    // Bound on what flights in progress may hold between them, counted at their full stored size
+    @Value("${file.coalescing.max-buffered-bytes:67108864}")
+    private long maxBufferedBytes;
+
+    @Value("${file.coalescing.max-flights:64}")
+    private int maxFlights;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ContentCompressionService contentCompressionService;
+
+    private final Map<Long, CompletableFuture<Optional<File>>> lookups = new ConcurrentHashMap<>();
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+
+    private final AtomicLong lookupCount = new AtomicLong();
+    private final AtomicLong lookupsCoalesced = new AtomicLong();
+    private final AtomicLong streamsOpened = new AtomicLong();
+    private final AtomicLong streamsJoined = new AtomicLong();
+    private final AtomicLong streamsBypassed = new AtomicLong();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    private int activeFlights;      // guarded by this
+    private long reservedBytes;     // guarded by this
+
+    /**
+     * A live file by id; callers asking for the same id at the same time share one query.
+     * The returned row may be shared with other callers and must not be modified.
+     */
+    public Optional<File> findFile(Long fileId) {
+        lookupCount.incrementAndGet();
+        if (!enabled) {
+            return fileRepository.findByIdAndDeletedFalse(fileId);
+        }
+
+        CompletableFuture<Optional<File>> mine = new CompletableFuture<>();
+        CompletableFuture<Optional<File>> inFlight = lookups.putIfAbsent(fileId, mine);
+        if (inFlight != null) {
+            lookupsCoalesced.incrementAndGet();
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        try {
+            Optional<File> file = fileRepository.findByIdAndDeletedFalse(fileId);
+            mine.complete(file);
+            return file;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            lookups.remove(fileId, mine);
+        }
+    }
+
+    /**
+     * Stream the bytes as stored, sharing the disk read with concurrent downloads of the same blob
+     */
+    public InputStream openStoredContent(File file) throws IOException {
+        if (!enabled || file.getStoredSize() == null || file.getStoredSize() > maxBytes) {
+            return fileStorageService.openStoredContent(file);
+        }
+
+        // A new revision always has a new path, so id and path identify the content
+        String key = file.getId() + ":" + file.getFilePath();
+        SharedInputStream stream = join(key, file);
+        if (stream == null) {
+            streamsBypassed.incrementAndGet();
+            return fileStorageService.openStoredContent(file);
+        }
+        try {
+            stream.flight.open();
+        } catch (IOException | RuntimeException e) {
+            stream.close();
+            throw e;
+        }
+        return stream;
+    }
+
+    /**
+     * Stream the original content, decoded per reader from the shared stored bytes
+     */
+    public InputStream openFileContent(File file) throws IOException {
+        return contentCompressionService.decode(openStoredContent(file), file.getStorageEncoding());
+    }
+
+    /**
+     * Work saved by coalescing
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("maxBytes", maxBytes);
+        status.put("maxBufferedBytes", maxBufferedBytes);
+        status.put("maxFlights", maxFlights);
+        status.put("lookups", lookupCount.get());
+        status.put("lookupsCoalesced", lookupsCoalesced.get());
+        status.put("streamsOpened", streamsOpened.get());
+        status.put("streamsJoined", streamsJoined.get());
+        status.put("streamsBypassed", streamsBypassed.get());
+        status.put("bytesRead", bytesRead.get());
+        status.put("bytesServed", bytesServed.get());
+        status.put("bytesSaved", Math.max(0, bytesServed.get() - bytesRead.get()));
+        status.put("bufferedBytes", bufferedBytes.get());
+        synchronized (this) {
+            status.put("activeFlights", activeFlights);
+            status.put("reservedBytes", reservedBytes);
+        }
+        return status;
+    }
+
+    // =================== HELPER METHODS ===================
+
+    /**
+     * A reader at the start of the flight for this key, or of a new one; null if a new
+     * flight is needed but the caps don't allow it
+     */
+    private SharedInputStream join(String key, File file) {
+        SharedInputStream[] joined = {null};
+        flights.compute(key, (k, existing) -> {
+            // A failed read is not shared with readers arriving later
+            if (existing != null && existing.failure == null) {
+                joined[0] = existing.admit();
+                if (joined[0] != null) {
+                    streamsJoined.incrementAndGet();
+                    return existing;
+                }
+            }
+            if (!reserve(file.getStoredSize())) {
+                return existing;
+            }
+            Flight flight = new Flight(k, file);
+            streamsOpened.incrementAndGet();
+            joined[0] = flight.admit();
+            return flight;
+        });
+        return joined[0];
+    }
+
+    private void release(SharedInputStream stream) {
+        Flight flight = stream.flight;
+        boolean[] last = {false};
+        // Same key lock as join(), so nobody joins a flight after its last reader left
+        flights.compute(flight.key, (k, current) -> {
+            last[0] = flight.leave(stream);
+            return last[0] && current == flight ? null : current;
+        });
+        if (last[0]) {
+            flight.closeSource();
+            unreserve(flight.file.getStoredSize());
+        }
+    }
+
+    private synchronized boolean reserve(long size) {
+        if (activeFlights >= maxFlights || reservedBytes + size > maxBufferedBytes) {
+            return false;
+        }
+        activeFlights++;
+        reservedBytes += size;
+        return true;
+    }
+
+    private synchronized void unreserve(long size) {
+        activeFlights--;
+        reservedBytes -= size;
+    }
+
+    /**
+     * One shared read of a blob: its readers, the chunks read and not yet passed by all of
+     * them, and the source to read more from
+     */
+    private class Flight {
+
+        private final String key;
+        private final File file;
+        // Held while reading from the source, so only one reader pulls from disk at a time
+        private final ReentrantLock loadLock = new ReentrantLock();
+
+        private final List<SharedInputStream> readers = new ArrayList<>();  // guarded by this
+        // Dropped chunks stay in the list as null, so indexes don't shift
+        private final List<byte[]> chunks = new ArrayList<>();              // guarded by this
+        private int dropped;                                               // guarded by this
+        private InputStream source;                                        // guarded by loadLock
+        private volatile boolean complete;
+        private volatile IOException failure;
+
+        Flight(String key, File file) {
+            this.key = key;
+            this.file = file;
+        }
+
+        void open() throws IOException {
+            loadLock.lock();
+            try {
+                if (source == null && !complete) {
+                    source = fileStorageService.openStoredContent(file);
+                }
+            } finally {
+                loadLock.unlock();
+            }
+        }
+
+        /**
+         * A new reader at the start, unless the first chunk is already gone
+         */
+        synchronized SharedInputStream admit() {
+            if (dropped > 0) {
+                return null;
+            }
+            SharedInputStream reader = new SharedInputStream(this);
+            readers.add(reader);
+            return reader;
+        }
+
+        /**
+         * A reader moved on to its next chunk
+         */
+        synchronized void advance(SharedInputStream reader) {
+            reader.chunkIndex++;
+            reader.offset = 0;
+            dropPassed();
+        }
+
+        /**
+         * A reader closed; true if it was the last one
+         */
+        synchronized boolean leave(SharedInputStream reader) {
+            readers.remove(reader);
+            if (readers.isEmpty()) {
+                dropBelow(chunks.size());
+                return true;
+            }
+            dropPassed();
+            return false;
+        }
+
+        private void dropPassed() {
+            int slowest = Integer.MAX_VALUE;
+            for (SharedInputStream reader : readers) {
+                slowest = Math.min(slowest, reader.chunkIndex);
+            }
+            dropBelow(Math.min(slowest, chunks.size()));
+        }
+
+        private void dropBelow(int index) {
+            for (; dropped < index; dropped++) {
+                bufferedBytes.addAndGet(-chunks.get(dropped).length);
+                chunks.set(dropped, null);
+            }
+        }
+
+        /**
+         * The chunk at this index, reading up to it if no reader got there yet; null past the end
+         */
+        byte[] chunk(int index) throws IOException {
+            byte[] chunk = loaded(index);
+            if (chunk != null || complete) {
+                return chunk;
+            }
+
+            loadLock.lock();
+            try {
+                while ((chunk = loaded(index)) == null && !complete) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    byte[] next;
+                    try {
+                        next = source.readNBytes(chunkBytes);
+                    } catch (IOException e) {
+                        failure = e;
+                        throw e;
+                    }
+                    bytesRead.addAndGet(next.length);
+                    if (next.length > 0) {
+                        synchronized (this) {
+                            chunks.add(next);
+                            bufferedBytes.addAndGet(next.length);
+                        }
+                    }
+                    if (next.length < chunkBytes) {
+                        complete = true;
+                        source.close();
+                        source = null;
+                    }
+                }
+                return chunk;
+            } finally {
+                loadLock.unlock();
+            }
+        }
+
+        private synchronized byte[] loaded(int index) {
+            return index < chunks.size() ? chunks.get(index) : null;
+        }
+
+        void closeSource() {
+            loadLock.lock();
+            try {
+                if (source != null) {
+                    source.close();
+                    source = null;
+                }
+            } catch (IOException e) {
+                System.err.println("❌ Error closing shared read of " + file.getFilePath() + ": " + e.getMessage());
+            } finally {
+                loadLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * One reader's position in a flight
+     */
+    private class SharedInputStream extends InputStream {
+
+        private final Flight flight;
+        private int chunkIndex;  // guarded by flight
+        private int offset;
+        private boolean closed;
+
+        SharedInputStream(Flight flight) {
+            this.flight = flight;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                byte[] chunk = flight.chunk(chunkIndex);
+                if (chunk == null) {
+                    return -1;
+                }
+                if (offset < chunk.length) {
+                    int count = Math.min(len, chunk.length - offset);
+                    System.arraycopy(chunk, offset, b, off, count);
+                    offset += count;
+                    bytesServed.addAndGet(count);
+                    return count;
+                }
+                flight.advance(this);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(this);
+            }
+        }
+    }
+}
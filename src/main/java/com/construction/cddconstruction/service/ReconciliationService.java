@@ -0,0 +1,449 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.repository.DirectoryRepository;
+import com.construction.cddconstruction.repository.FileRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.ZipException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Brings the upload volume and the metadata catalog back in line after a crash or a
+ * restore. The upload root is walked in parallel on a fork-join pool and compared with
+ * the catalog in batches, so neither side is ever loaded into memory as a whole.
+ * Runs in the background; the application keeps serving requests meanwhile.
+ */
+@Service
+public class ReconciliationService {
+
+    public enum State { IDLE, RUNNING, COMPLETED, FAILED }
+
+    @Value("${file.upload-dir:./uploads}")
+    private String baseUploadDir;
+
+    @Value("${file.reconcile.on-startup:true}")
+    private boolean runOnStartup;
+
+    // "register" adds orphaned blobs to the catalog, "quarantine" moves them aside
+    @Value("${file.reconcile.orphan-policy:register}")
+    private String orphanPolicy;
+
+    @Value("${file.reconcile.parallelism:4}")
+    private int parallelism;
+
+    @Value("${file.reconcile.batch-size:1000}")
+    private int batchSize;
+
+    // Files modified more recently than this may belong to an upload still in progress
+    @Value("${file.reconcile.grace-period-ms:60000}")
+    private long gracePeriodMs;
+
+    @Autowired
+    private DirectoryRepository directoryRepository;
+
+    @Autowired
+    private DirectoryCacheService directoryCacheService;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private DirectoryUsageService directoryUsageService;
+
+    @Autowired
+    private ContentCompressionService contentCompressionService;
+
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "catalog-reconciliation");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+    private final AtomicLong directoriesScanned = new AtomicLong();
+    private final AtomicLong filesScanned = new AtomicLong();
+    private final AtomicLong registeredDirectories = new AtomicLong();
+    private final AtomicLong registeredFiles = new AtomicLong();
+    private final AtomicLong quarantinedFiles = new AtomicLong();
+    private final AtomicLong missingBlobs = new AtomicLong();
+    private final AtomicLong recreatedDirectories = new AtomicLong();
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile String lastError;
+    private volatile long graceCutoff;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        if (runOnStartup) {
+            startReconciliation();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+    }
+
+    /**
+     * Start a reconciliation in the background. Returns false if one is already running.
+     */
+    public boolean startReconciliation() {
+        if (!state.compareAndSet(State.IDLE, State.RUNNING)
+                && !state.compareAndSet(State.COMPLETED, State.RUNNING)
+                && !state.compareAndSet(State.FAILED, State.RUNNING)) {
+            return false;
+        }
+
+        resetProgress();
+        runner.submit(this::runReconciliation);
+        return true;
+    }
+
+    /**
+     * Progress of the current (or last) run
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state.get());
+        status.put("startedAt", startedAt);
+        status.put("finishedAt", finishedAt);
+        status.put("directoriesScanned", directoriesScanned.get());
+        status.put("filesScanned", filesScanned.get());
+        status.put("registeredDirectories", registeredDirectories.get());
+        status.put("registeredFiles", registeredFiles.get());
+        status.put("quarantinedFiles", quarantinedFiles.get());
+        status.put("recreatedDirectories", recreatedDirectories.get());
+        status.put("missingBlobs", missingBlobs.get());
+        status.put("orphanPolicy", orphanPolicy);
+        status.put("error", lastError);
+        return status;
+    }
+
+    // =================== RECONCILIATION ===================
+
+    private void runReconciliation() {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            System.out.println("🔍 Catalog reconciliation started");
+            Path root = Paths.get(baseUploadDir);
+            Files.createDirectories(root);
+
+            // Disk -> catalog: register or quarantine what the catalog does not know
+            graceCutoff = System.currentTimeMillis() - gracePeriodMs;
+            FileBatch fileBatch = new FileBatch();
+            pool.invoke(new WalkTask(root, null, true, fileBatch));
+            fileBatch.flush();
+
+            // Catalog -> disk: flag rows whose blob is gone, recreate empty directories
+            checkCatalogAgainstDisk(pool);
+
+            if (registeredFiles.get() > 0 || registeredDirectories.get() > 0) {
+                directoryUsageService.reconcile();
+            }
+
+            finishedAt = LocalDateTime.now();
+            state.set(State.COMPLETED);
+            System.out.println("✅ Catalog reconciliation finished: " + getStatus());
+
+        } catch (Exception e) {
+            lastError = e.getMessage();
+            finishedAt = LocalDateTime.now();
+            state.set(State.FAILED);
+            System.err.println("❌ Catalog reconciliation failed: " + e.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void checkCatalogAgainstDisk(ForkJoinPool pool) throws Exception {
+        long afterId = 0;
+        while (true) {
+            List<File> page = fileRepository.findPageAfterId(afterId, PageRequest.of(0, batchSize));
+            if (page.isEmpty()) {
+                break;
+            }
+            afterId = page.get(page.size() - 1).getId();
+
+            // Packed files and blob store content have nothing at their path
+            Set<Long> missing = pool.submit(() -> page.parallelStream()
+                    .filter(file -> file.getSegmentId() == null && file.getStorageKey() == null && !Files.exists(Paths.get(file.getFilePath())))
+                    .map(File::getId)
+                    .collect(Collectors.toSet())
+            ).get();
+
+            List<Long> newlyMissing = new ArrayList<>();
+            List<Long> foundAgain = new ArrayList<>();
+            for (File file : page) {
+                boolean isMissing = missing.contains(file.getId());
+                if (isMissing && !file.isBlobMissing()) {
+                    newlyMissing.add(file.getId());
+                } else if (!isMissing && file.isBlobMissing()) {
+                    foundAgain.add(file.getId());
+                }
+            }
+
+            if (!newlyMissing.isEmpty()) {
+                fileRepository.updateBlobMissing(newlyMissing, true);
+            }
+            if (!foundAgain.isEmpty()) {
+                fileRepository.updateBlobMissing(foundAgain, false);
+            }
+            missingBlobs.addAndGet(missing.size());
+        }
+
+        for (Directory directory : directoryRepository.findByDeletedFalse()) {
+            Path path = Paths.get(directory.getFullPath());
+            if (!Files.isDirectory(path)) {
+                Files.createDirectories(path);
+                recreatedDirectories.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Walks one directory: makes sure it is in the catalog, queues its files for the
+     * batched catalog lookup and forks one subtask per subdirectory.
+     */
+    private class WalkTask extends RecursiveAction {
+
+        private final Path path;
+        private final Long parentId;
+        private final boolean isUploadRoot;
+        private final FileBatch fileBatch;
+
+        WalkTask(Path path, Long parentId, boolean isUploadRoot, FileBatch fileBatch) {
+            this.path = path;
+            this.parentId = parentId;
+            this.isUploadRoot = isUploadRoot;
+            this.fileBatch = fileBatch;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                Long directoryId = isUploadRoot ? null : ensureDirectoryRegistered(path, parentId);
+                directoriesScanned.incrementAndGet();
+
+                List<WalkTask> subtasks = new ArrayList<>();
+                try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+                    for (Path entry : entries) {
+                        // Dot-prefixed entries are internal areas (trash, chunk store, ...)
+                        if (entry.getFileName().toString().startsWith(".")) {
+                            continue;
+                        }
+                        BasicFileAttributes attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                        if (attributes.isDirectory()) {
+                            subtasks.add(new WalkTask(entry, directoryId, false, fileBatch));
+                        } else if (attributes.isRegularFile() && directoryId != null) {
+                            filesScanned.incrementAndGet();
+                            if (attributes.lastModifiedTime().toMillis() < graceCutoff) {
+                                fileBatch.add(new DiskFile(entry, attributes.size(), directoryId));
+                            }
+                        }
+                    }
+                }
+                invokeAll(subtasks);
+
+            } catch (IOException e) {
+                System.err.println("❌ Reconciliation could not read " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private Long ensureDirectoryRegistered(Path path, Long parentId) {
+        Optional<Directory> existing = directoryRepository.findByFullPath(path.toString());
+        if (existing.isPresent()) {
+            return existing.get().getId();
+        }
+
+        Directory directory = directoryRepository.save(new Directory(
+                path.getFileName().toString(),
+                path.toString(),
+                parentId,
+                parentId == null ? "root" : "custom"
+        ));
+        directoryCacheService.invalidateName(parentId, directory.getName());
+        registeredDirectories.incrementAndGet();
+        System.out.println("📁 Reconciliation registered directory: " + path);
+        return directory.getId();
+    }
+
+    private record DiskFile(Path path, long size, Long directoryId) {}
+
+    /**
+     * Collects files found on disk from all walker threads and diffs them against the
+     * catalog one batch (one IN query) at a time
+     */
+    private class FileBatch {
+
+        private List<DiskFile> pending = new ArrayList<>();
+
+        void add(DiskFile file) {
+            List<DiskFile> full = null;
+            synchronized (this) {
+                pending.add(file);
+                if (pending.size() >= batchSize) {
+                    full = pending;
+                    pending = new ArrayList<>();
+                }
+            }
+            if (full != null) {
+                process(full);
+            }
+        }
+
+        void flush() {
+            List<DiskFile> remaining;
+            synchronized (this) {
+                remaining = pending;
+                pending = new ArrayList<>();
+            }
+            if (!remaining.isEmpty()) {
+                process(remaining);
+            }
+        }
+
+        private void process(List<DiskFile> batch) {
+            Set<String> known = new HashSet<>(fileRepository.findExistingPaths(
+                    batch.stream().map(file -> file.path().toString()).toList()));
+
+            List<File> orphans = new ArrayList<>();
+            for (DiskFile diskFile : batch) {
+                if (known.contains(diskFile.path().toString())) {
+                    continue;
+                }
+                if ("quarantine".equalsIgnoreCase(orphanPolicy)) {
+                    quarantine(diskFile.path());
+                    continue;
+                }
+                File orphan = toFileEntity(diskFile);
+                if (orphan != null) {
+                    orphans.add(orphan);
+                }
+            }
+
+            if (!orphans.isEmpty()) {
+                try {
+                    fileRepository.saveAll(orphans);
+                    registeredFiles.addAndGet(orphans.size());
+                } catch (Exception e) {
+                    System.err.println("❌ Reconciliation could not register " + orphans.size() + " files: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Catalog entry for an orphaned blob, with the checksum of its content. Uploads are
+     * stored gzip-encoded as <unique name>.<extension>.gz; those are registered with
+     * their encoding, and with the name, size and checksum of the decoded content. A
+     * blob named like that that does not decode is quarantined instead; one that can't
+     * be read is left for the next run (null either way).
+     */
+    private File toFileEntity(DiskFile diskFile) {
+        String name = diskFile.path().getFileName().toString();
+        String decodedName = name.endsWith(".gz") ? name.substring(0, name.length() - 3) : null;
+        boolean gzip = decodedName != null && decodedName.lastIndexOf('.') > 0;
+
+        long size;
+        String contentHash;
+        try (InputStream stored = Files.newInputStream(diskFile.path());
+             InputStream in = contentCompressionService.decode(stored, gzip ? ContentCompressionService.GZIP : null)) {
+            MessageDigest digest = newSha256();
+            byte[] buffer = new byte[64 * 1024];
+            size = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+            contentHash = HexFormat.of().formatHex(digest.digest());
+        } catch (ZipException | EOFException e) {
+            System.err.println("❌ Reconciliation found a damaged compressed blob: " + diskFile.path());
+            quarantine(diskFile.path());
+            return null;
+        } catch (IOException e) {
+            System.err.println("❌ Reconciliation could not read " + diskFile.path() + ": " + e.getMessage());
+            return null;
+        }
+
+        String contentType = null;
+        try {
+            contentType = Files.probeContentType(gzip ? diskFile.path().resolveSibling(decodedName) : diskFile.path());
+        } catch (IOException e) {
+            // Unknown type, leave it empty
+        }
+
+        File file = new File(
+                gzip ? decodedName : name,
+                diskFile.path().toString(),
+                size,
+                contentType,
+                diskFile.directoryId()
+        );
+        file.setStoredSize(diskFile.size());
+        file.setStorageEncoding(gzip ? ContentCompressionService.GZIP : null);
+        file.setContentHash(contentHash);
+        return file;
+    }
+
+    private MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void quarantine(Path path) {
+        try {
+            Path root = Paths.get(baseUploadDir);
+            Path target = root.resolve(".quarantine").resolve(root.relativize(path));
+            Files.createDirectories(target.getParent());
+            Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+            quarantinedFiles.incrementAndGet();
+        } catch (IOException e) {
+            System.err.println("❌ Could not quarantine " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void resetProgress() {
+        directoriesScanned.set(0);
+        filesScanned.set(0);
+        registeredDirectories.set(0);
+        registeredFiles.set(0);
+        quarantinedFiles.set(0);
+        missingBlobs.set(0);
+        recreatedDirectories.set(0);
+        startedAt = LocalDateTime.now();
+        finishedAt = null;
+        lastError = null;
+    }
+}
@@ -0,0 +1,309 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.config.RequestActivityFilter;
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.entity.StorageSegment;
+import com.construction.cddconstruction.repository.FileRepository;
+import com.construction.cddconstruction.repository.StorageSegmentRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Packs small blobs back to back into large append-only segment files, so tiny progress
+ * photos and documents don't each cost an inode, a directory entry and an open() per read.
+ * The index lives on the file rows (segment id + offset, length = stored size) and reads
+ * are positional reads on a shared channel per segment.
+ *
+ * A blob is appended and forced before its row is saved, so a crash in between only
+ * leaves unreferenced bytes behind. Deleted and superseded blobs are just unreferenced
+ * bytes too; compaction copies the live entries out of mostly-dead sealed segments.
+ *
+ * Instances sharing the volume never append to the same segment: each open segment
+ * records its holder's node id, and only that instance appends to and seals it. Sealed
+ * segments are compacted by whichever instance claims them first.
+ */
+@Service
+public class SegmentStorageService {
+
+    private static final String SEGMENT_DIR_NAME = ".segments";
+
+    public record Location(Long segmentId, long offset) {}
+
+    @Value("${file.upload-dir:./uploads}")
+    private String baseUploadDir;
+
+    @Value("${file.packing.enabled:false}")
+    private boolean enabled;
+
+    // Stored blobs up to this size are packed
+    @Value("${file.packing.threshold-bytes:65536}")
+    private long thresholdBytes;
+
+    @Value("${file.packing.segment-max-bytes:67108864}")
+    private long segmentMaxBytes;
+
+    // Sealed segments with less live data than this fraction are compacted
+    @Value("${file.packing.compaction.min-live-ratio:0.5}")
+    private double minLiveRatio;
+
+    @Value("${file.packing.compaction.quiet-period-ms:30000}")
+    private long quietPeriodMs;
+
+    @Autowired
+    private StorageSegmentRepository storageSegmentRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private RequestActivityFilter requestActivityFilter;
+
+    @Autowired
+    private CoordinationService coordinationService;
+
+    // Positional reads don't move the channel position, so one channel serves all readers
+    private final Map<Long, FileChannel> readChannels = new ConcurrentHashMap<>();
+
+    private final Object appendLock = new Object();
+    private StorageSegment activeSegment;   // guarded by appendLock
+    private FileChannel activeChannel;      // guarded by appendLock
+
+    @PreDestroy
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            if (activeChannel != null) {
+                activeChannel.close();
+            }
+        }
+        for (FileChannel channel : readChannels.values()) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Whether a blob of this stored size goes into a segment
+     */
+    public boolean shouldPack(long storedSize) {
+        return enabled && storedSize <= thresholdBytes;
+    }
+
+    /**
+     * Append a staged blob to the open segment and return where it landed
+     */
+    public Location append(Path source) throws IOException {
+        try (InputStream in = Files.newInputStream(source)) {
+            return append(in, Files.size(source));
+        }
+    }
+
+    /**
+     * Stream one entry with positional reads
+     */
+    public InputStream open(Long segmentId, long offset, long length) {
+        return new SegmentEntryInputStream(readChannel(segmentId), offset, length);
+    }
+
+    /**
+     * Reclaim space: delete segments retired on the previous pass (any read started on them
+     * has long finished), then copy live entries out of sealed segments that are mostly dead
+     */
+    @Scheduled(fixedDelayString = "${file.packing.compaction.interval-ms:3600000}",
+            initialDelayString = "${file.packing.compaction.interval-ms:3600000}")
+    public void compact() {
+        if (!enabled || !requestActivityFilter.isQuiet(quietPeriodMs)) {
+            return;
+        }
+        try {
+            for (StorageSegment segment : storageSegmentRepository.findByRetiredTrue()) {
+                FileChannel channel = readChannels.remove(segment.getId());
+                if (channel != null) {
+                    channel.close();
+                }
+                Files.deleteIfExists(segmentPath(segment.getId()));
+                storageSegmentRepository.delete(segment);
+            }
+
+            Map<Long, Long> liveBytes = new HashMap<>();
+            for (Object[] row : fileRepository.sumStoredSizeBySegment()) {
+                liveBytes.put((Long) row[0], ((Number) row[1]).longValue());
+            }
+
+            for (StorageSegment segment : storageSegmentRepository.findBySealedTrueAndRetiredFalse()) {
+                if (!requestActivityFilter.isQuiet(quietPeriodMs)) {
+                    break;
+                }
+                long live = liveBytes.getOrDefault(segment.getId(), 0L);
+                if (segment.getSizeBytes() > 0 && (double) live / segment.getSizeBytes() < minLiveRatio
+                        && storageSegmentRepository.claimForCompaction(segment.getId(), coordinationService.getNodeId()) == 1) {
+                    compactSegment(storageSegmentRepository.findById(segment.getId()).orElseThrow());
+                    System.out.println("🧹 Compacted segment " + segment.getId() + ": reclaimed "
+                            + (segment.getSizeBytes() - live) + " bytes");
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("❌ Error compacting segments: " + e.getMessage());
+        }
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private Location append(InputStream in, long length) throws IOException {
+        synchronized (appendLock) {
+            ensureActiveSegment(length);
+            long offset = activeChannel.size();
+
+            activeChannel.position(offset);
+            byte[] buffer = new byte[64 * 1024];
+            long written = 0;
+            int read;
+            while (written < length && (read = in.read(buffer, 0, (int) Math.min(buffer.length, length - written))) != -1) {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    activeChannel.write(chunk);
+                }
+                written += read;
+            }
+            if (written != length) {
+                // Leave no half entry at the tail for the next append to sit behind
+                activeChannel.truncate(offset);
+                throw new IOException("Blob shorter than expected: " + written + " of " + length + " bytes");
+            }
+
+            activeChannel.force(false);
+            return new Location(activeSegment.getId(), offset);
+        }
+    }
+
+    private void ensureActiveSegment(long length) throws IOException {
+        if (activeSegment == null) {
+            // Alone on the volume, any open segment (e.g. one left under an earlier host name) is ours
+            String holder = coordinationService.getNodeId();
+            Optional<StorageSegment> open = coordinationService.isEnabled()
+                    ? storageSegmentRepository.findFirstBySealedFalseAndHolderOrderByIdDesc(holder)
+                    : storageSegmentRepository.findFirstBySealedFalseOrderByIdDesc();
+            activeSegment = open.orElseGet(this::newSegment);
+            activeChannel = openForAppend(activeSegment.getId());
+        }
+
+        long size = activeChannel.size();
+        if (size > 0 && size + length > segmentMaxBytes) {
+            activeSegment.setSealed(true);
+            activeSegment.setSizeBytes(size);
+            activeSegment.setHolder(null);
+            storageSegmentRepository.save(activeSegment);
+            activeChannel.close();
+
+            activeSegment = newSegment();
+            activeChannel = openForAppend(activeSegment.getId());
+        }
+    }
+
+    private StorageSegment newSegment() {
+        StorageSegment segment = new StorageSegment();
+        segment.setHolder(coordinationService.getNodeId());
+        return storageSegmentRepository.save(segment);
+    }
+
+    private FileChannel openForAppend(Long segmentId) throws IOException {
+        Path path = segmentPath(segmentId);
+        Files.createDirectories(path.getParent());
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private void compactSegment(StorageSegment segment) throws IOException {
+        // Copied files share entries; each entry is moved once, with all rows pointing at it
+        Map<Long, File> entries = new TreeMap<>();
+        for (File file : fileRepository.findBySegmentId(segment.getId())) {
+            entries.putIfAbsent(file.getSegmentOffset(), file);
+        }
+        for (File file : entries.values()) {
+            Location location;
+            try (InputStream in = open(segment.getId(), file.getSegmentOffset(), file.getStoredSize())) {
+                location = append(in, file.getStoredSize());
+            }
+            // If the rows changed meanwhile (purged, new revision) the copy is simply dead bytes
+            fileRepository.relocateSegmentEntry(segment.getId(), file.getSegmentOffset(),
+                    location.segmentId(), location.offset());
+        }
+
+        segment.setRetired(true);
+        storageSegmentRepository.save(segment);
+    }
+
+    private FileChannel readChannel(Long segmentId) {
+        return readChannels.computeIfAbsent(segmentId, id -> {
+            try {
+                return FileChannel.open(segmentPath(id), StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Missing segment " + id, e);
+            }
+        });
+    }
+
+    private Path segmentPath(Long segmentId) {
+        return Paths.get(baseUploadDir, SEGMENT_DIR_NAME, String.format("segment-%08d.dat", segmentId));
+    }
+
+    /**
+     * Reads [offset, offset + length) of a segment without touching the channel position
+     */
+    private static class SegmentEntryInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        SegmentEntryInputStream(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int toRead = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (read == -1) {
+                throw new IOException("Segment entry truncated");
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
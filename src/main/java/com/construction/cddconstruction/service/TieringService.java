@@ -0,0 +1,356 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.config.RequestActivityFilter;
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.repository.FileRepository;
+import com.construction.cddconstruction.storage.BlobStore;
+import com.construction.cddconstruction.storage.LocalBlobStore;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hot/cold tiering. Downloads are recorded in memory and flushed to the file rows in
+ * batches; a background job moves blobs nobody downloaded for a configurable number of
+ * days to the cold store, gzip-compressed, at a capped I/O rate. Cold files stay readable
+ * straight from the cold store, and a download queues them for promotion back to the hot
+ * tree, so no read ever waits for a migration.
+ */
+@Service
+public class TieringService {
+
+    public static final String COLD = "cold";
+
+    private static final String COLD_KEY_PREFIX = "files/";
+
+    @Value("${file.tiering.enabled:false}")
+    private boolean enabled;
+
+    @Value("${file.tiering.cold-after-days:180}")
+    private int coldAfterDays;
+
+    // Bytes per second the demotion job may read from the hot tier
+    @Value("${file.tiering.rate-bytes-per-second:16777216}")
+    private long rateBytesPerSecond;
+
+    @Value("${file.tiering.batch-size:100}")
+    private int batchSize;
+
+    @Value("${file.tiering.promote-on-access:true}")
+    private boolean promoteOnAccess;
+
+    @Value("${file.tiering.quiet-period-ms:30000}")
+    private long quietPeriodMs;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ContentCompressionService contentCompressionService;
+
+    @Autowired
+    private LocalBlobStore localBlobStore;
+
+    @Autowired
+    private MappedFileService mappedFileService;
+
+    @Autowired
+    @Qualifier("coldBlobStore")
+    private BlobStore coldBlobStore;
+
+    @Autowired
+    private RequestActivityFilter requestActivityFilter;
+
+    private final ExecutorService demoter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "tiering-demoter");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final ExecutorService promoter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "tiering-promoter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Accessed file ids waiting for the next flush
+    private final Set<Long> pendingAccess = ConcurrentHashMap.newKeySet();
+    // Cold file ids queued for promotion, so repeated downloads queue them once
+    private final Set<Long> pendingPromotion = ConcurrentHashMap.newKeySet();
+
+    private final AtomicBoolean demoting = new AtomicBoolean();
+    private final AtomicLong filesDemoted = new AtomicLong();
+    private final AtomicLong bytesDemoted = new AtomicLong();
+    private final AtomicLong filesPromoted = new AtomicLong();
+    private final AtomicLong coldReads = new AtomicLong();
+    private volatile long demotionCursor;
+    private volatile LocalDateTime lastDemotionAt;
+
+    @PreDestroy
+    public void shutdown() {
+        flushAccessTimes();
+        demoter.shutdownNow();
+        promoter.shutdownNow();
+    }
+
+    /**
+     * Note a download. Costs a set insert; the row is updated with the next flush.
+     * A cold file is queued for promotion and served from the cold store meanwhile.
+     */
+    public void recordAccess(File file) {
+        if (!enabled) {
+            return;
+        }
+        pendingAccess.add(file.getId());
+        if (COLD.equals(file.getStorageTier())) {
+            coldReads.incrementAndGet();
+            if (promoteOnAccess && pendingPromotion.add(file.getId())) {
+                promoter.submit(() -> {
+                    try {
+                        promote(file.getId());
+                    } catch (Exception e) {
+                        System.err.println("❌ Could not promote file " + file.getId() + ": " + e.getMessage());
+                    } finally {
+                        pendingPromotion.remove(file.getId());
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Tiering settings and counters
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("coldAfterDays", coldAfterDays);
+        status.put("demoting", demoting.get());
+        status.put("lastDemotionAt", lastDemotionAt);
+        status.put("filesDemoted", filesDemoted.get());
+        status.put("bytesDemoted", bytesDemoted.get());
+        status.put("filesPromoted", filesPromoted.get());
+        status.put("coldReads", coldReads.get());
+        status.put("pendingAccessUpdates", pendingAccess.size());
+        status.put("pendingPromotions", pendingPromotion.size());
+        return status;
+    }
+
+    /**
+     * Write the collected access times with one update per batch of ids. The time written
+     * is the flush time, which is precise enough for a threshold measured in days.
+     */
+    @Scheduled(fixedDelayString = "${file.tiering.access-flush-ms:60000}",
+            initialDelayString = "${file.tiering.access-flush-ms:60000}")
+    public void flushAccessTimes() {
+        if (pendingAccess.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(pendingAccess);
+        pendingAccess.removeAll(ids);
+
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            for (int from = 0; from < ids.size(); from += 500) {
+                fileRepository.markAccessed(ids.subList(from, Math.min(ids.size(), from + 500)), now);
+            }
+        } catch (Exception e) {
+            // Losing some access times only makes those files look older than they are
+            System.err.println("❌ Error flushing file access times: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hand the next batch of demotions to the demoter thread while the application is quiet
+     */
+    @Scheduled(fixedDelayString = "${file.tiering.interval-ms:3600000}",
+            initialDelayString = "${file.tiering.interval-ms:3600000}")
+    public void scheduleDemotion() {
+        if (!enabled || !requestActivityFilter.isQuiet(quietPeriodMs) || !demoting.compareAndSet(false, true)) {
+            return;
+        }
+        demoter.submit(() -> {
+            try {
+                demoteBatch();
+            } catch (Exception e) {
+                System.err.println("❌ Error demoting files: " + e.getMessage());
+            } finally {
+                demoting.set(false);
+            }
+        });
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private void demoteBatch() {
+        List<File> candidates = fileRepository.findDemotionCandidates(demotionCursor,
+                LocalDateTime.now().minusDays(coldAfterDays), PageRequest.of(0, batchSize));
+        // Start over from the lowest id once the end is reached
+        demotionCursor = candidates.size() < batchSize ? 0 : candidates.get(candidates.size() - 1).getId();
+
+        int demoted = 0;
+        for (File file : candidates) {
+            if (!requestActivityFilter.isQuiet(quietPeriodMs)) {
+                break;
+            }
+            // Downloaded since the batch was loaded, but not flushed yet
+            if (pendingAccess.contains(file.getId())) {
+                continue;
+            }
+            try {
+                if (demote(file)) {
+                    demoted++;
+                }
+            } catch (IOException e) {
+                System.err.println("❌ Could not demote " + file.getFilePath() + ": " + e.getMessage());
+            }
+        }
+        lastDemotionAt = LocalDateTime.now();
+        if (demoted > 0) {
+            System.out.println("🧊 Moved " + demoted + " files to the cold tier");
+        }
+    }
+
+    /**
+     * Copy one hot blob to the cold store as gzip of its original content, switch the row
+     * over, then remove the hot blob. Readers holding the old row follow it to the cold tier.
+     */
+    private boolean demote(File file) throws IOException {
+        Path hotPath = Paths.get(file.getFilePath());
+        String coldKey = COLD_KEY_PREFIX + UUID.randomUUID() + ".gz";
+
+        // Already gzip-encoded blobs are copied as they are, everything else is compressed on the way
+        Path temp = Files.createTempFile("demote-", ".gz");
+        try {
+            try (InputStream stored = new ThrottledInputStream(fileStorageService.openStoredContent(file), rateBytesPerSecond)) {
+                if (ContentCompressionService.GZIP.equals(file.getStorageEncoding())) {
+                    Files.copy(stored, temp, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    contentCompressionService.writeCompressed(stored, temp);
+                }
+            } catch (NoSuchFileException e) {
+                // Replaced or removed meanwhile
+                return false;
+            }
+
+            try (InputStream in = Files.newInputStream(temp)) {
+                coldBlobStore.put(coldKey, in, Files.size(temp));
+            }
+            bytesDemoted.addAndGet(Files.size(temp));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        if (fileRepository.markDemoted(file.getId(), file.getFilePath(), COLD, coldKey) == 0) {
+            // New revision, move or purge in the meantime: the hot blob is still the live one
+            coldBlobStore.delete(coldKey);
+            return false;
+        }
+        mappedFileService.release(file.getFilePath());
+        Files.deleteIfExists(hotPath);
+        filesDemoted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Copy a cold blob back to the file's path in the hot tree and switch the row over
+     */
+    private void promote(Long fileId) throws IOException {
+        File file = fileRepository.findByIdAndDeletedFalse(fileId).orElse(null);
+        if (file == null || !COLD.equals(file.getStorageTier())) {
+            return;
+        }
+        Path hotPath = Paths.get(file.getFilePath());
+        // The directory was moved or removed since the row was read; the next access tries again
+        if (!Files.isDirectory(hotPath.getParent())) {
+            return;
+        }
+
+        String hotKey = localBlobStore.keyOf(hotPath);
+        try (InputStream stored = fileStorageService.openStoredContent(file)) {
+            localBlobStore.put(hotKey, stored, file.getStoredSize());
+        }
+
+        if (fileRepository.markPromoted(file.getId(), file.getFilePath(), file.getStorageKey()) == 0) {
+            // Changed meanwhile; nothing refers to the copy
+            localBlobStore.delete(hotKey);
+            return;
+        }
+        // Copies of the file may still be cold under the same key
+        if (fileRepository.countByStorageKey(file.getStorageKey()) == 0) {
+            coldBlobStore.delete(file.getStorageKey());
+        }
+        filesPromoted.incrementAndGet();
+        System.out.println("🔥 Promoted to the hot tier: " + file.getOriginalName());
+    }
+
+    /**
+     * Sleeps off any lead over the allowed rate, so demotion never saturates the disk
+     */
+    private static class ThrottledInputStream extends FilterInputStream {
+
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long total;
+
+        ThrottledInputStream(InputStream in, long bytesPerSecond) {
+            super(in);
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                throttle(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                throttle(read);
+            }
+            return read;
+        }
+
+        private void throttle(int read) throws IOException {
+            total += read;
+            long aheadMs = total * 1000 / bytesPerSecond - (System.nanoTime() - start) / 1_000_000;
+            if (aheadMs > 0) {
+                try {
+                    Thread.sleep(aheadMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while throttling", e);
+                }
+            }
+        }
+    }
+}
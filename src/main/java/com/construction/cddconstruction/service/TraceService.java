@@ -0,0 +1,330 @@
+package com.construction.cddconstruction.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sampled per-request traces: a tree of timed spans through controllers, services,
+ * repositories and disk stages, with byte counts where known. A request is traced when
+ * it is sampled (file.tracing.sample-rate) or asks for it with an X-Trace header; for
+ * everyone else a span costs one thread-local lookup. Finished traces are kept in a
+ * ring buffer for the admin viewer and optionally appended to a JSON lines file.
+ *
+ * Spans are per thread, so work handed to other threads is not part of the trace.
+ */
+@Service
+public class TraceService {
+
+    public static final String SERVLET = "servlet";
+    public static final String CONTROLLER = "controller";
+    public static final String SERVICE = "service";
+    public static final String REPOSITORY = "repository";
+    public static final String DISK = "disk";
+
+    public record FinishedSpan(String layer, String name, int depth, long startMicros, long durationMicros,
+                               long bytes, String error) {}
+
+    public record Trace(String id, String method, String uri, int status, LocalDateTime startedAt,
+                        long durationMicros, long requestBytes, int droppedSpans, List<FinishedSpan> spans) {}
+
+    private static final Span NOOP = new Span(null, null, null, null, 0, 0);
+
+    @Value("${file.tracing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${file.tracing.sample-rate:0.01}")
+    private double sampleRate;
+
+    @Value("${file.tracing.buffer-size:200}")
+    private int bufferSize;
+
+    @Value("${file.tracing.max-spans:500}")
+    private int maxSpans;
+
+    // JSON lines, one trace per line; empty for no file
+    @Value("${file.tracing.export-file:}")
+    private String exportFile;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final ThreadLocal<ActiveTrace> current = new ThreadLocal<>();
+    private final Deque<Trace> traces = new ArrayDeque<>();  // guarded by itself, newest first
+
+    // Exports are written off the request thread and dropped if the writer falls behind
+    private final ThreadPoolExecutor exporter = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1000), r -> {
+                Thread thread = new Thread(r, "trace-exporter");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    private final AtomicLong requestsSeen = new AtomicLong();
+    private final AtomicLong requestsTraced = new AtomicLong();
+    private final AtomicLong exportFailures = new AtomicLong();
+
+    @PreDestroy
+    public void shutdown() {
+        exporter.shutdown();
+    }
+
+    /**
+     * Start tracing the current request if it is sampled or forced; returns the trace id, or null
+     */
+    public String begin(String method, String uri, long requestBytes, boolean forced) {
+        requestsSeen.incrementAndGet();
+        if (!enabled || (!forced && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return null;
+        }
+        requestsTraced.incrementAndGet();
+        ActiveTrace trace = new ActiveTrace(UUID.randomUUID().toString(), method, uri, requestBytes);
+        current.set(trace);
+        return trace.id;
+    }
+
+    /**
+     * Finish the current request's trace, if any, and hand it to the viewer and the export
+     */
+    public void end(int status) {
+        ActiveTrace active = current.get();
+        if (active == null) {
+            return;
+        }
+        current.remove();
+
+        List<FinishedSpan> spans = new ArrayList<>(active.spans);
+        spans.sort(Comparator.comparingLong(FinishedSpan::startMicros).thenComparingInt(FinishedSpan::depth));
+        Trace trace = new Trace(active.id, active.method, active.uri, status, active.startedAt,
+                micros(System.nanoTime() - active.startNanos), active.requestBytes, active.droppedSpans, spans);
+
+        synchronized (traces) {
+            traces.addFirst(trace);
+            while (traces.size() > bufferSize) {
+                traces.removeLast();
+            }
+        }
+        if (!exportFile.isBlank()) {
+            exporter.execute(() -> export(trace));
+        }
+    }
+
+    public boolean isTracing() {
+        return current.get() != null;
+    }
+
+    /**
+     * Open a span in the current trace; close it when the stage is done. A no-op outside traced requests.
+     */
+    public Span span(String layer, String name) {
+        ActiveTrace trace = current.get();
+        if (trace == null) {
+            return NOOP;
+        }
+        return new Span(this, trace, layer, name, trace.depth++, System.nanoTime());
+    }
+
+    /**
+     * Mark the time from request start until the first controller call (servlet filters,
+     * security, multipart parsing) as a span of its own
+     */
+    public void handlerStarted() {
+        ActiveTrace trace = current.get();
+        if (trace != null && !trace.handlerStarted) {
+            trace.handlerStarted = true;
+            record(trace, SERVLET, "dispatch", 1, trace.startNanos, System.nanoTime(), 0, null);
+        }
+    }
+
+    /**
+     * Recent traces, newest first, optionally only those at least this slow
+     */
+    public List<Map<String, Object>> getTraces(long minDurationMs, int limit) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Trace trace : snapshot()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            if (trace.durationMicros() < minDurationMs * 1000) {
+                continue;
+            }
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("id", trace.id());
+            summary.put("method", trace.method());
+            summary.put("uri", trace.uri());
+            summary.put("status", trace.status());
+            summary.put("startedAt", trace.startedAt());
+            summary.put("durationMs", trace.durationMicros() / 1000.0);
+            summary.put("requestBytes", trace.requestBytes());
+            summary.put("spans", trace.spans().size());
+            result.add(summary);
+        }
+        return result;
+    }
+
+    public Optional<Trace> getTrace(String id) {
+        return snapshot().stream().filter(trace -> trace.id().equals(id)).findFirst();
+    }
+
+    /**
+     * Time and bytes by span over the buffered traces, slowest total first
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, long[]> bySpan = new HashMap<>();  // count, total micros, max micros, bytes
+        List<Trace> buffered = snapshot();
+        for (Trace trace : buffered) {
+            for (FinishedSpan span : trace.spans()) {
+                long[] totals = bySpan.computeIfAbsent(span.layer() + ":" + span.name(), k -> new long[4]);
+                totals[0]++;
+                totals[1] += span.durationMicros();
+                totals[2] = Math.max(totals[2], span.durationMicros());
+                totals[3] += span.bytes();
+            }
+        }
+        List<Map<String, Object>> spans = new ArrayList<>();
+        bySpan.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]))
+                .forEach(entry -> {
+                    long[] totals = entry.getValue();
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("span", entry.getKey());
+                    row.put("count", totals[0]);
+                    row.put("totalMs", totals[1] / 1000.0);
+                    row.put("avgMs", totals[1] / 1000.0 / totals[0]);
+                    row.put("maxMs", totals[2] / 1000.0);
+                    row.put("bytes", totals[3]);
+                    spans.add(row);
+                });
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("enabled", enabled);
+        status.put("sampleRate", sampleRate);
+        status.put("requestsSeen", requestsSeen.get());
+        status.put("requestsTraced", requestsTraced.get());
+        status.put("buffered", buffered.size());
+        status.put("exportFile", exportFile.isBlank() ? null : exportFile);
+        status.put("exportFailures", exportFailures.get());
+        status.put("spans", spans);
+        return status;
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private List<Trace> snapshot() {
+        synchronized (traces) {
+            return new ArrayList<>(traces);
+        }
+    }
+
+    private void record(ActiveTrace trace, String layer, String name, int depth, long startNanos, long endNanos,
+                        long bytes, String error) {
+        if (trace.spans.size() >= maxSpans) {
+            trace.droppedSpans++;
+            return;
+        }
+        trace.spans.add(new FinishedSpan(layer, name, depth, micros(startNanos - trace.startNanos),
+                micros(endNanos - startNanos), bytes, error));
+    }
+
+    private void export(Trace trace) {
+        try {
+            Path path = Paths.get(exportFile);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.writeString(path, objectMapper.writeValueAsString(trace) + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            if (exportFailures.getAndIncrement() == 0) {
+                System.err.println("❌ Error exporting traces to " + exportFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static class ActiveTrace {
+
+        private final String id;
+        private final String method;
+        private final String uri;
+        private final long requestBytes;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final long startNanos = System.nanoTime();
+        private final List<FinishedSpan> spans = new ArrayList<>();
+        private int depth = 1;
+        private int droppedSpans;
+        private boolean handlerStarted;
+
+        ActiveTrace(String id, String method, String uri, long requestBytes) {
+            this.id = id;
+            this.method = method;
+            this.uri = uri;
+            this.requestBytes = requestBytes;
+        }
+    }
+
+    /**
+     * An open span; records its timing, bytes and failure when closed
+     */
+    public static class Span implements AutoCloseable {
+
+        private final TraceService service;
+        private final ActiveTrace trace;
+        private final String layer;
+        private final String name;
+        private final int depth;
+        private final long startNanos;
+        private long bytes;
+        private String error;
+
+        private Span(TraceService service, ActiveTrace trace, String layer, String name, int depth, long startNanos) {
+            this.service = service;
+            this.trace = trace;
+            this.layer = layer;
+            this.name = name;
+            this.depth = depth;
+            this.startNanos = startNanos;
+        }
+
+        public Span addBytes(long count) {
+            if (trace != null) {
+                bytes += Math.max(0, count);
+            }
+            return this;
+        }
+
+        public void fail(Throwable failure) {
+            if (trace != null) {
+                error = failure.getClass().getSimpleName();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (trace == null) {
+                return;
+            }
+            trace.depth--;
+            service.record(trace, layer, name, depth, startNanos, System.nanoTime(), bytes, error);
+        }
+    }
+}
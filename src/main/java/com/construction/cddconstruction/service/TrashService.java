@@ -0,0 +1,250 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.config.RequestActivityFilter;
+import com.construction.cddconstruction.entity.Directory;
+import com.construction.cddconstruction.entity.File;
+import com.construction.cddconstruction.repository.DirectoryRepository;
+import com.construction.cddconstruction.repository.FileRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+@Service
+public class TrashService {
+
+    @Value("${file.trash.retention-days:7}")
+    private long retentionDays;
+
+    @Value("${file.trash.batch-size:100}")
+    private int batchSize;
+
+    @Value("${file.trash.batch-pause-ms:200}")
+    private long batchPauseMs;
+
+    @Value("${file.trash.quiet-period-ms:30000}")
+    private long quietPeriodMs;
+
+    @Autowired
+    private DirectoryRepository directoryRepository;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private DirectoryService directoryService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private MappedFileService mappedFileService;
+
+    @Autowired
+    private CoordinationService coordinationService;
+
+    @Autowired
+    private RequestActivityFilter requestActivityFilter;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * List trashed directories and individually trashed files
+     */
+    public Map<String, Object> getTrash() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("directories", directoryRepository.findTrashedDirectories());
+        result.put("files", fileRepository.findTrashedFiles());
+        result.put("retentionDays", retentionDays);
+        return result;
+    }
+
+    /**
+     * Purge expired tombstones and their physical files in small batches, only while
+     * the application is idle. Stops as soon as requests come in again.
+     */
+    @Scheduled(fixedDelayString = "${file.trash.gc-interval-ms:60000}",
+            initialDelayString = "${file.trash.gc-interval-ms:60000}")
+    public void collectGarbage() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        int purgedFiles = 0;
+        int purgedDirs = 0;
+
+        try {
+            while (requestActivityFilter.isQuiet(quietPeriodMs)) {
+                List<File> batch = fileRepository.findByDeletedTrueAndDeletedAtBefore(cutoff, PageRequest.of(0, batchSize));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (File file : batch) {
+                    fileStorageService.purgeFile(file);
+                }
+                purgedFiles += batch.size();
+                pause();
+            }
+
+            if (requestActivityFilter.isQuiet(quietPeriodMs)) {
+                sweepPurging();
+            }
+            while (requestActivityFilter.isQuiet(quietPeriodMs)) {
+                List<Directory> batch = directoryRepository.findExpiredTrashedDirectories(cutoff, PageRequest.of(0, batchSize));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (Directory directory : batch) {
+                    purgeDirectory(directory);
+                }
+                purgedDirs += batch.size();
+                pause();
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("❌ Error collecting trash: " + e.getMessage());
+        }
+
+        if (purgedFiles > 0 || purgedDirs > 0) {
+            System.out.println("🧹 Trash collector purged " + purgedFiles + " files and " + purgedDirs + " directories");
+        }
+    }
+
+    // =================== HELPER METHODS ===================
+
+    /**
+     * Claim the directory under the tree lock: a restore (on any instance) either comes
+     * first or finds it gone, and a second collector finds nothing to do. The rows are
+     * deleted and the folder renamed out of the trash together; the slow unlinking happens
+     * after the lock is released.
+     */
+    private void purgeDirectory(Directory directory) throws IOException, InterruptedException {
+        Path directoryPath = Paths.get(directory.getFullPath());
+        Path purgingPath = getPurgingPath().resolve(directoryPath.getFileName());
+        String pattern = directoryService.subtreePattern(directoryPath);
+
+        List<File> keyed = transactionTemplate.execute(status -> {
+            CoordinationService.Fence fence = coordinationService.lockTree();
+            if (directoryRepository.findById(directory.getId())
+                    .filter(current -> current.isDeleted() && Objects.equals(current.getDeletedAt(), directory.getDeletedAt()))
+                    .isEmpty()) {
+                return null;
+            }
+            List<File> withKeys = fileRepository.findWithStorageKeyByPathPattern(pattern);
+            fileRepository.deleteByPathPattern(pattern);
+            directoryRepository.deleteByPathPattern(pattern);
+            directoryRepository.deleteById(directory.getId());
+            try {
+                coordinationService.fenced(fence, () -> {
+                    if (Files.exists(directoryPath)) {
+                        mappedFileService.releaseUnder(directoryPath);
+                        Files.createDirectories(purgingPath.getParent());
+                        Files.move(directoryPath, purgingPath, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return withKeys;
+        });
+        if (keyed == null) {
+            return;
+        }
+
+        deleteRecursively(purgingPath);
+        // After the rows, so keys shared with copies elsewhere are kept
+        for (File file : keyed) {
+            fileStorageService.deleteStoredContent(file.getFilePath(), file.getSegmentId(), file.getStorageKey(), file.getStorageTier());
+        }
+    }
+
+    private Path getPurgingPath() {
+        return directoryService.getTrashPath().resolve(".purging");
+    }
+
+    /**
+     * Unlink folders left claimed but not deleted, e.g. by an instance that stopped midway
+     */
+    private void sweepPurging() throws IOException, InterruptedException {
+        if (!Files.isDirectory(getPurgingPath())) {
+            return;
+        }
+        List<Path> leftovers;
+        try (Stream<Path> entries = Files.list(getPurgingPath())) {
+            leftovers = entries.toList();
+        }
+        for (Path leftover : leftovers) {
+            deleteRecursively(leftover);
+        }
+    }
+
+    /**
+     * Delete a tree, tolerating another instance deleting the same tree at the same time
+     */
+    private void deleteRecursively(Path root) throws IOException, InterruptedException {
+        int[] deletedInBatch = {0};
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.deleteIfExists(file);
+                    if (++deletedInBatch[0] >= batchSize) {
+                        deletedInBatch[0] = 0;
+                        try {
+                            pause();
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    if (exc instanceof NoSuchFileException) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw exc;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.deleteIfExists(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (NoSuchFileException e) {
+            // Already gone
+        } catch (IOException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                throw (InterruptedException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void pause() throws InterruptedException {
+        if (batchPauseMs > 0) {
+            Thread.sleep(batchPauseMs);
+        }
+    }
+}
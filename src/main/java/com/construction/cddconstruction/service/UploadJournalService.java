@@ -0,0 +1,315 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.repository.FileRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Makes an upload and its metadata row appear together or not at all. Content is written
+ * to a staging file, an intent record naming the staging and final path is appended to a
+ * write-ahead journal, the blob is published with an atomic rename and only then is the
+ * row inserted. An intent without a commit record found on startup means the application
+ * died in between: the published blob is removed unless its row made it to the database.
+ *
+ * The fsync policy trades durability against throughput: "per-file" forces every staging
+ * file, journal record and directory entry; "group" forces staging files but shares one
+ * journal force between all uploads arriving within the group window; "none" leaves
+ * flushing to the OS (crash leftovers are still cleaned up, recent uploads may be lost).
+ *
+ * With coordination enabled, every instance sharing the volume keeps its journal and
+ * staging area in a directory of its own node id, and only replays and cleans up those.
+ */
+@Service
+public class UploadJournalService {
+
+    private static final String STAGING_DIR_NAME = ".staging";
+    private static final String JOURNAL_DIR_NAME = ".journal";
+    private static final String JOURNAL_FILE_NAME = "uploads.log";
+
+    public enum FsyncPolicy { PER_FILE, GROUP, NONE }
+
+    /**
+     * A published upload whose metadata row is not committed yet
+     */
+    public record Ticket(String id, Path targetPath) {}
+
+    @Value("${file.upload-dir:./uploads}")
+    private String baseUploadDir;
+
+    @Value("${file.upload.fsync:group}")
+    private String fsync;
+
+    // How long the first upload of a group waits for others before forcing the journal
+    @Value("${file.upload.group-commit-ms:2}")
+    private long groupCommitMs;
+
+    // The journal is truncated once it is larger than this and no upload is in flight
+    @Value("${file.upload.journal-max-bytes:1048576}")
+    private long journalMaxBytes;
+
+    @Autowired
+    private FileRepository fileRepository;
+
+    @Autowired
+    private CoordinationService coordinationService;
+
+    private final AtomicBoolean recovered = new AtomicBoolean();
+    private final Object appendLock = new Object();
+    private final Object syncLock = new Object();
+
+    private FsyncPolicy policy;
+    private FileChannel journal;
+    private long appendedPosition;   // guarded by appendLock
+    private int inFlight;            // guarded by appendLock
+    private long durablePosition;    // guarded by syncLock
+    private boolean syncing;         // guarded by syncLock
+
+    /**
+     * Replay the journal before anything else touches the upload tree (reconciliation and
+     * the watcher start on ApplicationReadyEvent, which comes later)
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    public void recover() throws IOException {
+        if (!recovered.compareAndSet(false, true)) {
+            return;
+        }
+        policy = FsyncPolicy.valueOf(fsync.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+
+        Path journalPath = nodeDirectory(JOURNAL_DIR_NAME).resolve(JOURNAL_FILE_NAME);
+        Files.createDirectories(journalPath.getParent());
+        Files.createDirectories(getStagingPath());
+
+        if (Files.exists(journalPath)) {
+            replay(Files.readAllLines(journalPath, StandardCharsets.UTF_8));
+        }
+        cleanStagingArea();
+
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        forceDirectory(journalPath.getParent());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * A fresh staging file for content that is not published yet
+     */
+    public Path newStagingFile() throws IOException {
+        return Files.createTempFile(getStagingPath(), "upload-", ".part");
+    }
+
+    /**
+     * Make the staged content durable, log the intent and move it to its final path.
+     * The caller must follow up with {@link #commit} once the row is saved, or {@link #abort}.
+     */
+    public Ticket publish(Path stagingPath, Path targetPath) throws IOException {
+        if (policy != FsyncPolicy.NONE) {
+            try (FileChannel channel = FileChannel.open(stagingPath, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+
+        Ticket ticket = new Ticket(UUID.randomUUID().toString(), targetPath);
+        long position;
+        synchronized (appendLock) {
+            inFlight++;
+            position = append("INTENT\t" + ticket.id() + "\t" + stagingPath + "\t" + targetPath);
+        }
+
+        try {
+            awaitDurable(position);
+            Files.move(stagingPath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+            if (policy == FsyncPolicy.PER_FILE) {
+                forceDirectory(targetPath.getParent());
+            }
+            return ticket;
+
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(stagingPath);
+            finish(ticket, "ABORT");
+            throw e;
+        }
+    }
+
+    /**
+     * The row for a published upload is committed
+     */
+    public void commit(Ticket ticket) {
+        finish(ticket, "COMMIT");
+    }
+
+    /**
+     * Saving the row failed: take the published blob back out
+     */
+    public void abort(Ticket ticket) {
+        try {
+            Files.deleteIfExists(ticket.targetPath());
+        } catch (IOException e) {
+            System.err.println("❌ Could not remove aborted upload " + ticket.targetPath() + ": " + e.getMessage());
+        }
+        finish(ticket, "ABORT");
+    }
+
+    public Path getStagingPath() {
+        return nodeDirectory(STAGING_DIR_NAME);
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private Path nodeDirectory(String name) {
+        Path directory = Paths.get(baseUploadDir, name);
+        return coordinationService.isEnabled() ? directory.resolve(coordinationService.getNodeId()) : directory;
+    }
+
+    private void finish(Ticket ticket, String outcome) {
+        synchronized (appendLock) {
+            try {
+                // Outcome records are not forced: a lost one only makes recovery look the row up again
+                append(outcome + "\t" + ticket.id());
+                inFlight--;
+                if (inFlight == 0 && appendedPosition > journalMaxBytes) {
+                    journal.truncate(0);
+                    journal.position(0);
+                    appendedPosition = 0;
+                    synchronized (syncLock) {
+                        durablePosition = 0;
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("❌ Could not write upload journal: " + e.getMessage());
+            }
+        }
+    }
+
+    private long append(String record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+        appendedPosition = journal.position();
+        return appendedPosition;
+    }
+
+    /**
+     * Wait until the journal is forced up to the given position. With group commit the first
+     * waiter sleeps for the group window and forces once for everybody who appended meanwhile.
+     */
+    private void awaitDurable(long position) throws IOException {
+        if (policy == FsyncPolicy.NONE) {
+            return;
+        }
+        while (true) {
+            synchronized (syncLock) {
+                while (syncing && durablePosition < position) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for the upload journal", e);
+                    }
+                }
+                if (durablePosition >= position) {
+                    return;
+                }
+                syncing = true;
+            }
+
+            long target;
+            boolean forced = false;
+            try {
+                if (policy == FsyncPolicy.GROUP && groupCommitMs > 0) {
+                    Thread.sleep(groupCommitMs);
+                }
+                synchronized (appendLock) {
+                    target = appendedPosition;
+                }
+                journal.force(false);
+                forced = true;
+                synchronized (syncLock) {
+                    durablePosition = Math.max(durablePosition, target);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while forcing the upload journal", e);
+            } finally {
+                synchronized (syncLock) {
+                    syncing = false;
+                    syncLock.notifyAll();
+                }
+            }
+            if (!forced) {
+                throw new IOException("Upload journal could not be forced");
+            }
+        }
+    }
+
+    private void replay(List<String> lines) {
+        Map<String, String[]> pending = new LinkedHashMap<>();
+        for (String line : lines) {
+            String[] parts = line.split("\t");
+            if (parts.length == 4 && "INTENT".equals(parts[0])) {
+                pending.put(parts[1], parts);
+            } else if (parts.length == 2 && ("COMMIT".equals(parts[0]) || "ABORT".equals(parts[0]))) {
+                pending.remove(parts[1]);
+            }
+            // Anything else is a torn last line from the crash
+        }
+
+        for (String[] intent : pending.values()) {
+            Path stagingPath = Paths.get(intent[2]);
+            Path targetPath = Paths.get(intent[3]);
+            try {
+                Files.deleteIfExists(stagingPath);
+                if (fileRepository.findByFilePath(targetPath.toString()).isPresent()) {
+                    // The row committed, only the commit record was lost
+                    continue;
+                }
+                if (Files.deleteIfExists(targetPath)) {
+                    System.out.println("♻️ Upload journal rolled back unfinished upload: " + targetPath);
+                }
+            } catch (IOException e) {
+                System.err.println("❌ Could not roll back unfinished upload " + targetPath + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void cleanStagingArea() throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(getStagingPath())) {
+            for (Path entry : entries) {
+                // Directories are the staging areas of instances sharing the volume
+                if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.deleteIfExists(entry);
+                }
+            }
+        }
+    }
+
+    private void forceDirectory(Path directory) {
+        if (policy != FsyncPolicy.PER_FILE) {
+            return;
+        }
+        // Persists the rename itself; not supported on every platform (e.g. Windows)
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort
+        }
+    }
+}
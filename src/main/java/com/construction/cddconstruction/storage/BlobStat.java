@@ -0,0 +1,8 @@
+package com.construction.cddconstruction.storage;
+
+import java.time.Instant;
+
+/**
+ * Metadata of a stored blob
+ */
+public record BlobStat(String key, long size, Instant lastModified) {}
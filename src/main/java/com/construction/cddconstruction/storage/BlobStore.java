@@ -0,0 +1,44 @@
+package com.construction.cddconstruction.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+/**
+ * Where stored bytes live. Keys are '/'-separated relative names; a blob is written once
+ * and only ever replaced as a whole. Reading a key that does not exist fails with
+ * {@link java.nio.file.NoSuchFileException}, whatever the backend.
+ */
+public interface BlobStore {
+
+    /**
+     * Store exactly {@code length} bytes from the stream under the key. Readers see either
+     * the previous blob or the complete new one, never a partial write.
+     */
+    void put(String key, InputStream content, long length) throws IOException;
+
+    /**
+     * Stream the whole blob
+     */
+    InputStream get(String key) throws IOException;
+
+    /**
+     * Stream {@code length} bytes starting at {@code offset}
+     */
+    InputStream getRange(String key, long offset, long length) throws IOException;
+
+    /**
+     * Remove the blob. Returns false if the backend knows there was nothing to remove.
+     */
+    boolean delete(String key) throws IOException;
+
+    /**
+     * Size and modification time, or empty if there is no such blob
+     */
+    Optional<BlobStat> stat(String key) throws IOException;
+
+    /**
+     * Short backend name for logs and status output
+     */
+    String getName();
+}
@@ -0,0 +1,72 @@
+package com.construction.cddconstruction.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Blobs held on the heap, for tests and benchmarks that should not touch the disk.
+ * Everything is gone when the application stops.
+ */
+public class InMemoryBlobStore implements BlobStore {
+
+    private record Entry(byte[] content, Instant lastModified) {}
+
+    private final Map<String, Entry> blobs = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        if (length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Blob too large for the in-memory store: " + length + " bytes");
+        }
+        byte[] bytes = content.readNBytes((int) length);
+        if (bytes.length != length) {
+            throw new IOException("Blob shorter than expected: " + bytes.length + " of " + length + " bytes");
+        }
+        blobs.put(key, new Entry(bytes, Instant.now()));
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        return new ByteArrayInputStream(entry(key).content());
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) throws IOException {
+        byte[] content = entry(key).content();
+        int from = (int) Math.min(offset, content.length);
+        int count = (int) Math.min(length, content.length - from);
+        return new ByteArrayInputStream(content, from, count);
+    }
+
+    @Override
+    public boolean delete(String key) {
+        return blobs.remove(key) != null;
+    }
+
+    @Override
+    public Optional<BlobStat> stat(String key) {
+        Entry entry = blobs.get(key);
+        return entry == null
+                ? Optional.empty()
+                : Optional.of(new BlobStat(key, entry.content().length, entry.lastModified()));
+    }
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    private Entry entry(String key) throws NoSuchFileException {
+        Entry entry = blobs.get(key);
+        if (entry == null) {
+            throw new NoSuchFileException(key);
+        }
+        return entry;
+    }
+}
@@ -0,0 +1,259 @@
+package com.construction.cddconstruction.storage;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Blobs as objects in an S3-compatible bucket (AWS S3, MinIO, Ceph RGW, ...), spoken to
+ * over the JDK HTTP client with Signature Version 4. Requests use path-style addressing
+ * ({@code endpoint/bucket/key}) so a local stand-in works without DNS tricks. Payloads
+ * are sent unsigned; run against HTTPS outside a trusted network.
+ */
+public class S3BlobStore implements BlobStore {
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String SERVICE = "s3";
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final String EMPTY_PAYLOAD_HASH =
+            "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855";
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+    private static final DateTimeFormatter AMZ_DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final URI endpoint;
+    private final String region;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private final Duration timeout;
+    private final HttpClient httpClient;
+
+    public S3BlobStore(String endpoint, String region, String bucket, String accessKey, String secretKey, Duration timeout) {
+        this.endpoint = URI.create(endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint);
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+        this.timeout = timeout;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    @Override
+    public void put(String key, InputStream content, long length) throws IOException {
+        // S3 wants a Content-Length, so the stream is published with its known length instead of chunked
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.fromPublisher(
+                HttpRequest.BodyPublishers.ofInputStream(() -> content), length);
+        HttpResponse<InputStream> response = send(signed("PUT", key, UNSIGNED_PAYLOAD, body));
+        expectSuccess(key, response);
+        response.body().close();
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        HttpResponse<InputStream> response = send(signed("GET", key, EMPTY_PAYLOAD_HASH, HttpRequest.BodyPublishers.noBody()));
+        expectSuccess(key, response);
+        return response.body();
+    }
+
+    @Override
+    public InputStream getRange(String key, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        HttpRequest.Builder request = signed("GET", key, EMPTY_PAYLOAD_HASH, HttpRequest.BodyPublishers.noBody())
+                .header("Range", "bytes=" + offset + "-" + (offset + length - 1));
+        HttpResponse<InputStream> response = send(request);
+        if (response.statusCode() == 416) {
+            // Range starts past the end of the object
+            response.body().close();
+            return InputStream.nullInputStream();
+        }
+        expectSuccess(key, response);
+        // A server ignoring Range answers 200 with the whole object
+        if (response.statusCode() == 200) {
+            InputStream in = response.body();
+            in.skipNBytes(offset);
+            return new LimitedInputStream(in, length);
+        }
+        return response.body();
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        // S3 answers 204 whether or not the object existed
+        HttpResponse<InputStream> response = send(signed("DELETE", key, EMPTY_PAYLOAD_HASH, HttpRequest.BodyPublishers.noBody()));
+        if (response.statusCode() == 404) {
+            response.body().close();
+            return false;
+        }
+        expectSuccess(key, response);
+        response.body().close();
+        return true;
+    }
+
+    @Override
+    public Optional<BlobStat> stat(String key) throws IOException {
+        HttpResponse<InputStream> response = send(signed("HEAD", key, EMPTY_PAYLOAD_HASH, HttpRequest.BodyPublishers.noBody()));
+        response.body().close();
+        if (response.statusCode() == 404) {
+            return Optional.empty();
+        }
+        expectSuccess(key, response);
+
+        long size = response.headers().firstValueAsLong("Content-Length").orElse(0);
+        Instant lastModified = response.headers().firstValue("Last-Modified")
+                .map(value -> ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant())
+                .orElse(null);
+        return Optional.of(new BlobStat(key, size, lastModified));
+    }
+
+    @Override
+    public String getName() {
+        return "s3";
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private HttpResponse<InputStream> send(HttpRequest.Builder request) throws IOException {
+        try {
+            return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while talking to the object store", e);
+        }
+    }
+
+    private void expectSuccess(String key, HttpResponse<InputStream> response) throws IOException {
+        int status = response.statusCode();
+        if (status >= 200 && status < 300) {
+            return;
+        }
+        String detail;
+        try (InputStream in = response.body()) {
+            detail = new String(in.readNBytes(512), StandardCharsets.UTF_8);
+        }
+        if (status == 404) {
+            throw new NoSuchFileException(key);
+        }
+        throw new IOException("Object store answered " + status + " for " + key + ": " + detail);
+    }
+
+    /**
+     * A request carrying the SigV4 headers. Only host, x-amz-content-sha256 and x-amz-date
+     * are signed, so headers added afterwards (e.g. Range) don't invalidate the signature.
+     */
+    private HttpRequest.Builder signed(String method, String key, String payloadHash, HttpRequest.BodyPublisher body) {
+        String canonicalUri = "/" + encode(bucket) + "/" + encodePath(key);
+        URI uri = URI.create(endpoint + canonicalUri);
+
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        String amzDate = AMZ_DATE.format(now);
+        String day = AMZ_DAY.format(now);
+        String scope = day + "/" + region + "/" + SERVICE + "/aws4_request";
+        String signedHeaders = "host;x-amz-content-sha256;x-amz-date";
+
+        String canonicalRequest = method + "\n"
+                + canonicalUri + "\n"
+                + "\n"
+                + "host:" + hostHeader(uri) + "\n"
+                + "x-amz-content-sha256:" + payloadHash + "\n"
+                + "x-amz-date:" + amzDate + "\n"
+                + "\n"
+                + signedHeaders + "\n"
+                + payloadHash;
+
+        String stringToSign = ALGORITHM + "\n"
+                + amzDate + "\n"
+                + scope + "\n"
+                + HexFormat.of().formatHex(sha256(canonicalRequest));
+
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), day);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, SERVICE);
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = HexFormat.of().formatHex(hmac(signingKey, stringToSign));
+
+        return HttpRequest.newBuilder(uri)
+                .method(method, body)
+                .timeout(timeout)
+                .header("x-amz-date", amzDate)
+                .header("x-amz-content-sha256", payloadHash)
+                .header("Authorization", ALGORITHM + " Credential=" + accessKey + "/" + scope
+                        + ", SignedHeaders=" + signedHeaders + ", Signature=" + signature);
+    }
+
+    /**
+     * The Host header as the HTTP client will send it: default ports are left out
+     */
+    private String hostHeader(URI uri) {
+        int port = uri.getPort();
+        boolean defaultPort = port == -1
+                || ("http".equalsIgnoreCase(uri.getScheme()) && port == 80)
+                || ("https".equalsIgnoreCase(uri.getScheme()) && port == 443);
+        return defaultPort ? uri.getHost() : uri.getHost() + ":" + port;
+    }
+
+    private String encodePath(String key) {
+        StringBuilder path = new StringBuilder();
+        for (String segment : key.split("/", -1)) {
+            if (path.length() > 0) {
+                path.append('/');
+            }
+            path.append(encode(segment));
+        }
+        return path.toString();
+    }
+
+    /**
+     * RFC 3986 percent-encoding as SigV4 expects it: only unreserved characters stay as they are
+     */
+    private String encode(String value) {
+        StringBuilder encoded = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '~') {
+                encoded.append(c);
+            } else {
+                encoded.append('%').append(String.format("%02X", b & 0xFF));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] hmac(byte[] key, String value) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+-- Photo capture date and dimensions, read from EXIF on upload, and the timeline index
+
+ALTER TABLE files ADD COLUMN IF NOT EXISTS captured_at TIMESTAMP(6);
+ALTER TABLE files ADD COLUMN IF NOT EXISTS image_width INTEGER;
+ALTER TABLE files ADD COLUMN IF NOT EXISTS image_height INTEGER;
+
+CREATE INDEX IF NOT EXISTS idx_files_captured_at ON files (captured_at);
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 10, 'photo metadata', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 10);
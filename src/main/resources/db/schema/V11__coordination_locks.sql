@@ -0,0 +1,15 @@
+-- Named locks shared by instances running against the same catalog and uploads volume
+
+CREATE TABLE IF NOT EXISTS coordination_locks (
+    name           VARCHAR(128)  NOT NULL PRIMARY KEY,
+    fencing_token  BIGINT        NOT NULL,
+    holder         VARCHAR(255),
+    acquired_at    TIMESTAMP(6)
+);
+
+-- Fencing tokens; a sequence never hands out a value again, even if the acquisition rolls back
+CREATE SEQUENCE IF NOT EXISTS coordination_fence_seq;
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 11, 'coordination locks', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 11);
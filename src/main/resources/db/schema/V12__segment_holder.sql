@@ -0,0 +1,7 @@
+-- Instances sharing the uploads volume each append to a segment of their own
+
+ALTER TABLE storage_segments ADD COLUMN IF NOT EXISTS holder VARCHAR(255);
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 12, 'segment holder', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 12);
@@ -0,0 +1,76 @@
+-- Baseline schema for the persistent metadata store (profile "persistent").
+-- Every script is idempotent and records its version, so all of them run on each start.
+
+CREATE TABLE IF NOT EXISTS schema_version (
+    version      INTEGER      NOT NULL PRIMARY KEY,
+    description  VARCHAR(255) NOT NULL,
+    installed_at TIMESTAMP    NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS directories (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name             VARCHAR(255)  NOT NULL,
+    full_path        VARCHAR(1024) NOT NULL,
+    parent_id        BIGINT,
+    directory_type   VARCHAR(255),
+    created_at       TIMESTAMP(6),
+    updated_at       TIMESTAMP(6),
+    file_count       BIGINT        NOT NULL DEFAULT 0,
+    size_bytes       BIGINT        NOT NULL DEFAULT 0,
+    total_file_count BIGINT        NOT NULL DEFAULT 0,
+    total_size_bytes BIGINT        NOT NULL DEFAULT 0,
+    deleted          BOOLEAN       NOT NULL DEFAULT FALSE,
+    deleted_at       TIMESTAMP(6),
+    CONSTRAINT uk_directories_full_path UNIQUE (full_path)
+);
+
+CREATE TABLE IF NOT EXISTS files (
+    id               BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    original_name    VARCHAR(255)  NOT NULL,
+    file_path        VARCHAR(1024) NOT NULL,
+    file_size        BIGINT,
+    content_type     VARCHAR(255),
+    directory_id     BIGINT,
+    created_at       TIMESTAMP(6),
+    updated_at       TIMESTAMP(6),
+    storage_encoding VARCHAR(255),
+    stored_size      BIGINT,
+    deleted          BOOLEAN       NOT NULL DEFAULT FALSE,
+    deleted_at       TIMESTAMP(6),
+    CONSTRAINT uk_files_file_path UNIQUE (file_path)
+);
+
+CREATE TABLE IF NOT EXISTS file_revisions (
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    file_id         BIGINT       NOT NULL,
+    revision_number INTEGER      NOT NULL,
+    original_name   VARCHAR(255) NOT NULL,
+    file_size       BIGINT,
+    content_type    VARCHAR(255),
+    created_at      TIMESTAMP(6),
+    CONSTRAINT uk_file_revisions_file_revision UNIQUE (file_id, revision_number)
+);
+
+CREATE TABLE IF NOT EXISTS file_revision_chunks (
+    revision_id BIGINT      NOT NULL,
+    chunk_index INTEGER     NOT NULL,
+    chunk_hash  VARCHAR(64) NOT NULL,
+    PRIMARY KEY (revision_id, chunk_index),
+    CONSTRAINT fk_file_revision_chunks_revision FOREIGN KEY (revision_id) REFERENCES file_revisions (id)
+);
+
+CREATE TABLE IF NOT EXISTS blob_chunks (
+    hash       VARCHAR(64) NOT NULL PRIMARY KEY,
+    chunk_size INTEGER     NOT NULL,
+    ref_count  INTEGER     NOT NULL,
+    created_at TIMESTAMP(6)
+);
+
+-- Lookups on the hot paths: children of a directory, a child by name, files of a directory.
+-- (parent_id, name) also serves plain parent_id lookups through its leading column.
+CREATE INDEX IF NOT EXISTS idx_directories_parent_name ON directories (parent_id, name);
+CREATE INDEX IF NOT EXISTS idx_files_directory_id ON files (directory_id);
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 1, 'baseline', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 1);
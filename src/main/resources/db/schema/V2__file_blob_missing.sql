@@ -0,0 +1,7 @@
+-- Flag set by the catalog reconciliation when a file row has no blob on disk
+
+ALTER TABLE files ADD COLUMN IF NOT EXISTS blob_missing BOOLEAN NOT NULL DEFAULT FALSE;
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 2, 'file blob_missing flag', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 2);
@@ -0,0 +1,20 @@
+-- Persisted change log behind the delta-sync API, and the content hash it reports per file
+
+CREATE TABLE IF NOT EXISTS change_log (
+    id            BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    entity_type   VARCHAR(16)   NOT NULL,
+    entity_id     BIGINT,
+    action        VARCHAR(16)   NOT NULL,
+    path          VARCHAR(1024),
+    previous_path VARCHAR(1024),
+    created_at    TIMESTAMP(6)  NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_change_log_entity ON change_log (entity_type, entity_id);
+CREATE INDEX IF NOT EXISTS idx_change_log_created_at ON change_log (created_at);
+
+ALTER TABLE files ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 3, 'change log and file content hash', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 3);
@@ -0,0 +1,8 @@
+-- Integrity scrubber state per file
+
+ALTER TABLE files ADD COLUMN IF NOT EXISTS checksum_verified_at TIMESTAMP(6);
+ALTER TABLE files ADD COLUMN IF NOT EXISTS checksum_mismatch BOOLEAN NOT NULL DEFAULT FALSE;
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 4, 'file checksum verification', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 4);
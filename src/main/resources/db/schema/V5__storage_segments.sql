@@ -0,0 +1,18 @@
+-- Packed storage: small blobs appended into shared segment files
+
+CREATE TABLE IF NOT EXISTS storage_segments (
+    id         BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    size_bytes BIGINT       NOT NULL DEFAULT 0,
+    sealed     BOOLEAN      NOT NULL DEFAULT FALSE,
+    retired    BOOLEAN      NOT NULL DEFAULT FALSE,
+    created_at TIMESTAMP(6)
+);
+
+ALTER TABLE files ADD COLUMN IF NOT EXISTS segment_id BIGINT;
+ALTER TABLE files ADD COLUMN IF NOT EXISTS segment_offset BIGINT;
+
+CREATE INDEX IF NOT EXISTS idx_files_segment_id ON files (segment_id);
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 5, 'packed storage segments', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 5);
@@ -0,0 +1,7 @@
+-- Pluggable storage: content of files kept in a non-local blob store
+
+ALTER TABLE files ADD COLUMN IF NOT EXISTS storage_key VARCHAR(1024);
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 6, 'file storage key', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 6);
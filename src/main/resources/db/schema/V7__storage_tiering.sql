@@ -0,0 +1,10 @@
+-- Hot/cold tiering: per-file access tracking and the tier holding the content
+
+ALTER TABLE files ADD COLUMN IF NOT EXISTS storage_tier VARCHAR(8);
+ALTER TABLE files ADD COLUMN IF NOT EXISTS last_accessed_at TIMESTAMP(6);
+
+CREATE INDEX IF NOT EXISTS idx_files_last_accessed_at ON files (last_accessed_at);
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 7, 'storage tiering', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 7);
@@ -0,0 +1,7 @@
+-- Subtree copies share stored content: blob store and cold tier keys are reference counted
+
+CREATE INDEX IF NOT EXISTS idx_files_storage_key ON files (storage_key);
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 8, 'shared storage keys', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 8);
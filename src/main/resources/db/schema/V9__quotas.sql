@@ -0,0 +1,16 @@
+-- Storage quotas: who uploaded each file, and the last persisted usage counters
+
+ALTER TABLE files ADD COLUMN IF NOT EXISTS uploaded_by VARCHAR(255);
+
+CREATE TABLE IF NOT EXISTS quota_usage (
+    id          BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    scope       VARCHAR(16)   NOT NULL,
+    subject     VARCHAR(255)  NOT NULL,
+    used_bytes  BIGINT        NOT NULL,
+    updated_at  TIMESTAMP(6)  NOT NULL,
+    CONSTRAINT uk_quota_usage_scope_subject UNIQUE (scope, subject)
+);
+
+INSERT INTO schema_version (version, description, installed_at)
+    SELECT 9, 'storage quotas', CURRENT_TIMESTAMP
+    WHERE NOT EXISTS (SELECT 1 FROM schema_version WHERE version = 9);
@@ -0,0 +1,279 @@
+package com.construction.cddconstruction.service;
+
+import com.construction.cddconstruction.CddConstructionApplication;
+import com.construction.cddconstruction.entity.Directory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Several JVMs, each running the application as one instance, share one file H2 catalog
+ * (AUTO_SERVER) and one uploads folder, and race DirectoryService and ProvisioningService
+ * creates, renames, moves and deletes over the same few names.
+ */
+class CoordinationServiceContentionTest {
+
+    private static final int WORKERS = 4;
+    private static final int OPERATIONS = 40;
+    private static final int PROJECTS = 2;
+    private static final int NAMES = 4;
+    private static final int STRIPES = 4;
+
+    @TempDir
+    Path root;
+
+    @Test
+    void concurrentDirectoryChangesAcrossInstancesStayConsistent() throws Exception {
+        Path uploads = Files.createDirectories(root.resolve("uploads")).toAbsolutePath();
+        String url = "jdbc:h2:file:" + root.resolve("catalog").toAbsolutePath() + ";AUTO_SERVER=TRUE;LOCK_TIMEOUT=10000";
+
+        // Opened first, so this process hosts the server the workers connect to
+        try (Connection connection = DriverManager.getConnection(url, "sa", "password")) {
+            createPersistentSchema(connection);
+
+            List<Process> workers = new ArrayList<>();
+            for (int i = 0; i < WORKERS; i++) {
+                workers.add(new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-cp", System.getProperty("java.class.path"), Worker.class.getName(),
+                        url, uploads.toString(), "worker-" + i, String.valueOf(OPERATIONS))
+                        .redirectErrorStream(true)
+                        .redirectOutput(root.resolve("worker-" + i + ".log").toFile())
+                        .start());
+            }
+            for (int i = 0; i < WORKERS; i++) {
+                assertTrue(workers.get(i).waitFor(5, TimeUnit.MINUTES), "worker " + i + " timed out");
+                assertEquals(0, workers.get(i).exitValue(), Files.readString(root.resolve("worker-" + i + ".log")));
+            }
+
+            Map<Long, Path> livePaths = new HashMap<>();
+            Map<Long, Long> parents = new HashMap<>();
+            Map<Long, String> names = new HashMap<>();
+            List<Path> trashed = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rows = statement.executeQuery("SELECT id, name, full_path, parent_id, deleted FROM directories")) {
+                while (rows.next()) {
+                    Path path = Paths.get(rows.getString("full_path")).toAbsolutePath().normalize();
+                    if (rows.getBoolean("deleted")) {
+                        trashed.add(path);
+                        continue;
+                    }
+                    long id = rows.getLong("id");
+                    livePaths.put(id, path);
+                    names.put(id, rows.getString("name"));
+                    long parentId = rows.getLong("parent_id");
+                    parents.put(id, rows.wasNull() ? null : parentId);
+                }
+            }
+            assertFalse(livePaths.isEmpty(), "no directory survived");
+
+            // No name twice under one parent, and every row sits below its parent's path
+            Set<String> seen = new HashSet<>();
+            for (Long id : livePaths.keySet()) {
+                Long parentId = parents.get(id);
+                assertTrue(seen.add(parentId + "/" + names.get(id)), names.get(id) + " exists twice under " + parentId);
+                Path expected = parentId == null ? uploads.resolve(names.get(id)) : livePaths.get(parentId).resolve(names.get(id));
+                assertEquals(expected, livePaths.get(id), "directory " + id + " is not below its parent");
+            }
+
+            // The catalog and the volume agree both ways, outside the service folders (.trash, .journal, ...)
+            Set<Path> onDisk = new HashSet<>();
+            try (Stream<Path> walk = Files.walk(uploads)) {
+                walk.filter(Files::isDirectory)
+                        .filter(path -> !path.equals(uploads))
+                        .filter(path -> !uploads.relativize(path).getName(0).toString().startsWith("."))
+                        .forEach(path -> onDisk.add(path.toAbsolutePath().normalize()));
+            }
+            assertEquals(new HashSet<>(livePaths.values()), onDisk);
+
+            // Nothing is purged during the test, so every trashed subtree is still in the trash area
+            Path trash = uploads.resolve(".trash");
+            for (Path path : trashed) {
+                if (trash.equals(path.getParent())) {
+                    assertTrue(Files.isDirectory(path), path + " is missing from the trash");
+                }
+            }
+        }
+    }
+
+    @Test
+    void changesUnderATakenOverLockAreRejected() throws Exception {
+        CoordinationService coordination = coordinationService(root, memoryCatalog());
+        Path marker = root.resolve("marker");
+
+        coordination.fenced(new CoordinationService.Fence("names", 2), () -> Files.createFile(marker));
+
+        // An older holder
+        assertThrows(CoordinationService.StaleFenceException.class, () -> coordination.fenced(
+                new CoordinationService.Fence("names", 1), () -> Files.delete(marker)));
+        assertTrue(Files.exists(marker));
+
+        // The current holder again, and the next one
+        coordination.fenced(new CoordinationService.Fence("names", 2), () -> Files.writeString(marker, "again"));
+        coordination.fenced(new CoordinationService.Fence("names", 3), () -> Files.delete(marker));
+        assertFalse(Files.exists(marker));
+    }
+
+    @Test
+    void aRolledBackAcquisitionDoesNotBlockTheNextOne() throws Exception {
+        DataSource dataSource = memoryCatalog();
+        CoordinationService coordination = coordinationService(root, dataSource);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        Path folder = root.resolve("folder");
+
+        // The fence file records the token, then the transaction fails and takes the token with it
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            CoordinationService.Fence fence = coordination.lockNames(null);
+            fenced(coordination, fence, () -> Files.createDirectory(folder));
+            throw new IllegalStateException("rolled back after the disk change");
+        }));
+        assertTrue(Files.isDirectory(folder));
+
+        for (int i = 0; i < 2; i++) {
+            transactionTemplate.executeWithoutResult(status -> {
+                CoordinationService.Fence fence = coordination.lockNames(null);
+                fenced(coordination, fence, () -> {
+                    if (Files.exists(folder)) {
+                        Files.delete(folder);
+                    } else {
+                        Files.createDirectory(folder);
+                    }
+                });
+            });
+        }
+        assertTrue(Files.isDirectory(folder));
+    }
+
+    static CoordinationService coordinationService(Path uploads, DataSource dataSource) {
+        CoordinationService coordination = new CoordinationService();
+        ReflectionTestUtils.setField(coordination, "baseUploadDir", uploads.toString());
+        ReflectionTestUtils.setField(coordination, "enabled", true);
+        ReflectionTestUtils.setField(coordination, "nodeId", "");
+        ReflectionTestUtils.setField(coordination, "nameLockStripes", STRIPES);
+        ReflectionTestUtils.setField(coordination, "jdbcTemplate", new JdbcTemplate(dataSource));
+        ReflectionTestUtils.setField(coordination, "transactionManager", new DataSourceTransactionManager(dataSource));
+        coordination.init();
+        return coordination;
+    }
+
+    private static DataSource memoryCatalog() throws Exception {
+        DataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000", "sa", "");
+        try (Connection connection = dataSource.getConnection()) {
+            createSchema(connection);
+        }
+        return dataSource;
+    }
+
+    /**
+     * Every script of the persistent profile, in version order
+     */
+    private static void createPersistentSchema(Connection connection) throws IOException {
+        Resource[] scripts = new PathMatchingResourcePatternResolver().getResources("classpath:db/schema/V*__*.sql");
+        Arrays.sort(scripts, Comparator.comparingInt(script ->
+                Integer.parseInt(script.getFilename().substring(1, script.getFilename().indexOf("__")))));
+        for (Resource script : scripts) {
+            ScriptUtils.executeSqlScript(connection, script);
+        }
+    }
+
+    private static void createSchema(Connection connection) {
+        ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/schema/V1__baseline.sql"));
+        ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/schema/V11__coordination_locks.sql"));
+    }
+
+    private static void fenced(CoordinationService coordination, CoordinationService.Fence fence,
+                               CoordinationService.DiskChange change) {
+        try {
+            coordination.fenced(fence, change);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * One instance: the application with coordination on, doing random directory changes
+     * through the services. Rejected changes (name taken, lock timeout, moved away
+     * meanwhile) are expected; what the catalog and the volume end up with is checked
+     * by the test.
+     */
+    public static class Worker {
+
+        public static void main(String[] args) {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(CddConstructionApplication.class)
+                    .profiles("persistent")
+                    .properties(
+                            "spring.datasource.url=" + args[0],
+                            "spring.sql.init.mode=never",
+                            "spring.jpa.show-sql=false",
+                            "spring.h2.console.enabled=false",
+                            "server.port=0",
+                            "file.upload-dir=" + args[1],
+                            "file.coordination.enabled=true",
+                            "file.coordination.node-id=" + args[2],
+                            "file.coordination.name-lock-stripes=" + STRIPES,
+                            "file.coordination.poll-interval-ms=100",
+                            "file.reconcile.on-startup=false",
+                            "file.trash.retention-days=3650")
+                    .run();
+            int operations = Integer.parseInt(args[3]);
+
+            DirectoryService directoryService = context.getBean(DirectoryService.class);
+            Random random = new Random();
+            int applied = 0;
+            int rejected = 0;
+            for (int i = 0; i < operations; i++) {
+                List<Directory> live = directoryService.getAllDirectories();
+                try {
+                    int operation = live.isEmpty() ? 0 : random.nextInt(5);
+                    switch (operation) {
+                        case 0 -> directoryService.createRootDirectory("project-" + random.nextInt(PROJECTS));
+                        case 1 -> directoryService.createSubdirectory(pick(live, random), "folder-" + random.nextInt(NAMES));
+                        case 2 -> directoryService.renameDirectory(pick(live, random), "folder-" + random.nextInt(NAMES));
+                        case 3 -> directoryService.moveDirectory(pick(live, random), pick(live, random));
+                        default -> {
+                            if (!directoryService.deleteDirectory(pick(live, random))) {
+                                throw new RuntimeException("delete rejected");
+                            }
+                        }
+                    }
+                    applied++;
+                } catch (RuntimeException e) {
+                    rejected++;
+                }
+            }
+            System.out.println(args[2] + ": " + applied + " applied, " + rejected + " rejected");
+            System.exit(SpringApplication.exit(context));
+        }
+
+        private static Long pick(List<Directory> directories, Random random) {
+            return directories.get(random.nextInt(directories.size())).getId();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.construction.cddconstruction.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Small JPEGs with a hand-built EXIF APP1 segment, for the IFD walk in PhotoMetadataService
+ */
+class PhotoMetadataServiceTest {
+
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+    private static final int TAG_DATE_TIME_DIGITIZED = 0x9004;
+
+    private final PhotoMetadataService service = new PhotoMetadataService();
+
+    @TempDir
+    Path root;
+
+    @Test
+    void prefersDateTimeOriginalFromTheExifIfd() throws Exception {
+        byte[] jpeg = jpeg(exif(ByteOrder.LITTLE_ENDIAN, "2023:05:01 08:00:00", "2023:04:30 17:45:12", "2023:04:30 17:45:13"));
+
+        PhotoMetadataService.PhotoMetadata photo = service.extract(new ByteArrayInputStream(jpeg));
+
+        assertEquals(LocalDateTime.of(2023, 4, 30, 17, 45, 12), photo.capturedAt());
+        assertEquals(16, photo.width());
+        assertEquals(8, photo.height());
+    }
+
+    @Test
+    void fallsBackToDigitizedAndThenToIfd0DateTime() throws Exception {
+        byte[] digitized = jpeg(exif(ByteOrder.BIG_ENDIAN, "2023:05:01 08:00:00", null, "2023:04:30 17:45:13"));
+        byte[] ifd0Only = jpeg(exif(ByteOrder.BIG_ENDIAN, "2023:05:01 08:00:00", null, null));
+
+        assertEquals(LocalDateTime.of(2023, 4, 30, 17, 45, 13), service.extract(new ByteArrayInputStream(digitized)).capturedAt());
+        assertEquals(LocalDateTime.of(2023, 5, 1, 8, 0), service.extract(new ByteArrayInputStream(ifd0Only)).capturedAt());
+    }
+
+    @Test
+    void readsStagedFilesInPlace() throws Exception {
+        Path staged = root.resolve("staged.jpg");
+        Files.write(staged, jpeg(exif(ByteOrder.LITTLE_ENDIAN, null, "2023:04:30 17:45:12", null)));
+
+        PhotoMetadataService.PhotoMetadata photo = service.extract(staged);
+
+        assertEquals(LocalDateTime.of(2023, 4, 30, 17, 45, 12), photo.capturedAt());
+        assertEquals(16, photo.width());
+    }
+
+    @Test
+    void brokenOrMissingDatesStillGiveDimensions() throws Exception {
+        byte[] zeroDate = jpeg(exif(ByteOrder.LITTLE_ENDIAN, "0000:00:00 00:00:00", null, null));
+        byte[] truncated = jpeg(Arrays.copyOf(exif(ByteOrder.LITTLE_ENDIAN, null, "2023:04:30 17:45:12", null), 40));
+        byte[] outOfRange = exif(ByteOrder.LITTLE_ENDIAN, null, "2023:04:30 17:45:12", null);
+        // Point the EXIF IFD far past the end of the payload
+        ByteBuffer.wrap(outOfRange).order(ByteOrder.LITTLE_ENDIAN).putInt(6 + 8 + 2 + 12 + 8, 0x7FFF0000);
+
+        for (byte[] jpeg : new byte[][]{zeroDate, truncated, jpeg(outOfRange), jpeg(null)}) {
+            PhotoMetadataService.PhotoMetadata photo = service.extract(new ByteArrayInputStream(jpeg));
+            assertNull(photo.capturedAt());
+            assertEquals(16, photo.width());
+            assertEquals(8, photo.height());
+        }
+    }
+
+    @Test
+    void unknownContentHasNoMetadata() {
+        byte[] text = "not an image".getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(PhotoMetadataService.PhotoMetadata.NONE, service.extract(new ByteArrayInputStream(text)));
+        assertEquals(PhotoMetadataService.PhotoMetadata.NONE, service.extract(root.resolve("missing.jpg")));
+    }
+
+    // =================== HELPER METHODS ===================
+
+    /**
+     * A 16x8 JPEG, with the APP1 payload (if any) right after the JFIF APP0 marker
+     */
+    private static byte[] jpeg(byte[] app1) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(16, 8, BufferedImage.TYPE_INT_RGB), "jpg", encoded);
+        byte[] plain = encoded.toByteArray();
+        if (app1 == null) {
+            return plain;
+        }
+
+        // SOI, then APP0 with its big-endian length
+        int app0End = 4 + (((plain[4] & 0xFF) << 8) | (plain[5] & 0xFF));
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        jpeg.write(plain, 0, app0End);
+        jpeg.write(0xFF);
+        jpeg.write(0xE1);
+        jpeg.write((app1.length + 2) >> 8);
+        jpeg.write((app1.length + 2) & 0xFF);
+        jpeg.write(app1);
+        jpeg.write(plain, app0End, plain.length - app0End);
+        return jpeg.toByteArray();
+    }
+
+    /**
+     * "Exif\0\0" and a TIFF structure: IFD0 with DateTime and the EXIF IFD pointer, then
+     * the EXIF IFD with DateTimeOriginal and DateTimeDigitized, then the values. Null
+     * dates are left out.
+     */
+    private static byte[] exif(ByteOrder order, String dateTime, String original, String digitized) {
+        ByteBuffer tiff = ByteBuffer.allocate(256).order(order);
+        tiff.put((byte) (order == ByteOrder.BIG_ENDIAN ? 'M' : 'I'));
+        tiff.put((byte) (order == ByteOrder.BIG_ENDIAN ? 'M' : 'I'));
+        tiff.putShort((short) 42);
+        tiff.putInt(8);
+
+        // IFD0 at 8: two entries, then the next-IFD offset
+        int exifIfd = 8 + 2 + 2 * 12 + 4;
+        // EXIF IFD: two entries, then the next-IFD offset; values follow
+        int values = exifIfd + 2 + 2 * 12 + 4;
+
+        tiff.putShort((short) 2);
+        values = entry(tiff, TAG_DATE_TIME, dateTime, values);
+        tiff.putShort((short) TAG_EXIF_IFD).putShort((short) 4).putInt(1).putInt(exifIfd);
+        tiff.putInt(0);
+
+        tiff.putShort((short) 2);
+        values = entry(tiff, TAG_DATE_TIME_ORIGINAL, original, values);
+        entry(tiff, TAG_DATE_TIME_DIGITIZED, digitized, values);
+        tiff.putInt(0);
+
+        ByteArrayOutputStream exif = new ByteArrayOutputStream();
+        exif.writeBytes("Exif\0\0".getBytes(StandardCharsets.US_ASCII));
+        exif.write(tiff.array(), 0, tiff.capacity());
+        return exif.toByteArray();
+    }
+
+    // An ASCII entry whose value is stored at the given offset; an absent date gets an unrelated tag
+    private static int entry(ByteBuffer tiff, int tag, String value, int offset) {
+        if (value == null) {
+            tiff.putShort((short) 0x010F).putShort((short) 2).putInt(4).putInt(0);
+            return offset;
+        }
+        byte[] ascii = (value + "\0").getBytes(StandardCharsets.US_ASCII);
+        tiff.putShort((short) tag).putShort((short) 2).putInt(ascii.length).putInt(offset);
+        tiff.put(offset, ascii);
+        return offset + ascii.length;
+    }
+}
@@ -0,0 +1,267 @@
+package com.construction.cddconstruction.storage;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * S3BlobStore against an embedded HTTP stand-in for a bucket, which checks the SigV4
+ * signature of every request the way S3 does and answers 403 when it doesn't match
+ */
+class S3BlobStoreTest {
+
+    private static final String REGION = "eu-central-1";
+    private static final String BUCKET = "site-files";
+    private static final String ACCESS_KEY = "test-access";
+    private static final String SECRET_KEY = "test-secret";
+    private static final Pattern AUTHORIZATION = Pattern.compile(
+            "AWS4-HMAC-SHA256 Credential=([^/]+)/([^,]+), SignedHeaders=([^,]+), Signature=([0-9a-f]{64})");
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean ignoreRange;
+
+    private HttpServer server;
+    private S3BlobStore store;
+
+    @BeforeEach
+    void startBucket() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        store = new S3BlobStore("http://127.0.0.1:" + server.getAddress().getPort() + "/", REGION, BUCKET,
+                ACCESS_KEY, SECRET_KEY, Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void stopBucket() {
+        server.stop(0);
+    }
+
+    @Test
+    void putThenGetReturnsTheSameBytes() throws Exception {
+        byte[] content = "Level 3 slab pour, grid C-D".getBytes(StandardCharsets.UTF_8);
+
+        store.put("blobs/report.txt", new ByteArrayInputStream(content), content.length);
+
+        assertArrayEquals(content, objects.get("/" + BUCKET + "/blobs/report.txt"));
+        try (InputStream in = store.get("blobs/report.txt")) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+        assertEquals(List.of("PUT /" + BUCKET + "/blobs/report.txt", "GET /" + BUCKET + "/blobs/report.txt"), requests);
+    }
+
+    @Test
+    void keysArePercentEncodedPerSegment() throws Exception {
+        byte[] content = {1, 2, 3};
+
+        store.put("blobs/Plan A+B (rev 2)/façade.pdf", new ByteArrayInputStream(content), content.length);
+
+        assertTrue(objects.containsKey("/" + BUCKET + "/blobs/Plan%20A%2BB%20%28rev%202%29/fa%C3%A7ade.pdf"));
+        try (InputStream in = store.get("blobs/Plan A+B (rev 2)/façade.pdf")) {
+            assertArrayEquals(content, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void rangedGetReturnsOnlyTheRange() throws Exception {
+        byte[] content = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+        store.put("segments/1", new ByteArrayInputStream(content), content.length);
+
+        try (InputStream in = store.getRange("segments/1", 4, 6)) {
+            assertEquals("456789", new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+        // Past the end: 416 from the bucket, nothing to read
+        try (InputStream in = store.getRange("segments/1", 32, 4)) {
+            assertEquals(0, in.readAllBytes().length);
+        }
+
+        // A server that ignores Range sends everything; the store cuts the range out itself
+        ignoreRange = true;
+        try (InputStream in = store.getRange("segments/1", 10, 3)) {
+            assertEquals("abc", new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void deleteRemovesTheObject() throws Exception {
+        byte[] content = {42};
+        store.put("blobs/old", new ByteArrayInputStream(content), content.length);
+
+        assertTrue(store.delete("blobs/old"));
+
+        assertFalse(objects.containsKey("/" + BUCKET + "/blobs/old"));
+        assertThrows(NoSuchFileException.class, () -> store.get("blobs/old"));
+    }
+
+    @Test
+    void missingObjectsAreReportedAsMissing() throws Exception {
+        assertThrows(NoSuchFileException.class, () -> store.get("blobs/none"));
+        assertThrows(NoSuchFileException.class, () -> store.getRange("blobs/none", 0, 10));
+        assertTrue(store.stat("blobs/none").isEmpty());
+    }
+
+    @Test
+    void statReportsTheSize() throws Exception {
+        byte[] content = new byte[1234];
+        store.put("blobs/sized", new ByteArrayInputStream(content), content.length);
+
+        BlobStat stat = store.stat("blobs/sized").orElseThrow();
+
+        assertEquals("blobs/sized", stat.key());
+        assertEquals(1234, stat.size());
+    }
+
+    @Test
+    void requestsSignedWithAnotherSecretAreRejected() {
+        S3BlobStore wrongSecret = new S3BlobStore("http://127.0.0.1:" + server.getAddress().getPort(), REGION, BUCKET,
+                ACCESS_KEY, "not-the-secret", Duration.ofSeconds(5));
+
+        IOException e = assertThrows(IOException.class,
+                () -> wrongSecret.put("blobs/x", new ByteArrayInputStream(new byte[]{1}), 1));
+
+        assertTrue(e.getMessage().contains("403"), e.getMessage());
+        assertTrue(objects.isEmpty());
+    }
+
+    // =================== HELPER METHODS ===================
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getRawPath();
+            requests.add(method + " " + path);
+            byte[] body = exchange.getRequestBody().readAllBytes();
+
+            if (!signatureMatches(exchange, method, path)) {
+                respond(exchange, 403, "SignatureDoesNotMatch".getBytes(StandardCharsets.UTF_8), method);
+                return;
+            }
+
+            byte[] object = objects.get(path);
+            switch (method) {
+                case "PUT" -> {
+                    objects.put(path, body);
+                    respond(exchange, 200, new byte[0], method);
+                }
+                case "DELETE" -> {
+                    objects.remove(path);
+                    respond(exchange, 204, null, method);
+                }
+                case "GET", "HEAD" -> {
+                    if (object == null) {
+                        respond(exchange, 404, "NoSuchKey".getBytes(StandardCharsets.UTF_8), method);
+                        return;
+                    }
+                    String range = exchange.getRequestHeaders().getFirst("Range");
+                    if (range == null || ignoreRange) {
+                        respond(exchange, 200, object, method);
+                        return;
+                    }
+                    String[] bounds = range.substring("bytes=".length()).split("-");
+                    int first = Integer.parseInt(bounds[0]);
+                    int last = Math.min(Integer.parseInt(bounds[1]), object.length - 1);
+                    if (first >= object.length) {
+                        respond(exchange, 416, new byte[0], method);
+                        return;
+                    }
+                    exchange.getResponseHeaders().set("Content-Range", "bytes " + first + "-" + last + "/" + object.length);
+                    respond(exchange, 206, Arrays.copyOfRange(object, first, last + 1), method);
+                }
+                default -> respond(exchange, 405, new byte[0], method);
+            }
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body, String method) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        if ("HEAD".equals(method)) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Recompute the signature from what arrived, as the bucket would
+     */
+    private boolean signatureMatches(HttpExchange exchange, String method, String path) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        String amzDate = exchange.getRequestHeaders().getFirst("x-amz-date");
+        String payloadHash = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        if (authorization == null || amzDate == null || payloadHash == null) {
+            return false;
+        }
+        Matcher matcher = AUTHORIZATION.matcher(authorization);
+        if (!matcher.matches() || !ACCESS_KEY.equals(matcher.group(1))) {
+            return false;
+        }
+        String scope = matcher.group(2);
+        String signedHeaders = matcher.group(3);
+        String day = amzDate.substring(0, 8);
+        if (!scope.equals(day + "/" + REGION + "/s3/aws4_request")) {
+            return false;
+        }
+
+        StringBuilder canonicalHeaders = new StringBuilder();
+        for (String header : signedHeaders.split(";")) {
+            canonicalHeaders.append(header).append(':')
+                    .append(exchange.getRequestHeaders().getFirst(header).trim()).append('\n');
+        }
+        String canonicalRequest = method + "\n" + path + "\n\n" + canonicalHeaders + "\n" + signedHeaders + "\n" + payloadHash;
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n"
+                + HexFormat.of().formatHex(sha256(canonicalRequest));
+
+        byte[] signingKey = hmac(("AWS4" + SECRET_KEY).getBytes(StandardCharsets.UTF_8), day);
+        signingKey = hmac(signingKey, REGION);
+        signingKey = hmac(signingKey, "s3");
+        signingKey = hmac(signingKey, "aws4_request");
+        return HexFormat.of().formatHex(hmac(signingKey, stringToSign)).equals(matcher.group(4));
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String value) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(value.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}